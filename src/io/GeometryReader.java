@@ -0,0 +1,165 @@
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Decodes the GEOM column of the queries in SQLDatabaseReader, which is either
+ * WKT-text (ST_AsText) or WKB-bytes (ST_AsBinary). LineStrings, which is what
+ * the network is made of, are decoded directly from the WKB-bytes, anything
+ * else is handed to the JTS readers.
+ *
+ * Not thread safe, use one reader per thread.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class GeometryReader {
+	private static final int WKB_POINT = 1;
+	private static final int WKB_LINESTRING = 2;
+
+	private final GeometryFactory gf;
+	private final PrecisionModel pm;
+	private final WKTReader wktReader;
+	private final WKBReader wkbReader;
+
+	public GeometryReader(GeometryFactory geometryFactory) {
+		this.gf = geometryFactory;
+		this.pm = geometryFactory.getPrecisionModel();
+		this.wktReader = new WKTReader(geometryFactory);
+		this.wkbReader = new WKBReader(geometryFactory);
+	}
+
+	/**
+	 * Returns the undecoded value of a geometry column, a String if the
+	 * geometry was sent as WKT and a byte[] if it was sent as WKB.
+	 *
+	 * @throws SQLException
+	 *             if the column could not be read.
+	 */
+	public static Object readRaw(ResultSet rs, String column) throws SQLException {
+		return rs.getObject(column);
+	}
+
+	/**
+	 * Reads and decodes a geometry column.
+	 *
+	 * @return the Geometry, or null if the column was null or empty.
+	 * @throws SQLException
+	 *             if the column could not be read.
+	 * @throws ParseException
+	 *             if the value was not a valid WKT or WKB geometry.
+	 */
+	public Geometry read(ResultSet rs, String column) throws SQLException, ParseException {
+		Object raw = GeometryReader.readRaw(rs, column);
+
+		if (GeometryReader.isEmpty(raw)) {
+			return null;
+		}
+
+		return this.read(raw);
+	}
+
+	/**
+	 * Decodes a raw geometry value as returned by
+	 * {@link #readRaw(ResultSet, String)}. A value that already is a Geometry,
+	 * e.g. read from a snapshot, is returned as it is.
+	 *
+	 * @throws ParseException
+	 *             if the value was not a valid WKT or WKB geometry, or neither
+	 *             a String, a byte[] nor a Geometry.
+	 */
+	public Geometry read(Object raw) throws ParseException {
+		if (raw instanceof Geometry) {
+			return (Geometry) raw;
+		} else if (raw instanceof byte[]) {
+			return this.read((byte[]) raw);
+		} else if (raw instanceof String) {
+			return this.wktReader.read((String) raw);
+		} else {
+			throw new ParseException("Geometry is neither WKT nor WKB: " + raw);
+		}
+	}
+
+	/**
+	 * Decodes a WKB geometry. A LineString is read straight into a coordinate
+	 * array, other geometry types are read by the JTS WKBReader.
+	 */
+	public Geometry read(byte[] wkb) throws ParseException {
+		if (wkb.length < 9) {
+			throw new ParseException("WKB too short: " + wkb.length + " bytes.");
+		}
+
+		ByteBuffer buf = GeometryReader.wrap(wkb);
+
+		if (buf.getInt(1) != WKB_LINESTRING) {
+			return this.wkbReader.read(wkb);
+		}
+
+		int n = buf.getInt(5);
+
+		if (wkb.length < 9 + 16 * n) {
+			throw new ParseException("WKB LineString with " + n + " points is truncated.");
+		}
+
+		Coordinate[] C = new Coordinate[n];
+		int pos = 9;
+
+		for (int i = 0; i < n; i++) {
+			C[i] = new Coordinate(this.pm.makePrecise(buf.getDouble(pos)),
+					this.pm.makePrecise(buf.getDouble(pos + 8)));
+			pos = pos + 16;
+		}
+
+		return this.gf.createLineString(C);
+	}
+
+	/**
+	 * Returns true if the raw geometry value is null or an empty geometry,
+	 * i.e. 'POINT EMPTY' as WKT, an empty point, line or collection as WKB or
+	 * an empty Geometry.
+	 */
+	public static boolean isEmpty(Object raw) {
+		if (raw == null) {
+			return true;
+		} else if (raw instanceof Geometry) {
+			return ((Geometry) raw).isEmpty();
+		} else if (raw instanceof String) {
+			return ((String) raw).equals("POINT EMPTY");
+		} else if (raw instanceof byte[]) {
+			byte[] wkb = (byte[]) raw;
+
+			if (wkb.length < 9) {
+				return true;
+			}
+
+			ByteBuffer buf = GeometryReader.wrap(wkb);
+			int type = buf.getInt(1);
+
+			if (type == WKB_POINT) {
+				// PostGIS writes an empty point as NaN coordinates.
+				return (wkb.length < 21) || Double.isNaN(buf.getDouble(5));
+			} else {
+				return buf.getInt(5) == 0;
+			}
+		} else {
+			return false;
+		}
+	}
+
+	private static ByteBuffer wrap(byte[] wkb) {
+		ByteBuffer buf = ByteBuffer.wrap(wkb);
+		buf.order((wkb[0] == 0) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		return buf;
+	}
+}
@@ -14,7 +14,11 @@ public class Logger extends FileWriters {
 			/* Nothing */ }
 	}
 
-	public void log(String[] messages) {
+	/**
+	 * Writes the messages as consecutive rows. Synchronized so that messages
+	 * from loaders running on different threads are not interleaved.
+	 */
+	public synchronized void log(String[] messages) {
 		for (String message : messages) {
 			this.log(message);
 		}
@@ -23,8 +23,32 @@ public class SQLDatabaseReader {
 	private PreparedStatement psLanesLong;
 	private PreparedStatement psForbiddenDriveDirLong;
 	private PreparedStatement psSpeedLong;
+	private PreparedStatement psFunctionalRoadClassByRefLinks;
+	private PreparedStatement psLanesByRefLinks;
+	private PreparedStatement psForbiddenDriveDirByRefLinks;
+	private PreparedStatement psSpeedByRefLinks;
 	private PreparedStatement psNetwork;
 	private PreparedStatement psNetworkSodraLanken;
+	private int fetchSize;
+	private GeometryFormat geometryFormat;
+	private String[] refLinkSet;
+
+	/**
+	 * Number of rows fetched per round trip when streaming through a server
+	 * side cursor, see {@link #setFetchSize(int)}.
+	 */
+	public static final int DEFAULT_FETCH_SIZE = 10000;
+
+	/**
+	 * The encoding of the GEOM column of all queries. WKT (ST_AsText) is text
+	 * and parsed by WKTReader, WKB (ST_AsBinary) is sent as bytea and decoded
+	 * by io.GeometryReader, which is both smaller on the wire and cheaper to
+	 * decode.
+	 */
+	public enum GeometryFormat {
+		WKT, WKB;
+	}
+
 	private static final String queryFunctionalRoadClass = 
 			"SELECT \"RLID\" AS REFLINK_OID, "
 		  + "\"STARTAVST\" AS MEASURE_FROM, "
@@ -91,7 +115,7 @@ public class SQLDatabaseReader {
           		+ "FROM unnest(?::character varying[]) AS county_id(value))) "
 		  	+ "GROUP BY REFLINK_OID ) "
 		  + "AND ? between \"FRAN_DATUM\" AND \"TILL_DATUM\" "
-		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC;";
+		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC";
 	
 	private static final String querySpeedLimLong = 
 			"SELECT \"RLID\" AS REFLINK_OID, "
@@ -113,7 +137,67 @@ public class SQLDatabaseReader {
 	            + "FROM unnest(?::character varying[]) AS county_id(value))) "
 		  	+ "GROUP BY REFLINK_OID ) "
 		  + "AND ? between \"FRAN_DATUM\" AND \"TILL_DATUM\" "
-		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC;";
+		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC";
+	
+	/*
+	 * The ...ByRefLinks queries read the same attributes as the ...Long
+	 * queries, but for a given array of REFLINK_OIDs instead of for all
+	 * reflinks of the regions, see setRefLinkSet(String[]).
+	 */
+	private static final String queryFunctionalRoadClassByRefLinks = 
+			"SELECT \"RLID\" AS REFLINK_OID, "
+		  + "\"STARTAVST\" AS MEASURE_FROM, "
+		  + "\"SLUTAVST\" AS MEASURE_TO, "
+		  + "\"KLASS\"::integer AS functional_road_class, "
+		  + "ST_AsText(ST_LineMerge (ST_Force2D(geom))) AS GEOM "
+		  + "FROM nvdb.functional_road_class "
+		  + "INNER JOIN unnest(?::character varying[]) AS reflinks(oid) "
+		  + "ON(\"RLID\" = reflinks.oid) "
+		  + "WHERE ? between \"FRAN_DATUM\" AND \"TILL_DATUM\" "
+		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC";
+	
+	private static final String queryLanesByRefLinks = 
+			"SELECT \"RLID\" AS REFLINK_OID, "
+		  + "\"STARTAVST\" AS MEASURE_FROM, "
+		  + "\"SLUTAVST\" AS MEASURE_TO, "
+		  + "\"KOEFAETSAL\" as lanes, "
+		  + "ST_AsText(ST_LineMerge (ST_Force2D(geom))) AS GEOM "
+		  + "FROM nvdb.number_of_lanes "
+		  + "INNER JOIN unnest(?::character varying[]) AS reflinks(oid) "
+		  + "ON(\"RLID\" = reflinks.oid) "
+		  + "WHERE ? between \"FRAN_DATUM\" AND \"TILL_DATUM\" "
+		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC";
+	
+	private static final String queryForbiddenDriveDirByRefLinks = 
+			"SELECT \"RLID\" AS REFLINK_OID, "
+		  + "\"STARTAVST\" AS MEASURE_FROM, "
+		  + "\"SLUTAVST\" AS MEASURE_TO, "
+		  + "CASE WHEN \"RIKTNING\" = 'Med' THEN 1 "
+		  + "	  WHEN \"RIKTNING\" = 'Mot' THEN 2 "
+		  + "	  ELSE 3"
+		  + "END AS forbidden_direction, "
+		  + "ST_AsText(ST_LineMerge (ST_Force2D(geom))) AS GEOM "
+		  + "FROM nvdb.prohibited_direction_of_travel "
+		  + "INNER JOIN unnest(?::character varying[]) AS reflinks(oid) "
+		  + "ON(\"RLID\" = reflinks.oid) "
+		  + "WHERE ? between \"FRAN_DATUM\" AND \"TILL_DATUM\" "
+		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC";
+	
+	private static final String querySpeedLimByRefLinks = 
+			"SELECT \"RLID\" AS REFLINK_OID, "
+		  + "\"STARTAVST\" AS MEASURE_FROM, "
+		  + "\"SLUTAVST\" AS MEASURE_TO, "
+		  + "\"HTHAST\"::double precision AS speed, "
+		  + "CASE WHEN \"RIKTNING\" = 'Med' THEN 1 "
+		  + "	  WHEN \"RIKTNING\" = 'Mot' THEN 2 "
+		  + "	  ELSE 3"
+		  + "END AS speed_direction, "
+		  + "ST_AsText(ST_LineMerge (ST_Force2D(geom))) AS GEOM "
+		  + "FROM nvdb.speed_limit "
+		  + "INNER JOIN unnest(?::character varying[]) AS reflinks(oid) "
+		  + "ON(\"RLID\" = reflinks.oid) "
+		  + "WHERE ? between \"FRAN_DATUM\" AND \"TILL_DATUM\" "
+		  + "ORDER BY REFLINK_OID ASC, MEASURE_FROM ASC";
 	
 	private static final String queryNetwork = 
 			"SELECT \"REFLINK_OI\" AS REFLINK_OID, "
@@ -131,7 +215,7 @@ public class SQLDatabaseReader {
           	+ "(SELECT value "
             + "FROM unnest(?::character varying[]) AS county_id(value))) "
 		  + "AND ? between \"FROM_DATE\" AND \"TO_DATE\""
-		  + "AND \"NTTYP\" = 1;";
+		  + "AND \"NTTYP\" = 1";
 	
 	private static final String queryNetworkSodraLanken = 
 			"SELECT \"REFLINK_OI\" AS REFLINK_OID, "
@@ -162,6 +246,20 @@ public class SQLDatabaseReader {
 	 * @param conCase
 	 */
 	public SQLDatabaseReader(String host, int port, String name, String user, String password, int conCase) {
+		this(host, port, name, user, password, conCase, GeometryFormat.WKT);
+	}
+
+	/**
+	 * Same as {@link #SQLDatabaseReader(String, int, String, String, String, int)}
+	 * but lets the caller choose how the geometries are encoded.
+	 * 
+	 * @param geometryFormat
+	 *            WKT or WKB.
+	 */
+	public SQLDatabaseReader(String host, int port, String name, String user, String password, int conCase,
+			GeometryFormat geometryFormat) {
+		this.geometryFormat = geometryFormat;
+
 		try {
 			if (conCase == 1) {
 
@@ -173,13 +271,20 @@ public class SQLDatabaseReader {
 				this.conn = DriverManager.getConnection(connectionURL, user, password);
 
 				// setup prepared statements.
-				this.psFunctionalRoadClass = this.conn.prepareStatement(queryFunctionalRoadClass);
-				this.psFunctionalRoadClassLong = this.conn.prepareStatement(quryFunctionalRoadClassLong);
-				this.psLanesLong = this.conn.prepareStatement(queryLanesLong);
-				this.psForbiddenDriveDirLong = this.conn.prepareStatement(queryForbiddenDriveDirLong);
-				this.psSpeedLong = this.conn.prepareStatement(querySpeedLimLong);
-				this.psNetwork = this.conn.prepareStatement(queryNetwork);
-				this.psNetworkSodraLanken = this.conn.prepareStatement(queryNetworkSodraLanken);
+				this.psFunctionalRoadClass = this.prepare(queryFunctionalRoadClass);
+				this.psFunctionalRoadClassLong = this.prepare(quryFunctionalRoadClassLong);
+				this.psLanesLong = this.prepare(queryLanesLong);
+				this.psForbiddenDriveDirLong = this.prepare(queryForbiddenDriveDirLong);
+				this.psSpeedLong = this.prepare(querySpeedLimLong);
+				this.psFunctionalRoadClassByRefLinks = this.prepare(queryFunctionalRoadClassByRefLinks);
+				this.psLanesByRefLinks = this.prepare(queryLanesByRefLinks);
+				this.psForbiddenDriveDirByRefLinks = this.prepare(queryForbiddenDriveDirByRefLinks);
+				this.psSpeedByRefLinks = this.prepare(querySpeedLimByRefLinks);
+				this.psNetwork = this.prepare(queryNetwork);
+				this.psNetworkSodraLanken = this.prepare(queryNetworkSodraLanken);
+
+				this.fetchSize = 0;
+				this.refLinkSet = null;
 
 			} else {
 				this.connectionURL = null;
@@ -197,6 +302,106 @@ public class SQLDatabaseReader {
 		}
 	}
 
+	/**
+	 * Prepares a query, with the geometry column encoded as WKB if this reader
+	 * was created with GeometryFormat.WKB. All queries are written with
+	 * ST_AsText.
+	 */
+	private PreparedStatement prepare(String query) throws SQLException {
+		if (this.geometryFormat == GeometryFormat.WKB) {
+			query = query.replace("ST_AsText(", "ST_AsBinary(");
+		}
+		return this.conn.prepareStatement(query);
+	}
+
+	/**
+	 * Returns the encoding of the GEOM column of all queries.
+	 */
+	public GeometryFormat getGeometryFormat() {
+		return this.geometryFormat;
+	}
+
+	/**
+	 * Turns streaming of the network and attribute queries on or off. With a
+	 * positive fetch size the connection leaves autocommit mode, which makes
+	 * the PostgreSQL driver read the result through a server side cursor,
+	 * <b>fetchSize</b> rows at a time, instead of pulling the whole result
+	 * into client memory before the first row is returned.
+	 * 
+	 * Each streamed ResultSet should be followed by a call to
+	 * {@link #closeCursors()} once it has been read and closed.
+	 * 
+	 * @param fetchSize
+	 *            number of rows per round trip, 0 turns streaming off.
+	 * @throws SQLException
+	 *             if the autocommit mode or the fetch size could not be set.
+	 */
+	public void setFetchSize(int fetchSize) throws SQLException {
+		if (fetchSize < 0) {
+			throw new IllegalArgumentException("fetchSize must be >= 0.");
+		}
+
+		this.fetchSize = fetchSize;
+		this.conn.setAutoCommit(fetchSize == 0);
+
+		PreparedStatement[] streamed = new PreparedStatement[] { this.psNetwork, this.psNetworkSodraLanken,
+				this.psFunctionalRoadClassLong, this.psLanesLong, this.psForbiddenDriveDirLong, this.psSpeedLong,
+				this.psFunctionalRoadClassByRefLinks, this.psLanesByRefLinks, this.psForbiddenDriveDirByRefLinks,
+				this.psSpeedByRefLinks };
+
+		for (PreparedStatement ps : streamed) {
+			ps.setFetchSize(fetchSize);
+		}
+	}
+
+	/**
+	 * Returns the number of rows fetched per round trip, 0 if streaming is
+	 * turned off.
+	 */
+	public int getFetchSize() {
+		return this.fetchSize;
+	}
+
+	/**
+	 * Restricts the attribute queries (the get...All methods) to a given set
+	 * of reflinks, typically the ones already loaded into the RefNetwork.
+	 * Without a set, each attribute query finds the reflinks of the regions
+	 * through its own GROUP BY subquery over nvdb.ref_link_part, so the same
+	 * set is built once per attribute. With a set, the attribute tables are
+	 * joined directly against the array of OIDs, which is sent with each
+	 * query. Attributes of reflinks outside the network are skipped by the
+	 * RefNetwork anyway, so the attributes that end up in the network are
+	 * the same.
+	 * 
+	 * @param refLinkOids
+	 *            REFLINK_OIDs, each at most once, or null to go back to the
+	 *            region subqueries.
+	 */
+	public void setRefLinkSet(String[] refLinkOids) {
+		this.refLinkSet = refLinkOids;
+	}
+
+	/**
+	 * Returns true if the attribute queries are restricted to a set of
+	 * reflinks, see {@link #setRefLinkSet(String[])}.
+	 */
+	public boolean hasRefLinkSet() {
+		return this.refLinkSet != null;
+	}
+
+	/**
+	 * Ends the transaction that holds the server side cursors of a streamed
+	 * query. Does nothing if streaming is turned off.
+	 */
+	public void closeCursors() {
+		try {
+			if (!this.conn.getAutoCommit()) {
+				this.conn.commit();
+			}
+		} catch (SQLException e) {
+			/* ignored */ }
+	}
+
 	/**
 	 * Passes values to prepared statement that reads reflinks for Sdra Lnken
 	 * in Stockholm.
@@ -268,6 +473,10 @@ public class SQLDatabaseReader {
 	 *             failed to execute query.
 	 */
 	public ResultSet getClassificationAll(int today, String[] regionArray) throws SQLException {
+		if (this.refLinkSet != null) {
+			return this.queryByRefLinks(this.psFunctionalRoadClassByRefLinks, today);
+		}
+
 		this.psFunctionalRoadClassLong.clearParameters();
 
 		this.psFunctionalRoadClassLong.setInt(1, today);
@@ -323,6 +532,10 @@ public class SQLDatabaseReader {
 	 *             failed to execute query.
 	 */
 	public ResultSet getLanesAll(int today, String[] regionArray) throws SQLException {
+		if (this.refLinkSet != null) {
+			return this.queryByRefLinks(this.psLanesByRefLinks, today);
+		}
+
 		this.psLanesLong.clearParameters();
 
 		this.psLanesLong.setInt(1, today);
@@ -352,6 +565,10 @@ public class SQLDatabaseReader {
 	 *             failed to execute query.
 	 */
 	public ResultSet getForbiddedTravelDirectionAll(int today, String[] regionArray) throws SQLException {
+		if (this.refLinkSet != null) {
+			return this.queryByRefLinks(this.psForbiddenDriveDirByRefLinks, today);
+		}
+
 		this.psForbiddenDriveDirLong.clearParameters();
 
 		this.psForbiddenDriveDirLong.setInt(1, today);
@@ -381,6 +598,10 @@ public class SQLDatabaseReader {
 	 *             failed to execute query.
 	 */
 	public ResultSet getSpeedLimitKmPHWithDirectionAll(int today, String[] regionArray) throws SQLException {
+		if (this.refLinkSet != null) {
+			return this.queryByRefLinks(this.psSpeedByRefLinks, today);
+		}
+
 		this.psSpeedLong.clearParameters();
 
 		this.psSpeedLong.setInt(1, today);
@@ -392,6 +613,20 @@ public class SQLDatabaseReader {
 		return this.psSpeedLong.executeQuery();
 	}
 
+	/**
+	 * Passes the reflink set and the date to one of the ...ByRefLinks
+	 * prepared statements.
+	 */
+	private ResultSet queryByRefLinks(PreparedStatement ps, int today) throws SQLException {
+		ps.clearParameters();
+
+		Array refLinks = this.conn.createArrayOf("varchar", this.refLinkSet);
+		ps.setArray(1, refLinks);
+		ps.setInt(2, today);
+
+		return ps.executeQuery();
+	}
+
 	public ResultSet read(String query) throws SQLException {
 		Statement state = conn.createStatement();
 		ResultSet result = state.executeQuery(query);
@@ -432,6 +667,16 @@ public class SQLDatabaseReader {
 			} catch (SQLException e) {
 				/* ignored */ }
 		}
+		PreparedStatement[] byRefLinks = new PreparedStatement[] { this.psFunctionalRoadClassByRefLinks,
+				this.psLanesByRefLinks, this.psForbiddenDriveDirByRefLinks, this.psSpeedByRefLinks };
+		for (PreparedStatement ps : byRefLinks) {
+			if (ps != null) {
+				try {
+					ps.close();
+				} catch (SQLException e) {
+					/* ignored */ }
+			}
+		}
 		if (this.psNetwork != null) {
 			try {
 				this.psNetwork.close();
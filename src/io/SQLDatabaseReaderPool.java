@@ -0,0 +1,109 @@
+package io;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import io.SQLDatabaseReader.GeometryFormat;
+
+/**
+ * A fixed number of SQLDatabaseReaders, each with its own connection and
+ * prepared statements, that are lent out to one thread at a time.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class SQLDatabaseReaderPool {
+	private final ArrayList<SQLDatabaseReader> readers;
+	private final LinkedBlockingQueue<SQLDatabaseReader> idle;
+
+	/**
+	 * Opens <b>size</b> connections, see
+	 * {@link SQLDatabaseReader#SQLDatabaseReader(String, int, String, String, String, int, GeometryFormat)}.
+	 * 
+	 * @param size
+	 *            number of connections, at least 1.
+	 */
+	public SQLDatabaseReaderPool(String host, int port, String name, String user, String password, int conCase,
+			GeometryFormat geometryFormat, int size) {
+
+		if (size < 1) {
+			throw new IllegalArgumentException("A pool needs at least one connection.");
+		}
+
+		this.readers = new ArrayList<SQLDatabaseReader>(size);
+		this.idle = new LinkedBlockingQueue<SQLDatabaseReader>();
+
+		for (int i = 0; i < size; i++) {
+			SQLDatabaseReader dbr = new SQLDatabaseReader(host, port, name, user, password, conCase,
+					geometryFormat);
+			this.readers.add(dbr);
+			this.idle.add(dbr);
+		}
+	}
+
+	/**
+	 * Returns the number of connections of the pool.
+	 */
+	public int size() {
+		return this.readers.size();
+	}
+
+	/**
+	 * Waits until a reader is available and returns it. The reader must be
+	 * given back through release.
+	 */
+	public SQLDatabaseReader take() {
+		boolean interrupted = false;
+
+		try {
+			while (true) {
+				try {
+					return this.idle.take();
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Gives a reader back to the pool.
+	 */
+	public void release(SQLDatabaseReader dbr) {
+		this.idle.add(dbr);
+	}
+
+	/**
+	 * Sets the fetch size of all readers, see
+	 * {@link SQLDatabaseReader#setFetchSize(int)}.
+	 */
+	public void setFetchSize(int fetchSize) throws SQLException {
+		for (SQLDatabaseReader dbr : this.readers) {
+			dbr.setFetchSize(fetchSize);
+		}
+	}
+
+	/**
+	 * Restricts the attribute queries of all readers to a set of reflinks,
+	 * see {@link SQLDatabaseReader#setRefLinkSet(String[])}.
+	 */
+	public void setRefLinkSet(String[] refLinkOids) {
+		for (SQLDatabaseReader dbr : this.readers) {
+			dbr.setRefLinkSet(refLinkOids);
+		}
+	}
+
+	/**
+	 * Closes the connections of all readers, also those that are lent out.
+	 */
+	public void closeConnections() {
+		for (SQLDatabaseReader dbr : this.readers) {
+			dbr.closeConnection();
+		}
+	}
+}
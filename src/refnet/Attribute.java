@@ -10,13 +10,37 @@ import com.vividsolutions.jts.geom.LineString;
  */
 public class Attribute extends Part {
 
+	/**
+	 * The attribute has not been added to a RefLink.
+	 */
+	public static final int NOT_ADDED = 0;
+	/**
+	 * The attribute was on its RefLink at the tolerance of the network.
+	 */
+	public static final int ON_LINK = 1;
+	/**
+	 * The attribute was snapped to its RefLink at a larger tolerance.
+	 */
+	public static final int SNAPPED = 2;
+	/**
+	 * The attribute was further than RefNetwork.toleranceMax from its RefLink.
+	 */
+	public static final int REJECTED = 3;
+	/**
+	 * The attribute could not be added, snapped or not.
+	 */
+	public static final int FAILED = 4;
+
+	private int snapping = Attribute.NOT_ADDED;
+	private double snapTolerance = Double.NaN;
+
 	/**
 	 * {@inheritDoc}
 	 */
-	public Attribute(String refLinkOid, LineString geometry, double measureFrom, double measureTo, Double velocity,
+	public Attribute(PartStore store, long refLinkOid, LineString geometry, double measureFrom, double measureTo, Double velocity,
 			Integer velocityDirection, Integer nbLanes, Integer classificationNo, Integer unallowedDirection) throws IllegalArgumentException {
 
-		super(refLinkOid, geometry, measureFrom, measureTo, velocity, velocityDirection, nbLanes, classificationNo,
+		super(store, refLinkOid, geometry, measureFrom, measureTo, velocity, velocityDirection, nbLanes, classificationNo,
 				unallowedDirection);
 	}
 
@@ -25,45 +49,44 @@ public class Attribute extends Part {
 	 *         Geometry will be in WKT-format.
 	 */
 	public String toCSVStringWithoutAttributes() {
-		return (this.getOid() + ";" + String.valueOf(this.getMeasureFrom()) + ";" + String.valueOf(this.getMeasureTo())
+		return (this.getOidString() + ";" + String.valueOf(this.getMeasureFrom()) + ";" + String.valueOf(this.getMeasureTo())
 				+ ";" + this.getGeometryAsStr());
 	}
 
 	/**
-	 * Returns true if all attributes of this equals those of other.
+	 * Records how the attribute was added and at what tolerance. An attribute
+	 * added in several steps, as the breakpoints of a sweep, keeps the worst
+	 * outcome and the largest tolerance of that outcome.
 	 */
-	public boolean propertyEqual(Attribute other) {
-		boolean retval = true;
-
-		if (!this.getOid().equals(other.getOid())) {
-			retval = false;
-		}
-
-		if (!(((this.getFunctionalRoadClass() == null) && (other.getFunctionalRoadClass() == null))
-				|| (this.getFunctionalRoadClass().equals(other.getFunctionalRoadClass())))) {
-			retval = false;
-		}
-
-		if (!(((this.getNumberOfLanes() == null) && (other.getNumberOfLanes() == null))
-				|| (this.getNumberOfLanes().equals(other.getNumberOfLanes())))) {
-			retval = false;
-		}
-
-		if (!(((this.getUnallowedDriverDir() == null) && (other.getUnallowedDriverDir() == null))
-				|| (this.getUnallowedDriverDir().equals(other.getUnallowedDriverDir())))) {
-			retval = false;
+	void setSnapping(int snapping, double tolerance) {
+		if (snapping > this.snapping) {
+			this.snapping = snapping;
+			this.snapTolerance = tolerance;
+		} else if ((snapping == this.snapping) && !(tolerance <= this.snapTolerance)) {
+			this.snapTolerance = tolerance;
 		}
+	}
 
-		if (!(((this.getVelocity() == null) && (other.getVelocity() == null))
-				|| (this.getVelocity().equals(other.getVelocity())))) {
-			retval = false;
-		}
+	/**
+	 * Returns how the attribute was added to its RefLink, NOT_ADDED, ON_LINK,
+	 * SNAPPED, REJECTED or FAILED.
+	 */
+	public int getSnapping() {
+		return this.snapping;
+	}
 
-		if (!(((this.getVelocityDirection() == null) && (other.getVelocityDirection() == null))
-				|| (this.getVelocityDirection().equals(other.getVelocityDirection())))) {
-			retval = false;
-		}
+	/**
+	 * Returns the tolerance of the outcome given by getSnapping, NaN if the
+	 * attribute has not been added.
+	 */
+	public double getSnapTolerance() {
+		return this.snapTolerance;
+	}
 
-		return retval;
+	/**
+	 * Returns true if all attributes of this equals those of other.
+	 */
+	public boolean propertyEqual(Attribute other) {
+		return (this.getOid() == other.getOid()) && this.attributesEqual(other);
 	}
 }
@@ -0,0 +1,320 @@
+package refnet;
+
+import java.util.ArrayList;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.io.ParseException;
+
+import io.GeometryReader;
+import io.Logger;
+import util.Consolidator;
+import util.EndpointIndex;
+import util.LongRegistry;
+import util.OidCodec;
+
+/**
+ * Consolidates the rows of an attribute query, one row at a time, into one
+ * list of attributes per RefLink, see RefNetwork.readAttributes. Rows of
+ * RefLinks that are not in the network are skipped.
+ * 
+ * OBSERVE: The rows must be given in REFLINK_OID ASC, MEASURE_FROM ASC order.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class AttributeGrouper {
+	private final RefNetwork rn;
+	private final GeometryReader gr;
+	private final GeometryFactory geometryFactory;
+	private final Logger logger;
+	private final PartStore store;
+
+	private ArrayList<ArrayList<Attribute>> consolidated;
+	private ArrayList<Attribute> attributes;
+	private EndpointIndex<Attribute> ends;
+	private LongRegistry<ArrayList<Attribute>> signatures;
+	private Attribute attributeNoGeom;
+	private boolean hasAttributeNoGeom;
+	private long prevOid;
+
+	/**
+	 * @param gr
+	 *            decodes the attribute geometries, one per thread.
+	 */
+	public AttributeGrouper(RefNetwork rn, GeometryReader gr) {
+		this.rn = rn;
+		this.gr = gr;
+		this.geometryFactory = rn.geometryFactory;
+		this.logger = rn.getLogger();
+		this.store = new PartStore(rn.geometryFactory);
+
+		this.consolidated = new ArrayList<ArrayList<Attribute>>();
+		this.attributes = new ArrayList<Attribute>();
+		this.ends = new EndpointIndex<Attribute>();
+		this.signatures = new LongRegistry<ArrayList<Attribute>>();
+		this.attributeNoGeom = null;
+		this.hasAttributeNoGeom = false;
+		this.prevOid = OidCodec.NONE;
+	}
+
+	/**
+	 * Adds the next row.
+	 */
+	public void add(AttributeRow row) {
+		long currOid = OidCodec.encode(row.refLinkOid);
+		Attribute attribute;
+
+		// 1. Check to see if data is useful.
+		if (!this.rn.containsRefLink(currOid)) {
+			return;
+		}
+
+		// 2. If the attribute has geometry, it is business as usual.
+		if (!GeometryReader.isEmpty(row.geometry)) {
+			try {
+				// 3. Create new attribute
+				LineString attributeGeom = (LineString) this.gr.read(row.geometry);
+
+				attribute = new Attribute(this.store, currOid, attributeGeom, row.measureFrom, row.measureTo,
+						row.velocity, row.velocityDirection, row.lanes, row.functionalRoadClass,
+						row.unallowedDriveDir);
+
+				if ((this.prevOid != OidCodec.NONE) && (currOid == this.prevOid)) {
+					/*
+					 * 4. If this is not the first attribute in the resultset and
+					 * if the OID equals the previous OID, try to consolidate the
+					 * attributes (one common geometry).
+					 */
+
+					boolean sameAttributes = this.mergeDirections(attribute);
+
+					if (!sameAttributes) {
+						this.attributes = Consolidator.Consolidate(this.attributes, this.ends, attribute,
+								this.geometryFactory);
+						this.addSignature(attribute);
+					} else {
+						attribute.dispose();
+					}
+				} else if (this.attributes.isEmpty()) {
+					/*
+					 * 5. if the list has been emptied, then this is the first
+					 * attribute of this OID.
+					 */
+					this.attributes.add(attribute);
+					this.ends.add(attribute);
+					this.addSignature(attribute);
+				} else {
+					/*
+					 * 6. Otherwise the list isn't empty, but the new attribute
+					 * has another RefLink parent than the items already in the
+					 * list (different OID). If this is the case, we first try to
+					 * salvage possible attributes without geometries, then we
+					 * hand the attribute list over before moving on to the new
+					 * OID.
+					 */
+					if (this.hasAttributeNoGeom) {
+						this.attributes = Consolidator.ConsolidateWithoutGeom(this.attributes, this.ends,
+								this.attributeNoGeom, this.geometryFactory, this.logger);
+						this.attributeNoGeom = null;
+						this.hasAttributeNoGeom = false;
+					}
+					this.release(this.attributes);
+					this.consolidated.add(new ArrayList<Attribute>(this.attributes));
+					this.attributes.clear();
+					this.attributes.add(attribute);
+					this.ends.clear();
+					this.ends.add(attribute);
+					this.signatures = new LongRegistry<ArrayList<Attribute>>();
+					this.addSignature(attribute);
+				}
+
+				this.prevOid = currOid;
+
+			} catch (ParseException pe) {
+				this.logger.log(new String[] {
+						"Consolidator through RefNetwork: Skipping one attribute (ParseException): " + row.refLinkOid });
+			} catch (IllegalArgumentException iae) {
+				this.logger.log(new String[] { "RefNetwork: Skipping one attribute (Illegal arguments): " + row.refLinkOid });
+			}
+		} else {
+			try {
+				this.attributeNoGeom = new Attribute(this.store, currOid, null, row.measureFrom, row.measureTo,
+						row.velocity, row.velocityDirection, row.lanes, row.functionalRoadClass,
+						row.unallowedDriveDir);
+				this.hasAttributeNoGeom = true;
+			} catch (IllegalArgumentException iae) {
+				this.logger.log(new String[] {
+						"RefNetwork: Skipping one attribute (Illegal arguments, also lacked geometry): " + row.refLinkOid });
+			}
+		}
+	}
+
+	/**
+	 * Ends the rows.
+	 * 
+	 * @return one consolidated list of attributes per RefLink, in row order.
+	 */
+	public ArrayList<ArrayList<Attribute>> finish() {
+		if (this.hasAttributeNoGeom) {
+			this.attributes = Consolidator.ConsolidateWithoutGeom(this.attributes, this.ends, this.attributeNoGeom,
+					this.geometryFactory, this.logger);
+			this.attributeNoGeom = null;
+			this.hasAttributeNoGeom = false;
+		}
+		this.release(this.attributes);
+		this.consolidated.add(this.attributes);
+
+		ArrayList<ArrayList<Attribute>> result = this.consolidated;
+		this.consolidated = new ArrayList<ArrayList<Attribute>>();
+		this.attributes = new ArrayList<Attribute>();
+		this.ends.clear();
+		this.signatures = new LongRegistry<ArrayList<Attribute>>();
+		this.prevOid = OidCodec.NONE;
+
+		return result;
+	}
+
+	/**
+	 * Looks for attributes of the list given by rows equal to attribute in
+	 * all but direction, as the Med and Mot rows of the same stretch, and sets
+	 * their direction (forbidden driving direction or speed limit direction)
+	 * to 3 if it differs from that of attribute. Returns true if attribute
+	 * adds nothing to the list, i.e. it was merged in this way or is a
+	 * duplicate of a row already in the list.
+	 * 
+	 * The candidates are found by signature, see addSignature.
+	 */
+	private boolean mergeDirections(Attribute attribute) {
+		ArrayList<Attribute> candidates = this.signatures.get(AttributeGrouper.signature(attribute));
+		boolean sameAttributes = false;
+
+		if (candidates == null) {
+			return false;
+		}
+
+		for (Attribute otherAttribute : candidates) {
+			// An attribute merged away is disposed, so it is looked for first.
+			if (!this.inList(otherAttribute) || !AttributeGrouper.sameRow(otherAttribute, attribute)) {
+				continue;
+			}
+
+			Integer otherUnallowed = otherAttribute.getUnallowedDriverDir();
+			Integer unallowed = attribute.getUnallowedDriverDir();
+			Integer otherDirection = otherAttribute.getVelocityDirection();
+			Integer direction = attribute.getVelocityDirection();
+
+			if ((otherUnallowed != null) && (unallowed != null) && !otherUnallowed.equals(unallowed)) {
+				otherAttribute.setUnallowedDriverDir(3);
+				this.logMerge(otherAttribute, "forbidden driving direction", otherUnallowed, unallowed);
+				sameAttributes = true;
+			}
+			if ((otherDirection != null) && (direction != null) && !otherDirection.equals(direction)) {
+				otherAttribute.setVelocityDirection(3);
+				this.logMerge(otherAttribute, "speed limit direction", otherDirection, direction);
+				sameAttributes = true;
+			}
+			if (AttributeGrouper.equal(otherUnallowed, unallowed)
+					&& AttributeGrouper.equal(otherDirection, direction)) {
+				sameAttributes = true;
+			}
+		}
+
+		return sameAttributes;
+	}
+
+	/**
+	 * Records that the direction of attribute was set to 3.
+	 */
+	private void logMerge(Attribute attribute, String direction, Integer first, Integer second) {
+		this.logger.log(new String[] { "AttributeGrouper: Merged the " + direction + " " + first + " and " + second
+				+ " into 3 for " + OidCodec.toString(attribute.getOid()) + ";" + attribute.getMeasureFrom() + ";"
+				+ attribute.getMeasureTo() });
+	}
+
+	/**
+	 * Adds an attribute that was just put in the list to the signatures. Its
+	 * measures and geometry do not change while it stays in the list, a later
+	 * attribute merged with it takes its place instead, so an attribute found
+	 * by signature is only used if it is still in the list.
+	 */
+	private void addSignature(Attribute attribute) {
+		int s = this.signatures.getOrCreate(AttributeGrouper.signature(attribute));
+
+		if (this.signatures.valueAt(s) == null) {
+			this.signatures.setValueAt(s, new ArrayList<Attribute>(1));
+		}
+		this.signatures.valueAt(s).add(attribute);
+	}
+
+	/**
+	 * Hash of everything sameRow compares but the coordinates, which are only
+	 * equal within a tolerance.
+	 */
+	private static long signature(Attribute attribute) {
+		long h = attribute.getOid();
+
+		// + 0.0d makes -0.0 and 0.0, which are ==, hash the same.
+		h = 31 * h + Double.doubleToLongBits(attribute.getMeasureFrom() + 0.0d);
+		h = 31 * h + Double.doubleToLongBits(attribute.getMeasureTo() + 0.0d);
+		h = 31 * h + attribute.nbCoordinates();
+		h = 31 * h + (attribute.hasAttribute(PartStore.VELOCITY) ? Double.doubleToLongBits(attribute.velocity()) : -1L);
+		h = 31 * h + (attribute.hasAttribute(PartStore.LANES) ? attribute.lanes() : -1L);
+		h = 31 * h + (attribute.hasAttribute(PartStore.FUNCTIONAL_ROAD_CLASS) ? attribute.functionalRoadClass() : -1L);
+
+		return h;
+	}
+
+	/**
+	 * Returns true if the rows of a and b are the same stretch with the same
+	 * values, leaving out the directions.
+	 */
+	private static boolean sameRow(Attribute a, Attribute b) {
+		return (a.getOid() == b.getOid()) && (a.getMeasureFrom() == b.getMeasureFrom())
+				&& (a.getMeasureTo() == b.getMeasureTo()) && AttributeGrouper.equal(a.getVelocity(), b.getVelocity())
+				&& AttributeGrouper.equal(a.getNumberOfLanes(), b.getNumberOfLanes())
+				&& AttributeGrouper.equal(a.getFunctionalRoadClass(), b.getFunctionalRoadClass())
+				&& a.geomEquals(b, 0.1);
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	/**
+	 * Returns true if attribute is in the list, which is sorted by
+	 * MEASURE_FROM.
+	 */
+	private boolean inList(Attribute attribute) {
+		double measure = attribute.getMeasureFrom();
+		int lo = 0;
+		int hi = this.attributes.size();
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (this.attributes.get(mid).getMeasureFrom() < measure) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		for (int i = lo; (i < this.attributes.size()) && !(this.attributes.get(i).getMeasureFrom() > measure); i++) {
+			if (this.attributes.get(i) == attribute) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The attributes of a RefLink are not used again until they are added to
+	 * the network, so only their coordinates are kept.
+	 */
+	private void release(ArrayList<Attribute> done) {
+		for (Attribute attribute : done) {
+			attribute.releaseGeometry();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package refnet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import io.GeometryReader;
+
+/**
+ * The undecoded columns of one row of an attribute query. An attribute query
+ * only has the column(s) of its own attribute type, the columns it lacks are
+ * null.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class AttributeRow {
+	public final String refLinkOid;
+	public final double measureFrom;
+	public final double measureTo;
+	public final Double velocity;
+	public final Integer velocityDirection;
+	public final Integer lanes;
+	public final Integer functionalRoadClass;
+	public final Integer unallowedDriveDir;
+	public final Object geometry;
+
+	public AttributeRow(String refLinkOid, double measureFrom, double measureTo, Double velocity,
+			Integer velocityDirection, Integer lanes, Integer functionalRoadClass, Integer unallowedDriveDir,
+			Object geometry) {
+		this.refLinkOid = refLinkOid;
+		this.measureFrom = measureFrom;
+		this.measureTo = measureTo;
+		this.velocity = velocity;
+		this.velocityDirection = velocityDirection;
+		this.lanes = lanes;
+		this.functionalRoadClass = functionalRoadClass;
+		this.unallowedDriveDir = unallowedDriveDir;
+		this.geometry = geometry;
+	}
+
+	/**
+	 * Copies the current row of a ResultSet with the columns REFLINK_OID,
+	 * MEASURE_FROM, MEASURE_TO, GEOM and any of speed, speed_direction, lanes,
+	 * functional_road_class and forbidden_direction.
+	 */
+	public static AttributeRow read(ResultSet row) throws SQLException {
+		Double vel;
+		Integer velDir, lanes, classification, unallowedDriveDir;
+
+		try {
+			vel = row.getDouble("speed");
+		} catch (SQLException se) {
+			vel = null;
+		}
+
+		try {
+			velDir = row.getInt("speed_direction");
+		} catch (SQLException se) {
+			velDir = null;
+		}
+
+		try {
+			lanes = row.getInt("lanes");
+		} catch (SQLException se) {
+			lanes = null;
+		}
+
+		try {
+			classification = row.getInt("functional_road_class");
+		} catch (SQLException se) {
+			classification = null;
+		}
+
+		try {
+			unallowedDriveDir = row.getInt("forbidden_direction");
+		} catch (SQLException se) {
+			unallowedDriveDir = null;
+		}
+
+		return new AttributeRow(row.getString("REFLINK_OID"), row.getDouble("MEASURE_FROM"),
+				row.getDouble("MEASURE_TO"), vel, velDir, lanes, classification, unallowedDriveDir,
+				GeometryReader.readRaw(row, "GEOM"));
+	}
+}
@@ -0,0 +1,24 @@
+package refnet;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A stream of the rows of one attribute type, i.e. the columns of an attribute
+ * query (REFLINK_OID, MEASURE_FROM, MEASURE_TO, the attribute column(s) and
+ * GEOM), wherever they are read from. The rows must be given in REFLINK_OID
+ * ASC, MEASURE_FROM ASC order.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public interface AttributeSource extends Closeable {
+
+	/**
+	 * Returns the next row, or null if there are no more rows.
+	 * 
+	 * @throws IOException
+	 *             if the row could not be read.
+	 */
+	public AttributeRow next() throws IOException;
+}
@@ -1,11 +1,18 @@
 package refnet;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import com.vividsolutions.jts.geom.PrecisionModel;
 import com.vividsolutions.jts.io.ParseException;
 
 import io.SQLDatabaseReader;
+import io.SQLDatabaseReaderPool;
+import io.SQLDatabaseReader.GeometryFormat;
 import refnet.RefNetwork;
 
 /**
@@ -18,20 +25,104 @@ import refnet.RefNetwork;
 public class BuildRefNet {
 
 	private RefNetwork refNet;
-	private SQLDatabaseReader dbr;
+	private SQLDatabaseReaderPool pool;
+	private NetworkSnapshot snapshot;
+	private boolean attributeSweep;
+
+	/**
+	 * The attribute types that can be added to the network.
+	 */
+	public static final String[] ATTRIBUTE_TYPES = new String[] { "FUNCTIONAL_ROAD_CLASS", "LANES",
+			"FORBIDDEN_DRIVER_DIRECTION", "SPEED" };
+
+	/**
+	 * The PrecisionModel of the networks built without one, full double
+	 * precision.
+	 */
+	public static final PrecisionModel FLOATING = new PrecisionModel(PrecisionModel.FLOATING);
 
 	public BuildRefNet(String host, int port, String name, String user, String password, int today,
 			String[] regions, String loggerPath, String logFileName) {
+		this(host, port, name, user, password, today, regions, loggerPath, logFileName, new LoadOptions());
+	}
+
+	/**
+	 * @param options
+	 *            fetch size, geometry format, number of connections, snapshot
+	 *            path, PrecisionModel and load threads, see LoadOptions.
+	 */
+	public BuildRefNet(String host, int port, String name, String user, String password, int today,
+			String[] regions, String loggerPath, String logFileName, LoadOptions options) {
 
-		this.dbr = new SQLDatabaseReader(host, port, name, user, password, 1);
+		this.pool = new SQLDatabaseReaderPool(host, port, name, user, password, 1, options.getGeometryFormat(),
+				options.getNbConnections());
+
+		try {
+			this.pool.setFetchSize(options.getFetchSize());
+		} catch (SQLException se) {
+			System.out.println("BuildRefNet: Could not set fetch size " + options.getFetchSize()
+					+ ", reading without cursors.");
+		}
+
+		if (options.getSnapshotPath() != null) {
+			this.snapshot = openSnapshot(this.pool, today, regions, options.getSnapshotPath());
+		}
 
-		this.refNet = createRefNetwork(this.dbr, today, regions, loggerPath,
-		 logFileName);
-		//this.refNet = createRefNetworkSodraLanken(this.dbr, loggerPath, logFileName);
+		if (this.snapshot != null) {
+			this.refNet = createRefNetwork(this.snapshot, loggerPath, logFileName, options);
+		} else if ((this.pool.size() > 1) && (regions.length > 1)) {
+			this.refNet = createRefNetwork(this.pool, today, regions, loggerPath, logFileName, options);
+		} else {
+			SQLDatabaseReader dbr = this.pool.take();
+			this.refNet = createRefNetwork(dbr, today, regions, loggerPath,
+			 logFileName, options);
+			//this.refNet = createRefNetworkSodraLanken(dbr, loggerPath, logFileName);
+			this.pool.release(dbr);
+		}
 		System.out.println("Info: Done loading and sanity-checking data from DB.");
 		System.out.println("Info: Loaded " + this.networkSize() + " parts.");
 	}
 
+	/**
+	 * Builds a network without DB, from rows read from e.g. files. Attributes
+	 * are added through addAttribute(String, AttributeSource).
+	 */
+	public BuildRefNet(NetworkSource network, String loggerPath, String logFileName) {
+		this(network, loggerPath, logFileName, new LoadOptions());
+	}
+
+	/**
+	 * As BuildRefNet(NetworkSource, String, String) with the PrecisionModel
+	 * and load threads of options. The DB options are not used.
+	 */
+	public BuildRefNet(NetworkSource network, String loggerPath, String logFileName, LoadOptions options) {
+		this.pool = null;
+		this.refNet = createRefNetwork(network, loggerPath, logFileName, options);
+
+		System.out.println("Info: Done loading and sanity-checking data.");
+		System.out.println("Info: Loaded " + this.networkSize() + " parts.");
+	}
+
+	/**
+	 * Builds a network without DB from a snapshot, see NetworkSnapshot.
+	 */
+	public BuildRefNet(NetworkSnapshot snapshot, String loggerPath, String logFileName) {
+		this(snapshot, loggerPath, logFileName, new LoadOptions());
+	}
+
+	/**
+	 * As BuildRefNet(NetworkSnapshot, String, String) with the PrecisionModel
+	 * and load threads of options. The DB options are not used.
+	 */
+	public BuildRefNet(NetworkSnapshot snapshot, String loggerPath, String logFileName, LoadOptions options) {
+		this.pool = null;
+		this.snapshot = snapshot;
+		this.refNet = createRefNetwork(snapshot, loggerPath, logFileName, options);
+
+		System.out.println("Info: Done loading and sanity-checking data.");
+		System.out.println("Info: Loaded " + this.networkSize() + " parts.");
+	}
+
 	/**
 	 * Calls the creation of a new RefNetwork with parts which lies within a
 	 * whole region (ln).
@@ -43,13 +134,28 @@ public class BuildRefNet {
 	 */
 	public static RefNetwork createRefNetwork(SQLDatabaseReader dbr, int today, String[] regions, String loggerPath,
 			String logFileName) {
+		return createRefNetwork(dbr, today, regions, loggerPath, logFileName, new LoadOptions());
+	}
+
+	/**
+	 * As createRefNetwork(SQLDatabaseReader, int, String[], String, String)
+	 * with the PrecisionModel and load threads of options.
+	 */
+	public static RefNetwork createRefNetwork(SQLDatabaseReader dbr, int today, String[] regions, String loggerPath,
+			String logFileName, LoadOptions options) {
 
 		ResultSet result = null;
 
 		try {
 			System.out.println("Info: Loading data from DB.");
 			result = dbr.getNetworkByRegion(today, regions);
-			RefNetwork rn = new RefNetwork(result, loggerPath, logFileName);
+			RefNetwork rn = new RefNetwork(loggerPath, logFileName, options.getPrecisionModel());
+
+			if (options.getLoadThreads() > 1) {
+				RefLinkPartPipeline.load(result, rn, options.getLoadThreads(), RefLinkPartPipeline.DEFAULT_CAPACITY);
+			} else {
+				rn.addRefLinkParts(result);
+			}
 			return rn;
 		} catch (SQLException se) {
 			System.out.println("BuildRefNet: Failed to retrieve data from DB, shutting down.");
@@ -57,7 +163,7 @@ public class BuildRefNet {
 			se.printStackTrace();
 			System.exit(0);
 		} catch (ParseException pe) {
-			System.out.println("BuildRefNet: Failed to parse WKT-string to Geometry, shutting down.");
+			System.out.println("BuildRefNet: Failed to parse WKT/WKB to Geometry, shutting down.");
 			dbr.closeConnection();
 			pe.printStackTrace();
 			System.exit(0);
@@ -80,11 +186,180 @@ public class BuildRefNet {
 			} catch (SQLException e) {
 				/* Nothing */
 			}
+			dbr.closeCursors();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Calls the creation of a new RefNetwork where each region is loaded on
+	 * its own connection of the pool, see ParallelNetworkLoader, with the
+	 * PrecisionModel of options.
+	 */
+	public static RefNetwork createRefNetwork(SQLDatabaseReaderPool pool, int today, String[] regions,
+			String loggerPath, String logFileName, LoadOptions options) {
+
+		try {
+			System.out.println("Info: Loading data from DB, " + regions.length + " regions on " + pool.size()
+					+ " connections.");
+			RefNetwork rn = new RefNetwork(loggerPath, logFileName, options.getPrecisionModel());
+			ParallelNetworkLoader.load(pool, rn, today, regions);
+			return rn;
+		} catch (SQLException se) {
+			System.out.println("BuildRefNet: Failed to retrieve data from DB, shutting down.");
+			pool.closeConnections();
+			se.printStackTrace();
+			System.exit(0);
+		} catch (ParseException pe) {
+			System.out.println("BuildRefNet: Failed to parse WKT/WKB to Geometry, shutting down.");
+			pool.closeConnections();
+			pe.printStackTrace();
+			System.exit(0);
+		} catch (ClassCastException cce) {
+			System.out.println(
+					"BuildRefNet: Loaded geometry other than LINESTRING from DB. Don't know what to do. Shutting down.");
+			pool.closeConnections();
+			cce.printStackTrace();
+			System.exit(0);
+		} catch (IOException ioe) {
+			System.out.println("BuildRefNet: Could not create logger. Don't know what to do. Shutting down.");
+			pool.closeConnections();
+			ioe.printStackTrace();
+			System.exit(0);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the snapshot of <b>today</b> and <b>regions</b> in
+	 * <b>snapshotPath</b>, after writing it from DB if there was none.
+	 * 
+	 * @return the snapshot, or null if it could neither be read nor written.
+	 */
+	public static NetworkSnapshot openSnapshot(SQLDatabaseReaderPool pool, int today, String[] regions,
+			String snapshotPath) {
+
+		File file = NetworkSnapshot.fileFor(snapshotPath, today, regions);
+
+		try {
+			NetworkSnapshot snapshot = NetworkSnapshot.open(file, today, regions);
+
+			if (snapshot != null) {
+				boolean complete = true;
+				for (String attributeType : ATTRIBUTE_TYPES) {
+					complete = complete && snapshot.hasAttributes(attributeType);
+				}
+				if (complete) {
+					System.out.println("Info: Using snapshot " + file + ".");
+					return snapshot;
+				}
+			}
+		} catch (IOException ioe) {
+			System.out.println("BuildRefNet: Could not read snapshot " + file + ", writing a new one.");
+			ioe.printStackTrace();
+		}
+
+		try {
+			System.out.println("Info: Writing snapshot " + file + " from DB.");
+			return NetworkSnapshot.create(pool, today, regions, ATTRIBUTE_TYPES, file);
+		} catch (SQLException se) {
+			System.out.println("BuildRefNet: Could not write snapshot " + file + ", reading from DB.");
+			se.printStackTrace();
+		} catch (IOException ioe) {
+			System.out.println("BuildRefNet: Could not write snapshot " + file + ", reading from DB.");
+			ioe.printStackTrace();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Calls the creation of a new RefNetwork with the parts of a snapshot and
+	 * the PrecisionModel and load threads of options.
+	 */
+	public static RefNetwork createRefNetwork(NetworkSnapshot snapshot, String loggerPath, String logFileName,
+			LoadOptions options) {
+
+		try {
+			System.out.println("Info: Loading data from snapshot " + snapshot.getFile() + ".");
+			RefNetwork rn = new RefNetwork(loggerPath, logFileName, options.getPrecisionModel());
+			NetworkSource source = snapshot.networkSource(rn.geometryFactory);
+			try {
+				addRefLinkParts(rn, source, options.getLoadThreads());
+			} finally {
+				source.close();
+			}
+			return rn;
+		} catch (ParseException pe) {
+			System.out.println("BuildRefNet: Failed to parse WKT/WKB to Geometry, shutting down.");
+			pe.printStackTrace();
+			System.exit(0);
+		} catch (ClassCastException cce) {
+			System.out.println(
+					"BuildRefNet: Loaded geometry other than LINESTRING from snapshot. Don't know what to do. Shutting down.");
+			cce.printStackTrace();
+			System.exit(0);
+		} catch (IOException ioe) {
+			System.out.println("BuildRefNet: Could not read snapshot or create logger. Shutting down.");
+			ioe.printStackTrace();
+			System.exit(0);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Calls the creation of a new RefNetwork with the rows of a NetworkSource
+	 * and the PrecisionModel and load threads of options.
+	 */
+	public static RefNetwork createRefNetwork(NetworkSource network, String loggerPath, String logFileName,
+			LoadOptions options) {
+
+		try {
+			System.out.println("Info: Loading data.");
+			RefNetwork rn = new RefNetwork(loggerPath, logFileName, options.getPrecisionModel());
+			addRefLinkParts(rn, network, options.getLoadThreads());
+			return rn;
+		} catch (ParseException pe) {
+			System.out.println("BuildRefNet: Failed to parse WKT/WKB to Geometry, shutting down.");
+			pe.printStackTrace();
+			System.exit(0);
+		} catch (ClassCastException cce) {
+			System.out.println(
+					"BuildRefNet: Loaded geometry other than LINESTRING. Don't know what to do. Shutting down.");
+			cce.printStackTrace();
+			System.exit(0);
+		} catch (IOException ioe) {
+			System.out.println("BuildRefNet: Could not read data or create logger. Shutting down.");
+			ioe.printStackTrace();
+			System.exit(0);
+		} finally {
+			try {
+				network.close();
+			} catch (IOException e) {
+				/* Nothing */
+			}
 		}
 
 		return null;
 	}
 
+	/**
+	 * Adds all rows of the source to the network, decoding the geometries on
+	 * nbWorkers threads off the reading thread if nbWorkers is greater than 1.
+	 */
+	private static void addRefLinkParts(RefNetwork rn, NetworkSource network, int nbWorkers)
+			throws IOException, ParseException, ClassCastException {
+
+		if (nbWorkers > 1) {
+			RefLinkPartPipeline.load(network, rn, nbWorkers, RefLinkPartPipeline.DEFAULT_CAPACITY);
+		} else {
+			rn.addRefLinkParts(network);
+		}
+	}
+
 	/**
 	 * Used for testing.
 	 */
@@ -125,6 +400,7 @@ public class BuildRefNet {
 			} catch (SQLException e) {
 				/* Nothing */
 			}
+			dbr.closeCursors();
 		}
 
 		return null;
@@ -134,6 +410,17 @@ public class BuildRefNet {
 		this.refNet.clean();
 	}
 
+	/**
+	 * Makes the following attribute queries read the attributes of the
+	 * RefLinks already in the network, instead of finding the reflinks of the
+	 * regions again in each query. See SQLDatabaseReader.setRefLinkSet.
+	 */
+	public void useNetworkRefLinkSet() {
+		ArrayList<String> refLinkOids = this.refNet.getRefLinks();
+		Collections.sort(refLinkOids);
+		this.pool.setRefLinkSet(refLinkOids.toArray(new String[refLinkOids.size()]));
+	}
+
 	/**
 	 * Adds one attribute to the network.
 	 * 
@@ -147,21 +434,23 @@ public class BuildRefNet {
 	 */
 	public void addAttribute(int today, String[] region, String attributeType) {
 
+		if ((this.snapshot != null) && this.snapshot.matches(today, region)
+				&& this.snapshot.hasAttributes(attributeType)) {
+			this.addAttributeFromSnapshot(attributeType);
+			return;
+		}
+
+		if (this.pool == null) {
+			System.out.println("BuildRefNet: No DB connection, can not load attribute " + attributeType + ".");
+			return;
+		}
+
 		System.out.println("Loading one attribute " + attributeType + " from DB. It will be added to the network.");
 		ResultSet res = null;
+		SQLDatabaseReader dbr = this.pool.take();
 
 		try {
-			if (attributeType.equalsIgnoreCase("FUNCTIONAL_ROAD_CLASS")) {
-				res = this.dbr.getClassificationAll(today, region);
-			} else if (attributeType.equalsIgnoreCase("LANES")) {
-				res = this.dbr.getLanesAll(today, region);
-			} else if (attributeType.equalsIgnoreCase("FORBIDDEN_DRIVER_DIRECTION")) {
-				res = this.dbr.getForbiddedTravelDirectionAll(today, region);
-			} else if (attributeType.equalsIgnoreCase("SPEED")) {
-				res = this.dbr.getSpeedLimitKmPHWithDirectionAll(today, region);
-			}
-
-			// TODO: other attributes?
+			res = queryAttribute(dbr, today, region, attributeType);
 
 			this.refNet.addAttribute(res);
 			
@@ -175,9 +464,207 @@ public class BuildRefNet {
 				res.close();
 			} catch (SQLException e) {
 				/* ignored */ }
+			dbr.closeCursors();
+			this.pool.release(dbr);
 		}
 	}
 
+	/**
+	 * Adds several attributes to the network. The attributes are loaded from
+	 * DB at the same time on separate connections and then added in the given
+	 * order, which gives the same network as calling addAttribute once per
+	 * attribute.
+	 * 
+	 * @param today
+	 *            integer on the format YYYYMMDD
+	 * @param region
+	 *            "lnskod", Stockholms ln = "AB"
+	 * @param attributeTypes
+	 *            any of "FUNCTIONAL_ROAD_CLASS", "LANES",
+	 *            "FORBIDDEN_DRIVER_DIRECTION", "SPEED".
+	 */
+	public void addAttributes(int today, String[] region, String... attributeTypes) {
+
+		if (this.attributeSweep && (attributeTypes.length > 1)) {
+			this.addAttributesBySweep(today, region, attributeTypes);
+			return;
+		}
+
+		if ((this.pool == null) || (this.pool.size() < 2) || (attributeTypes.length < 2)
+				|| ((this.snapshot != null) && this.snapshot.matches(today, region))) {
+			for (String attributeType : attributeTypes) {
+				this.addAttribute(today, region, attributeType);
+			}
+			return;
+		}
+
+		System.out.println("Loading " + attributeTypes.length + " attributes from DB on " + this.pool.size()
+				+ " connections. They will be added to the network.");
+
+		try {
+			ParallelAttributeLoader.load(this.pool, this.refNet, today, region, attributeTypes);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			this.closeConnections();
+		} finally {
+			System.out.println("Info: Network now has " + this.networkSize() + " parts.");
+		}
+	}
+
+	/**
+	 * Adds several attributes in one sweep per RefLink, see
+	 * RefNetwork.applyAttributeLayers.
+	 */
+	private void addAttributesBySweep(int today, String[] region, String[] attributeTypes) {
+
+		if ((this.snapshot != null) && this.snapshot.matches(today, region)) {
+			System.out.println("Loading " + attributeTypes.length
+					+ " attributes from snapshot. They will be added to the network in one sweep.");
+
+			try {
+				ArrayList<ArrayList<ArrayList<Attribute>>> layers = new ArrayList<ArrayList<ArrayList<Attribute>>>();
+
+				for (String attributeType : attributeTypes) {
+					ArrayList<ArrayList<Attribute>> layer = this.readLayer(today, region, attributeType);
+
+					if (layer != null) {
+						layers.add(layer);
+					}
+				}
+				this.refNet.applyAttributeLayers(layers);
+			} finally {
+				System.out.println("Info: Network now has " + this.networkSize() + " parts.");
+			}
+			return;
+		}
+
+		if (this.pool == null) {
+			System.out.println("BuildRefNet: No DB connection, can not load the attributes.");
+			return;
+		}
+
+		System.out.println("Loading " + attributeTypes.length + " attributes from DB on " + this.pool.size()
+				+ " connections. They will be added to the network in one sweep.");
+
+		try {
+			ParallelAttributeLoader.load(this.pool, this.refNet, today, region, attributeTypes, true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			this.closeConnections();
+		} finally {
+			System.out.println("Info: Network now has " + this.networkSize() + " parts.");
+		}
+	}
+
+	/**
+	 * Reads and consolidates one attribute type of a sweep, from the snapshot
+	 * if it has the type and otherwise from DB, as addAttribute does.
+	 * 
+	 * @return the attribute lists, or null if they could not be read.
+	 */
+	private ArrayList<ArrayList<Attribute>> readLayer(int today, String[] region, String attributeType) {
+
+		if (this.snapshot.hasAttributes(attributeType)) {
+			try {
+				return this.snapshot.readAttributes(attributeType, this.refNet);
+			} catch (IOException ioe) {
+				System.out.println("BuildRefNet: Could not read " + attributeType + " from snapshot, trying DB.");
+				ioe.printStackTrace();
+			}
+		}
+
+		if (this.pool == null) {
+			System.out.println("BuildRefNet: No DB connection, can not load attribute " + attributeType + ".");
+			return null;
+		}
+
+		System.out.println("Loading attribute " + attributeType + " from DB, it is not in the snapshot.");
+		ResultSet res = null;
+		SQLDatabaseReader dbr = this.pool.take();
+
+		try {
+			res = queryAttribute(dbr, today, region, attributeType);
+
+			return this.refNet.readAttributes(res, this.refNet.geometryReader);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			this.closeConnections();
+			return null;
+		} finally {
+			try {
+				if (res != null) {
+					res.close();
+				}
+			} catch (SQLException e) {
+				/* ignored */ }
+			dbr.closeCursors();
+			this.pool.release(dbr);
+		}
+	}
+
+	/**
+	 * Adds one attribute to the network from the rows of an AttributeSource,
+	 * e.g. a file. The source is closed.
+	 * 
+	 * @param attributeType
+	 *            used for info only.
+	 */
+	public void addAttribute(String attributeType, AttributeSource source) {
+
+		System.out.println("Loading one attribute " + attributeType + ". It will be added to the network.");
+
+		try {
+			this.refNet.addAttribute(source);
+		} catch (IOException ioe) {
+			System.out.println("BuildRefNet: Could not read " + attributeType + ".");
+			ioe.printStackTrace();
+		} finally {
+			System.out.println("Info: Network now has " + this.networkSize() + " parts.");
+			try {
+				source.close();
+			} catch (IOException e) {
+				/* ignored */ }
+		}
+	}
+
+	private void addAttributeFromSnapshot(String attributeType) {
+		System.out.println("Loading one attribute " + attributeType
+				+ " from snapshot. It will be added to the network.");
+
+		try {
+			this.refNet.applyAttributes(this.snapshot.readAttributes(attributeType, this.refNet));
+		} catch (IOException ioe) {
+			System.out.println("BuildRefNet: Could not read " + attributeType + " from snapshot.");
+			ioe.printStackTrace();
+		} finally {
+			System.out.println("Info: Network now has " + this.networkSize() + " parts.");
+		}
+	}
+
+	/**
+	 * Runs the query of one attribute type.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the attribute type is unknown.
+	 */
+	static ResultSet queryAttribute(SQLDatabaseReader dbr, int today, String[] region, String attributeType)
+			throws SQLException {
+
+		if (attributeType.equalsIgnoreCase("FUNCTIONAL_ROAD_CLASS")) {
+			return dbr.getClassificationAll(today, region);
+		} else if (attributeType.equalsIgnoreCase("LANES")) {
+			return dbr.getLanesAll(today, region);
+		} else if (attributeType.equalsIgnoreCase("FORBIDDEN_DRIVER_DIRECTION")) {
+			return dbr.getForbiddedTravelDirectionAll(today, region);
+		} else if (attributeType.equalsIgnoreCase("SPEED")) {
+			return dbr.getSpeedLimitKmPHWithDirectionAll(today, region);
+		}
+
+		// TODO: other attributes?
+
+		throw new IllegalArgumentException("Unknown attribute type: " + attributeType);
+	}
+
 	/**
 	 * Prints all Parts of all RefLinks in the RefNetwork to the terminal.
 	 * 
@@ -189,6 +676,37 @@ public class BuildRefNet {
 		this.refNet.print(withAttributes);
 	}
 
+	/**
+	 * Returns the network being built.
+	 */
+	public RefNetwork getRefNetwork() {
+		return this.refNet;
+	}
+
+	/**
+	 * Makes addAttributes add the attribute types in one sweep per RefLink
+	 * instead of one pass per type, see RefNetwork.applyAttributeLayers.
+	 */
+	public void setAttributeSweep(boolean attributeSweep) {
+		this.attributeSweep = attributeSweep;
+	}
+
+	/**
+	 * Gives the RefLinks their attributes on this many threads, see
+	 * RefNetwork.setAttributeThreads.
+	 */
+	public void setAttributeThreads(int attributeThreads) {
+		this.refNet.setAttributeThreads(attributeThreads);
+	}
+
+	/**
+	 * Cleans the RefLinks on this many threads, see
+	 * RefNetwork.setCleanThreads.
+	 */
+	public void setCleanThreads(int cleanThreads) {
+		this.refNet.setCleanThreads(cleanThreads);
+	}
+
 	/**
 	 * @return the total number of parts in the RefNetwork.
 	 */
@@ -196,12 +714,19 @@ public class BuildRefNet {
 		return this.refNet.getNumberOfParts();
 	}
 
+	/**
+	 * Writes the nodes of the network, in the order of
+	 * RefNetwork.writeNodesToFile.
+	 */
 	public void writeRefNodesToFile(String path, String fileName) {
 		System.out.println("Info: Writing RefNodes to file.");
 		this.refNet.writeNodesToFile(path, fileName);
 		System.out.println("Info: Done writing data to file.");
 	}
 
+	/**
+	 * Writes the parts of the network, in the order of RefNetwork.writeToFile.
+	 */
 	public void writeRefNetworkToFile(String path, String fileName, boolean withAttributes) {
 		if (withAttributes) {
 			System.out.println("Info: Writing data to file with attributes.");
@@ -214,17 +739,22 @@ public class BuildRefNet {
 
 	public static void main(String[] args) {
 
-		String[] attributes = new String[] { "FUNCTIONAL_ROAD_CLASS", "LANES", "FORBIDDEN_DRIVER_DIRECTION", "SPEED" };
+		String[] attributes = ATTRIBUTE_TYPES;
 
 		String[] regions = {"E"};
 		int today = 20160603;
 
+		LoadOptions options = new LoadOptions();
+		options.setFetchSize(SQLDatabaseReader.DEFAULT_FETCH_SIZE);
+		options.setGeometryFormat(GeometryFormat.WKB);
+		options.setNbConnections(4);
+		options.setSnapshotPath("C:\\Users\\rasri17\\Desktop\\refnet\\");
+
 		BuildRefNet builder = new BuildRefNet("localhost", 5455, "mms", "XXXX", "XXXX", today, regions,
-				"C:\\Users\\rasri17\\Desktop\\", "log.txt");
+				"C:\\Users\\rasri17\\Desktop\\", "log.txt", options);
 
-		for (int i = 0; i < attributes.length; i++) {
-			builder.addAttribute(today, regions, attributes[i]);
-		}
+		builder.useNetworkRefLinkSet();
+		builder.addAttributes(today, regions, attributes);
 
 		builder.writeRefNetworkToFile("C:\\Users\\rasri17\\Desktop\\refnet\\",
 				"refnet_E-lan_dirty_" + today + ".csv", true);
@@ -241,7 +771,7 @@ public class BuildRefNet {
 		builder.close();
 	}
 
-	private void close() {
+	void close() {
 		this.closeNetwork();
 		this.closeConnections();
 	}
@@ -251,6 +781,8 @@ public class BuildRefNet {
 	}
 
 	public void closeConnections() {
-		this.dbr.closeConnection();
+		if (this.pool != null) {
+			this.pool.closeConnections();
+		}
 	}
 }
@@ -0,0 +1,52 @@
+package refnet;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * AttributeSource that reads a ;-separated dump of an attribute query, with
+ * the column names on the first line. Like an attribute ResultSet, the file
+ * only has the column(s) of its own attribute type, an empty field in one of
+ * them is read as 0. GEOM is WKT or hex-encoded WKB.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class CsvAttributeSource implements AttributeSource {
+	private final CsvRows rows;
+	private final boolean hasVelocity;
+	private final boolean hasVelocityDirection;
+	private final boolean hasLanes;
+	private final boolean hasFunctionalRoadClass;
+	private final boolean hasUnallowedDriveDir;
+
+	public CsvAttributeSource(File file) throws IOException {
+		this.rows = new CsvRows(file);
+		this.hasVelocity = this.rows.has("SPEED");
+		this.hasVelocityDirection = this.rows.has("SPEED_DIRECTION");
+		this.hasLanes = this.rows.has("LANES");
+		this.hasFunctionalRoadClass = this.rows.has("FUNCTIONAL_ROAD_CLASS");
+		this.hasUnallowedDriveDir = this.rows.has("FORBIDDEN_DIRECTION");
+	}
+
+	@Override
+	public AttributeRow next() throws IOException {
+		if (!this.rows.next()) {
+			return null;
+		}
+
+		return new AttributeRow(this.rows.get("REFLINK_OID"), this.rows.getDouble("MEASURE_FROM"),
+				this.rows.getDouble("MEASURE_TO"),
+				this.hasVelocity ? Double.valueOf(this.rows.getDouble("SPEED")) : null,
+				this.hasVelocityDirection ? Integer.valueOf(this.rows.getInt("SPEED_DIRECTION")) : null,
+				this.hasLanes ? Integer.valueOf(this.rows.getInt("LANES")) : null,
+				this.hasFunctionalRoadClass ? Integer.valueOf(this.rows.getInt("FUNCTIONAL_ROAD_CLASS")) : null,
+				this.hasUnallowedDriveDir ? Integer.valueOf(this.rows.getInt("FORBIDDEN_DIRECTION")) : null,
+				this.rows.getGeometry("GEOM"));
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.rows.close();
+	}
+}
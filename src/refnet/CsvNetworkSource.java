@@ -0,0 +1,36 @@
+package refnet;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * NetworkSource that reads a ;-separated dump of the network query, with the
+ * column names on the first line. Other columns than those of the query are
+ * ignored. GEOM is WKT or hex-encoded WKB.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class CsvNetworkSource implements NetworkSource {
+	private final CsvRows rows;
+
+	public CsvNetworkSource(File file) throws IOException {
+		this.rows = new CsvRows(file);
+	}
+
+	@Override
+	public RefLinkPartRow next() throws IOException {
+		if (!this.rows.next()) {
+			return null;
+		}
+
+		return new RefLinkPartRow(this.rows.get("REFLINK_OID"), this.rows.getDouble("MEASURE_FROM"),
+				this.rows.getDouble("MEASURE_TO"), this.rows.get("REFNODE_OID_FROM"), this.rows.get("REFNODE_OID_TO"),
+				this.rows.getGeometry("GEOM"));
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.rows.close();
+	}
+}
@@ -0,0 +1,171 @@
+package refnet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Reads a ;-separated file whose first line holds the column names, e.g. the
+ * output of COPY (...) TO ... WITH (FORMAT csv, DELIMITER ';', HEADER) of the
+ * queries in SQLDatabaseReader. The fields are split without quoting, WKT
+ * does not contain ';'. Column names are case insensitive.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+class CsvRows {
+	private static final char SEPARATOR = ';';
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final File file;
+	private final BufferedReader in;
+	private final HashMap<String, Integer> columns;
+	private final ArrayList<String> fields;
+	private long lineNumber;
+
+	CsvRows(File file) throws IOException {
+		this.file = file;
+		this.in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), BUFFER_SIZE);
+		this.columns = new HashMap<String, Integer>();
+		this.fields = new ArrayList<String>();
+		this.lineNumber = 0;
+
+		if (!this.next()) {
+			this.in.close();
+			throw new IOException(file + " has no header.");
+		}
+
+		for (int i = 0; i < this.fields.size(); i++) {
+			this.columns.put(this.fields.get(i).trim().toUpperCase(), i);
+		}
+	}
+
+	/**
+	 * Moves to the next non-empty line.
+	 * 
+	 * @return false at the end of the file.
+	 */
+	boolean next() throws IOException {
+		String line;
+
+		do {
+			line = this.in.readLine();
+			this.lineNumber++;
+
+			if (line == null) {
+				return false;
+			}
+		} while (line.isEmpty());
+
+		this.fields.clear();
+		int start = 0;
+		int end;
+
+		while ((end = line.indexOf(SEPARATOR, start)) >= 0) {
+			this.fields.add(line.substring(start, end));
+			start = end + 1;
+		}
+		this.fields.add(line.substring(start));
+
+		return true;
+	}
+
+	boolean has(String column) {
+		return this.columns.containsKey(column);
+	}
+
+	/**
+	 * Returns the field of the current line, or null if it is empty, \N or
+	 * null.
+	 * 
+	 * @throws IOException
+	 *             if the file has no such column.
+	 */
+	String get(String column) throws IOException {
+		Integer idx = this.columns.get(column);
+
+		if (idx == null) {
+			throw new IOException(this.file + " has no column " + column + ".");
+		} else if (idx.intValue() >= this.fields.size()) {
+			throw new IOException(this.file + ":" + this.lineNumber + " has too few fields.");
+		}
+
+		String field = this.fields.get(idx.intValue());
+
+		if (field.isEmpty() || field.equals("\\N") || field.equals("null")) {
+			return null;
+		}
+
+		return field;
+	}
+
+	/**
+	 * Returns a number field, 0 if it is null as getDouble/getInt of a
+	 * ResultSet would.
+	 */
+	double getDouble(String column) throws IOException {
+		String field = this.get(column);
+
+		try {
+			return (field == null) ? 0.0d : Double.parseDouble(field);
+		} catch (NumberFormatException nfe) {
+			throw new IOException(this.file + ":" + this.lineNumber + " " + column + " is not a number.", nfe);
+		}
+	}
+
+	int getInt(String column) throws IOException {
+		String field = this.get(column);
+
+		try {
+			return (field == null) ? 0 : Integer.parseInt(field.trim());
+		} catch (NumberFormatException nfe) {
+			throw new IOException(this.file + ":" + this.lineNumber + " " + column + " is not an integer.", nfe);
+		}
+	}
+
+	/**
+	 * Returns the GEOM field as a raw geometry value: WKT as a String and
+	 * hex-encoded WKB (starting with 00 or 01) as a byte[]. The \x prefix a
+	 * PostgreSQL COPY gives a bytea column, \\x in text format, is skipped.
+	 */
+	Object getGeometry(String column) throws IOException {
+		String field = this.get(column);
+
+		if (field != null) {
+			int prefix = field.startsWith("\\x") ? 2 : field.startsWith("\\\\x") ? 3 : 0;
+
+			if (prefix > 0) {
+				field = (field.length() > prefix) ? field.substring(prefix) : null;
+			}
+		}
+
+		if ((field == null) || (field.charAt(0) != '0')) {
+			return field;
+		}
+
+		if ((field.length() % 2) != 0) {
+			throw new IOException(this.file + ":" + this.lineNumber + " " + column + " is not hex-encoded WKB.");
+		}
+
+		byte[] wkb = new byte[field.length() / 2];
+		for (int i = 0; i < wkb.length; i++) {
+			int hi = Character.digit(field.charAt(2 * i), 16);
+			int lo = Character.digit(field.charAt(2 * i + 1), 16);
+
+			if ((hi < 0) || (lo < 0)) {
+				throw new IOException(this.file + ":" + this.lineNumber + " " + column + " is not hex-encoded WKB.");
+			}
+			wkb[i] = (byte) ((hi << 4) | lo);
+		}
+
+		return wkb;
+	}
+
+	void close() throws IOException {
+		this.in.close();
+	}
+}
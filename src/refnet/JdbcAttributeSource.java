@@ -0,0 +1,60 @@
+package refnet;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import io.SQLDatabaseReader;
+
+/**
+ * AttributeSource that reads the rows of an attribute query from DB.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class JdbcAttributeSource implements AttributeSource {
+	private final ResultSet rows;
+	private final SQLDatabaseReader dbr;
+
+	/**
+	 * Reads the rows of an already executed query. Closing the source does
+	 * not close the ResultSet.
+	 */
+	public JdbcAttributeSource(ResultSet rows) {
+		this.rows = rows;
+		this.dbr = null;
+	}
+
+	/**
+	 * Runs the attribute query of <b>dbr</b>, see BuildRefNet.queryAttribute.
+	 * Closing the source closes the ResultSet and the cursors of the reader.
+	 * 
+	 * @throws SQLException
+	 *             if the query failed.
+	 */
+	public JdbcAttributeSource(SQLDatabaseReader dbr, int today, String[] regions, String attributeType)
+			throws SQLException {
+		this.rows = BuildRefNet.queryAttribute(dbr, today, regions, attributeType);
+		this.dbr = dbr;
+	}
+
+	@Override
+	public AttributeRow next() throws IOException {
+		try {
+			return this.rows.next() ? AttributeRow.read(this.rows) : null;
+		} catch (SQLException se) {
+			throw new IOException(se);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.dbr != null) {
+			try {
+				this.rows.close();
+			} catch (SQLException e) {
+				/* ignored */ }
+			this.dbr.closeCursors();
+		}
+	}
+}
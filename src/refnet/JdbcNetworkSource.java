@@ -0,0 +1,60 @@
+package refnet;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import io.SQLDatabaseReader;
+
+/**
+ * NetworkSource that reads the rows of the network query from DB.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class JdbcNetworkSource implements NetworkSource {
+	private final ResultSet rows;
+	private final SQLDatabaseReader dbr;
+
+	/**
+	 * Reads the rows of an already executed query. Closing the source does
+	 * not close the ResultSet.
+	 */
+	public JdbcNetworkSource(ResultSet rows) {
+		this.rows = rows;
+		this.dbr = null;
+	}
+
+	/**
+	 * Runs the network query of <b>dbr</b>, see
+	 * SQLDatabaseReader.getNetworkByRegion. Closing the source closes the
+	 * ResultSet and the cursors of the reader.
+	 * 
+	 * @throws SQLException
+	 *             if the query failed.
+	 */
+	public JdbcNetworkSource(SQLDatabaseReader dbr, int today, String[] regions) throws SQLException {
+		this.rows = dbr.getNetworkByRegion(today, regions);
+		this.dbr = dbr;
+	}
+
+	@Override
+	public RefLinkPartRow next() throws IOException {
+		try {
+			return this.rows.next() ? RefLinkPartRow.read(this.rows) : null;
+		} catch (SQLException se) {
+			throw new IOException(se);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.dbr != null) {
+			try {
+				this.rows.close();
+			} catch (SQLException e) {
+				/* ignored */ }
+			this.dbr.closeCursors();
+		}
+	}
+}
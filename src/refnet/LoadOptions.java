@@ -0,0 +1,103 @@
+package refnet;
+
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import io.SQLDatabaseReader.GeometryFormat;
+
+/**
+ * The settings BuildRefNet loads a network with. The defaults are those of
+ * BuildRefNet without options: one connection, each query result read at
+ * once, geometries as WKT, no snapshot, floating coordinates and the
+ * geometries decoded on the reading thread.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class LoadOptions {
+
+	private int fetchSize = 0;
+	private GeometryFormat geometryFormat = GeometryFormat.WKT;
+	private int nbConnections = 1;
+	private String snapshotPath = null;
+	private PrecisionModel precisionModel = BuildRefNet.FLOATING;
+	private int loadThreads = 1;
+
+	public int getFetchSize() {
+		return this.fetchSize;
+	}
+
+	/**
+	 * If greater than 0, the network and the attributes are streamed from the
+	 * DB through server side cursors, this many rows at a time. 0 (the
+	 * default) reads each query result at once.
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = Math.max(0, fetchSize);
+	}
+
+	public GeometryFormat getGeometryFormat() {
+		return this.geometryFormat;
+	}
+
+	/**
+	 * WKB transfers geometries from the DB as binary, WKT (the default) as
+	 * text.
+	 */
+	public void setGeometryFormat(GeometryFormat geometryFormat) {
+		this.geometryFormat = geometryFormat;
+	}
+
+	public int getNbConnections() {
+		return this.nbConnections;
+	}
+
+	/**
+	 * Sets the number of DB connections, 1 by default. With more than one
+	 * connection and more than one region, the regions are loaded in
+	 * parallel.
+	 */
+	public void setNbConnections(int nbConnections) {
+		this.nbConnections = Math.max(1, nbConnections);
+	}
+
+	public String getSnapshotPath() {
+		return this.snapshotPath;
+	}
+
+	/**
+	 * Sets the directory of network snapshots, or null (the default) to always
+	 * read from DB. If there is a snapshot of the day and regions loaded, the
+	 * network and its attributes are read from it instead of from DB,
+	 * otherwise one is first written from DB. See NetworkSnapshot.
+	 */
+	public void setSnapshotPath(String snapshotPath) {
+		this.snapshotPath = snapshotPath;
+	}
+
+	public PrecisionModel getPrecisionModel() {
+		return this.precisionModel;
+	}
+
+	/**
+	 * Sets the PrecisionModel of the coordinates of the network, see
+	 * RefNetwork(String, String, PrecisionModel). BuildRefNet.FLOATING by
+	 * default.
+	 */
+	public void setPrecisionModel(PrecisionModel precisionModel) {
+		this.precisionModel = precisionModel;
+	}
+
+	public int getLoadThreads() {
+		return this.loadThreads;
+	}
+
+	/**
+	 * Sets the number of threads the network geometries are decoded on, 1 (the
+	 * default) to decode them on the thread reading the rows. With more, the
+	 * rows are loaded through RefLinkPartPipeline. The regions loaded in
+	 * parallel on several connections are not affected.
+	 */
+	public void setLoadThreads(int loadThreads) {
+		this.loadThreads = Math.max(1, loadThreads);
+	}
+}
@@ -0,0 +1,775 @@
+package refnet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.io.ParseException;
+
+import io.GeometryReader;
+import io.SQLDatabaseReader;
+import io.SQLDatabaseReaderPool;
+
+/**
+ * A local copy of everything a RefNetwork is built from for one date and one
+ * set of regions: the rows of the network query and of the attribute queries,
+ * exactly as they were returned by SQLDatabaseReader. A RefNetwork built from
+ * a snapshot is the same as one built from DB, the RefNodes are created from
+ * the RefLinkParts as usual.
+ *
+ * The file is binary with one section per query. LineString geometries are
+ * stored as packed x/y-doubles and every OID is written once per section and
+ * then referred to by number, so that equal OIDs are also shared in memory
+ * when the snapshot is read. Sections are read through memory mapped windows
+ * of the file.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class NetworkSnapshot {
+	private static final int MAGIC = 0x524E5331; // "RNS1"
+	private static final int VERSION = 1;
+
+	/**
+	 * Name of the section with the rows of the network query, the attribute
+	 * sections are named by their attribute type.
+	 */
+	public static final String NETWORK = "NETWORK";
+
+	private static final byte ROW = 1;
+	private static final byte END = 0;
+
+	private static final byte GEOM_NULL = 0;
+	private static final byte GEOM_LINESTRING = 1;
+	private static final byte GEOM_WKB = 2;
+	private static final byte GEOM_WKT = 3;
+
+	private static final int HAS_VELOCITY = 1;
+	private static final int HAS_VELOCITY_DIRECTION = 2;
+	private static final int HAS_LANES = 4;
+	private static final int HAS_FUNCTIONAL_ROAD_CLASS = 8;
+	private static final int HAS_UNALLOWED_DRIVE_DIR = 16;
+
+	private static final int NEW_STRING = -2;
+	private static final int NULL_STRING = -1;
+
+	private static final int WINDOW = 64 * 1024 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final int today;
+	private final String[] regions;
+	private final LinkedHashMap<String, long[]> sections;
+
+	private NetworkSnapshot(File file, int today, String[] regions, LinkedHashMap<String, long[]> sections) {
+		this.file = file;
+		this.today = today;
+		this.regions = regions;
+		this.sections = sections;
+	}
+
+	/**
+	 * Returns the snapshot file of a date and a set of regions in directory
+	 * <b>path</b>, e.g. refnet_20160603_AB-C.snapshot. The order of the regions
+	 * does not matter.
+	 */
+	public static File fileFor(String path, int today, String[] regions) {
+		StringBuilder name = new StringBuilder("refnet_" + today + "_");
+		String[] sorted = NetworkSnapshot.sorted(regions);
+
+		for (int i = 0; i < sorted.length; i++) {
+			if (i > 0) {
+				name.append('-');
+			}
+			name.append(sorted[i]);
+		}
+
+		return new File(path, name.append(".snapshot").toString());
+	}
+
+	/**
+	 * Opens a snapshot file.
+	 *
+	 * @return the snapshot, or null if there is no such file or if it was
+	 *         written for another date or other regions.
+	 * @throws IOException
+	 *             if the file could not be read or is not a snapshot.
+	 */
+	public static NetworkSnapshot open(File file, int today, String[] regions) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				throw new IOException("Not a snapshot, or a snapshot of another version: " + file);
+			}
+
+			int snapshotToday = in.readInt();
+			String[] snapshotRegions = new String[in.readInt()];
+			for (int i = 0; i < snapshotRegions.length; i++) {
+				snapshotRegions[i] = in.readUTF();
+			}
+
+			LinkedHashMap<String, long[]> sections = new LinkedHashMap<String, long[]>();
+			int nbSections = in.readInt();
+			for (int i = 0; i < nbSections; i++) {
+				String name = in.readUTF();
+				sections.put(name, new long[] { in.readLong(), in.readLong() });
+			}
+
+			NetworkSnapshot snapshot = new NetworkSnapshot(file, snapshotToday, snapshotRegions, sections);
+
+			if (!snapshot.matches(today, regions)) {
+				return null;
+			}
+
+			long end = 0;
+			for (long[] section : sections.values()) {
+				end = Math.max(end, section[0] + section[1]);
+			}
+			if (end > file.length()) {
+				throw new IOException("Snapshot is truncated: " + file);
+			}
+
+			return snapshot;
+		} catch (EOFException eofe) {
+			throw new IOException("Snapshot is truncated: " + file, eofe);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the network and the given attribute types from DB and writes them
+	 * to a new snapshot file, replacing any old file. The queries are run at
+	 * the same time, on at most pool.size() connections.
+	 *
+	 * @param attributeTypes
+	 *            see {@link BuildRefNet#queryAttribute}.
+	 * @return the new snapshot.
+	 * @throws SQLException
+	 *             if any of the queries failed.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	public static NetworkSnapshot create(SQLDatabaseReaderPool pool, int today, String[] regions,
+			String[] attributeTypes, File file) throws SQLException, IOException {
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(pool.size(), attributeTypes.length + 1));
+		LinkedHashMap<String, Future<File>> written = new LinkedHashMap<String, Future<File>>();
+		LinkedHashMap<String, File> sectionFiles = new LinkedHashMap<String, File>();
+		File tmp = new File(dir, file.getName() + ".tmp");
+
+		try {
+			written.put(NETWORK, executor.submit(new SectionTask(pool, today, regions, NETWORK, dir)));
+			for (String attributeType : attributeTypes) {
+				written.put(attributeType.toUpperCase(),
+						executor.submit(new SectionTask(pool, today, regions, attributeType, dir)));
+			}
+
+			for (Map.Entry<String, Future<File>> section : written.entrySet()) {
+				try {
+					sectionFiles.put(section.getKey(), ParallelNetworkLoader.get(section.getValue()));
+				} catch (ParseException pe) {
+					// Not thrown, undecodable geometries are stored as they are.
+					throw new SQLException(pe);
+				}
+			}
+
+			NetworkSnapshot snapshot = NetworkSnapshot.write(tmp, today, regions, sectionFiles);
+
+			if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+				throw new IOException("Could not replace " + file);
+			}
+
+			return new NetworkSnapshot(file, snapshot.today, snapshot.regions, snapshot.sections);
+		} finally {
+			executor.shutdownNow();
+
+			for (Future<File> section : written.values()) {
+				try {
+					if (section.isDone() && !section.isCancelled()) {
+						section.get().delete();
+					}
+				} catch (Exception e) {
+					/* failed sections have no file */ }
+			}
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Writes the header and appends the section files.
+	 */
+	static NetworkSnapshot write(File file, int today, String[] regions, LinkedHashMap<String, File> sectionFiles)
+			throws IOException {
+
+		String[] sorted = NetworkSnapshot.sorted(regions);
+		LinkedHashMap<String, long[]> sections = new LinkedHashMap<String, long[]>();
+
+		// The header has the same size whatever the offsets are.
+		for (Map.Entry<String, File> section : sectionFiles.entrySet()) {
+			sections.put(section.getKey(), new long[] { 0, section.getValue().length() });
+		}
+
+		long offset = NetworkSnapshot.header(today, sorted, sections).length;
+		for (long[] section : sections.values()) {
+			section[0] = offset;
+			offset = offset + section[1];
+		}
+
+		FileOutputStream out = new FileOutputStream(file);
+
+		try {
+			out.write(NetworkSnapshot.header(today, sorted, sections));
+
+			FileChannel target = out.getChannel();
+			for (File sectionFile : sectionFiles.values()) {
+				FileInputStream in = new FileInputStream(sectionFile);
+				try {
+					FileChannel source = in.getChannel();
+					long position = 0;
+					long size = source.size();
+					while (position < size) {
+						position = position + source.transferTo(position, size - position, target);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		return new NetworkSnapshot(file, today, sorted, sections);
+	}
+
+	private static byte[] header(int today, String[] regions, LinkedHashMap<String, long[]> sections)
+			throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(today);
+		out.writeInt(regions.length);
+		for (String region : regions) {
+			out.writeUTF(region);
+		}
+		out.writeInt(sections.size());
+		for (Map.Entry<String, long[]> section : sections.entrySet()) {
+			out.writeUTF(section.getKey());
+			out.writeLong(section.getValue()[0]);
+			out.writeLong(section.getValue()[1]);
+		}
+		out.flush();
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns true if this snapshot was written for this date and these
+	 * regions, in any order.
+	 */
+	public boolean matches(int today, String[] regions) {
+		return (this.today == today) && Arrays.equals(this.regions, NetworkSnapshot.sorted(regions));
+	}
+
+	/**
+	 * Returns true if the snapshot has the attribute type, e.g. "SPEED".
+	 */
+	public boolean hasAttributes(String attributeType) {
+		return this.sections.containsKey(attributeType.toUpperCase());
+	}
+
+	/**
+	 * Returns the snapshot file.
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Adds the RefLinkParts of the snapshot to the network, in the order the
+	 * rows were returned by the network query.
+	 *
+	 * @throws IOException
+	 *             if the snapshot could not be read.
+	 * @throws ParseException
+	 *             if a geometry was refused.
+	 * @throws ClassCastException
+	 *             if a geometry was not a LineString.
+	 */
+	public void loadNetwork(RefNetwork rn) throws IOException, ParseException, ClassCastException {
+		NetworkSource source = this.networkSource(rn.geometryFactory);
+
+		try {
+			rn.addRefLinkParts(source);
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Reads and consolidates one attribute type of the snapshot, see
+	 * RefNetwork.readAttributes. Several types may be read at the same time.
+	 *
+	 * @throws IOException
+	 *             if the snapshot could not be read.
+	 */
+	public ArrayList<ArrayList<Attribute>> readAttributes(String attributeType, RefNetwork rn) throws IOException {
+		AttributeSource source = this.attributeSource(attributeType, rn.geometryFactory);
+
+		try {
+			return rn.readAttributes(source, new GeometryReader(rn.geometryFactory));
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Returns the rows of the network query. LineStrings are created by
+	 * <b>gf</b>.
+	 */
+	public NetworkSource networkSource(final GeometryFactory gf) throws IOException {
+		final SectionInput in = this.section(NETWORK);
+
+		return new NetworkSource() {
+			@Override
+			public RefLinkPartRow next() throws IOException {
+				if (in.readByte() != ROW) {
+					return null;
+				}
+
+				return new RefLinkPartRow(in.readString(), in.readDouble(), in.readDouble(), in.readString(),
+						in.readString(), in.readGeometry(gf));
+			}
+
+			@Override
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+
+	/**
+	 * Returns the rows of one attribute query. LineStrings are created by
+	 * <b>gf</b>.
+	 */
+	public AttributeSource attributeSource(String attributeType, final GeometryFactory gf) throws IOException {
+		final SectionInput in = this.section(attributeType.toUpperCase());
+
+		return new AttributeSource() {
+			@Override
+			public AttributeRow next() throws IOException {
+				if (in.readByte() != ROW) {
+					return null;
+				}
+
+				String refLinkOid = in.readString();
+				double measureFrom = in.readDouble();
+				double measureTo = in.readDouble();
+				int has = in.readByte();
+
+				Double velocity = ((has & HAS_VELOCITY) != 0) ? Double.valueOf(in.readDouble()) : null;
+				Integer velocityDirection = ((has & HAS_VELOCITY_DIRECTION) != 0) ? Integer.valueOf(in.readInt())
+						: null;
+				Integer lanes = ((has & HAS_LANES) != 0) ? Integer.valueOf(in.readInt()) : null;
+				Integer functionalRoadClass = ((has & HAS_FUNCTIONAL_ROAD_CLASS) != 0)
+						? Integer.valueOf(in.readInt()) : null;
+				Integer unallowedDriveDir = ((has & HAS_UNALLOWED_DRIVE_DIR) != 0) ? Integer.valueOf(in.readInt())
+						: null;
+
+				return new AttributeRow(refLinkOid, measureFrom, measureTo, velocity, velocityDirection, lanes,
+						functionalRoadClass, unallowedDriveDir, in.readGeometry(gf));
+			}
+
+			@Override
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+
+	private SectionInput section(String name) throws IOException {
+		long[] section = this.sections.get(name);
+
+		if (section == null) {
+			throw new IOException("Snapshot " + this.file + " has no section " + name);
+		}
+
+		return new SectionInput(this.file, section[0], section[1]);
+	}
+
+	private static String[] sorted(String[] regions) {
+		String[] sorted = regions.clone();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Runs one query and writes its rows to a section file.
+	 */
+	private static class SectionTask implements Callable<File> {
+		private final SQLDatabaseReaderPool pool;
+		private final int today;
+		private final String[] regions;
+		private final String name;
+		private final File dir;
+
+		SectionTask(SQLDatabaseReaderPool pool, int today, String[] regions, String name, File dir) {
+			this.pool = pool;
+			this.today = today;
+			this.regions = regions;
+			this.name = name;
+			this.dir = dir;
+		}
+
+		@Override
+		public File call() throws SQLException, IOException {
+			SQLDatabaseReader dbr = this.pool.take();
+			ResultSet result = null;
+
+			try {
+				System.out.println("Info: Writing " + this.name + " from DB to snapshot.");
+
+				if (this.name.equals(NETWORK)) {
+					result = dbr.getNetworkByRegion(this.today, this.regions);
+				} else {
+					result = BuildRefNet.queryAttribute(dbr, this.today, this.regions, this.name);
+				}
+
+				return NetworkSnapshot.writeSection(this.name, result, this.dir);
+			} finally {
+				if (result != null) {
+					try {
+						result.close();
+					} catch (SQLException e) {
+						/* ignored */ }
+				}
+				dbr.closeCursors();
+				this.pool.release(dbr);
+			}
+		}
+	}
+
+	/**
+	 * Writes all rows of a network query (name NETWORK) or of an attribute
+	 * query to a new section file in <b>dir</b>.
+	 */
+	static File writeSection(String name, ResultSet result, File dir) throws SQLException, IOException {
+		File file = File.createTempFile("refnet_", ".section", dir);
+		GeometryReader gr = new GeometryReader(
+				new GeometryFactory(new PrecisionModel(PrecisionModel.FLOATING), RefNetwork.SRID));
+		SectionOutput out = null;
+
+		try {
+			out = new SectionOutput(file);
+
+			if (name.equals(NETWORK)) {
+				while (result.next()) {
+					RefLinkPartRow row = RefLinkPartRow.read(result);
+					out.writeByte(ROW);
+					out.writeString(row.refLinkOid);
+					out.writeDouble(row.measureFrom);
+					out.writeDouble(row.measureTo);
+					out.writeString(row.nodeFromOid);
+					out.writeString(row.nodeToOid);
+					out.writeGeometry(row.geometry, gr);
+				}
+			} else {
+				while (result.next()) {
+					AttributeRow row = AttributeRow.read(result);
+					int has = ((row.velocity != null) ? HAS_VELOCITY : 0)
+							| ((row.velocityDirection != null) ? HAS_VELOCITY_DIRECTION : 0)
+							| ((row.lanes != null) ? HAS_LANES : 0)
+							| ((row.functionalRoadClass != null) ? HAS_FUNCTIONAL_ROAD_CLASS : 0)
+							| ((row.unallowedDriveDir != null) ? HAS_UNALLOWED_DRIVE_DIR : 0);
+
+					out.writeByte(ROW);
+					out.writeString(row.refLinkOid);
+					out.writeDouble(row.measureFrom);
+					out.writeDouble(row.measureTo);
+					out.writeByte(has);
+					if (row.velocity != null) {
+						out.writeDouble(row.velocity.doubleValue());
+					}
+					if (row.velocityDirection != null) {
+						out.writeInt(row.velocityDirection.intValue());
+					}
+					if (row.lanes != null) {
+						out.writeInt(row.lanes.intValue());
+					}
+					if (row.functionalRoadClass != null) {
+						out.writeInt(row.functionalRoadClass.intValue());
+					}
+					if (row.unallowedDriveDir != null) {
+						out.writeInt(row.unallowedDriveDir.intValue());
+					}
+					out.writeGeometry(row.geometry, gr);
+				}
+			}
+
+			out.writeByte(END);
+			out.close();
+			out = null;
+
+			return file;
+		} catch (SQLException se) {
+			NetworkSnapshot.close(out);
+			file.delete();
+			throw se;
+		} catch (IOException ioe) {
+			NetworkSnapshot.close(out);
+			file.delete();
+			throw ioe;
+		}
+	}
+
+	private static void close(SectionOutput out) {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				/* ignored */ }
+		}
+	}
+
+	/**
+	 * Writes the rows of one section.
+	 */
+	private static class SectionOutput {
+		private final DataOutputStream out;
+		private final HashMap<String, Integer> strings;
+
+		SectionOutput(File file) throws IOException {
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			this.strings = new HashMap<String, Integer>();
+		}
+
+		void writeByte(int b) throws IOException {
+			this.out.writeByte(b);
+		}
+
+		void writeInt(int i) throws IOException {
+			this.out.writeInt(i);
+		}
+
+		void writeDouble(double d) throws IOException {
+			this.out.writeDouble(d);
+		}
+
+		/**
+		 * Writes the number of a String already written, or the String
+		 * itself the first time.
+		 */
+		void writeString(String s) throws IOException {
+			if (s == null) {
+				this.out.writeInt(NULL_STRING);
+				return;
+			}
+
+			Integer idx = this.strings.get(s);
+
+			if (idx != null) {
+				this.out.writeInt(idx.intValue());
+			} else {
+				this.strings.put(s, this.strings.size());
+				this.out.writeInt(NEW_STRING);
+				this.writeBytes(s.getBytes(UTF8));
+			}
+		}
+
+		void writeBytes(byte[] b) throws IOException {
+			this.out.writeInt(b.length);
+			this.out.write(b);
+		}
+
+		/**
+		 * Writes a raw geometry value. A LineString is written as its
+		 * coordinates, anything else, including empty geometries and values
+		 * that can not be decoded, is written as it came from DB so that it is
+		 * treated in the same way when the snapshot is read.
+		 */
+		void writeGeometry(Object raw, GeometryReader gr) throws IOException {
+			Geometry geometry = null;
+
+			if (raw != null) {
+				try {
+					geometry = gr.read(raw);
+				} catch (ParseException pe) {
+					geometry = null;
+				} catch (RuntimeException re) {
+					geometry = null;
+				}
+			}
+
+			if (raw == null) {
+				this.out.writeByte(GEOM_NULL);
+			} else if ((geometry instanceof LineString) && !geometry.isEmpty()) {
+				Coordinate[] C = geometry.getCoordinates();
+				this.out.writeByte(GEOM_LINESTRING);
+				this.out.writeInt(C.length);
+				for (Coordinate c : C) {
+					this.out.writeDouble(c.x);
+					this.out.writeDouble(c.y);
+				}
+			} else if (raw instanceof byte[]) {
+				this.out.writeByte(GEOM_WKB);
+				this.writeBytes((byte[]) raw);
+			} else {
+				this.out.writeByte(GEOM_WKT);
+				this.writeBytes(raw.toString().getBytes(UTF8));
+			}
+		}
+
+		void close() throws IOException {
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Reads the rows of one section through a memory mapped window that is
+	 * moved along the file.
+	 */
+	private static class SectionInput {
+		private final RandomAccessFile raf;
+		private final FileChannel channel;
+		private final long end;
+		private final ArrayList<String> strings;
+		private MappedByteBuffer window;
+		private long windowStart;
+
+		SectionInput(File file, long offset, long length) throws IOException {
+			this.raf = new RandomAccessFile(file, "r");
+			this.channel = this.raf.getChannel();
+			this.end = offset + length;
+			this.strings = new ArrayList<String>();
+			this.windowStart = offset;
+			this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, offset,
+					Math.min(WINDOW, this.end - offset));
+		}
+
+		/**
+		 * Makes sure that the next n bytes are inside the window.
+		 */
+		private void require(int n) throws IOException {
+			if (this.window.remaining() >= n) {
+				return;
+			}
+
+			long position = this.windowStart + this.window.position();
+
+			if (position + n > this.end) {
+				throw new IOException("Snapshot section is truncated.");
+			}
+
+			this.windowStart = position;
+			this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position,
+					Math.min(Math.max(WINDOW, n), this.end - position));
+		}
+
+		byte readByte() throws IOException {
+			this.require(1);
+			return this.window.get();
+		}
+
+		int readInt() throws IOException {
+			this.require(4);
+			return this.window.getInt();
+		}
+
+		double readDouble() throws IOException {
+			this.require(8);
+			return this.window.getDouble();
+		}
+
+		byte[] readBytes() throws IOException {
+			byte[] b = new byte[this.readInt()];
+			this.require(b.length);
+			this.window.get(b);
+			return b;
+		}
+
+		String readString() throws IOException {
+			int idx = this.readInt();
+
+			if (idx == NULL_STRING) {
+				return null;
+			} else if (idx == NEW_STRING) {
+				String s = new String(this.readBytes(), UTF8);
+				this.strings.add(s);
+				return s;
+			} else {
+				return this.strings.get(idx);
+			}
+		}
+
+		/**
+		 * Reads a geometry as a raw geometry value, see
+		 * GeometryReader.read(Object). The coordinates of a LineString are
+		 * rounded to the PrecisionModel of gf, as GeometryReader does.
+		 */
+		Object readGeometry(GeometryFactory gf) throws IOException {
+			byte kind = this.readByte();
+
+			if (kind == GEOM_NULL) {
+				return null;
+			} else if (kind == GEOM_LINESTRING) {
+				int n = this.readInt();
+				this.require(16 * n);
+
+				PrecisionModel pm = gf.getPrecisionModel();
+				Coordinate[] C = new Coordinate[n];
+				for (int i = 0; i < n; i++) {
+					double x = pm.makePrecise(this.window.getDouble());
+					C[i] = new Coordinate(x, pm.makePrecise(this.window.getDouble()));
+				}
+
+				return gf.createLineString(C);
+			} else if (kind == GEOM_WKB) {
+				return this.readBytes();
+			} else if (kind == GEOM_WKT) {
+				return new String(this.readBytes(), UTF8);
+			} else {
+				throw new IOException("Unknown geometry in snapshot: " + kind);
+			}
+		}
+
+		void close() throws IOException {
+			this.raf.close();
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package refnet;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A stream of the rows a RefNetwork is built from, i.e. the columns of the
+ * network query (REFLINK_OID, MEASURE_FROM, MEASURE_TO, REFNODE_OID_FROM,
+ * REFNODE_OID_TO, GEOM), wherever they are read from.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public interface NetworkSource extends Closeable {
+
+	/**
+	 * Returns the next row, or null if there are no more rows.
+	 * 
+	 * @throws IOException
+	 *             if the row could not be read.
+	 */
+	public RefLinkPartRow next() throws IOException;
+}
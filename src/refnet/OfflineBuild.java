@@ -0,0 +1,125 @@
+package refnet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Builds a RefNetwork from files instead of DB, e.g. to benchmark or profile
+ * loading, attribute addition and cleaning, or to replay the input of a
+ * production run. The time of each step is printed.
+ *
+ * Usage: OfflineBuild outputPath network [attribute ...]
+ *
+ * where network is a ;-separated dump of the network query (see
+ * CsvNetworkSource) or a snapshot (*.snapshot, see NetworkSnapshot), and each
+ * attribute is a ;-separated dump of an attribute query (see
+ * CsvAttributeSource) or, for a snapshot, an attribute type such as SPEED.
+ * The cleaned network is finally frozen into a RefGraph.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class OfflineBuild {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 2) {
+			System.out.println("Usage: OfflineBuild outputPath network [attribute ...]");
+			return;
+		}
+
+		String outputPath = args[0];
+		BuildRefNet builder = OfflineBuild.load(outputPath, "log.txt", new File(args[1]),
+				Arrays.copyOfRange(args, 2, args.length));
+
+		if (builder == null) {
+			return;
+		}
+
+		builder.writeRefNetworkToFile(outputPath, "refnet_dirty.csv", true);
+		builder.writeRefNodesToFile(outputPath, "refnodes_dirty.csv");
+
+		long start = System.currentTimeMillis();
+		builder.clean();
+		System.out.println("Info: Cleaned network in " + (System.currentTimeMillis() - start) + " ms.");
+
+		builder.writeRefNetworkToFile(outputPath, "refnet_clean.csv", true);
+		builder.writeRefNodesToFile(outputPath, "refnodes_clean.csv");
+
+		start = System.currentTimeMillis();
+		RefGraph graph = RefGraphBuilder.build(builder.getRefNetwork());
+		System.out.println("Info: Built graph of " + graph.getNbNodes() + " nodes and " + graph.getNbEdges()
+				+ " edges in " + (System.currentTimeMillis() - start) + " ms.");
+
+		builder.close();
+	}
+
+	/**
+	 * Loads the network of networkFile and adds the attributes, printing the
+	 * time of each step. Returns null if networkFile is named as a snapshot
+	 * but is not one.
+	 */
+	static BuildRefNet load(String outputPath, String logFileName, File networkFile, String[] attributes)
+			throws IOException {
+		NetworkSnapshot snapshot = null;
+		NetworkSource network;
+
+		if (networkFile.getName().endsWith(".snapshot")) {
+			snapshot = NetworkSnapshot.open(networkFile, OfflineBuild.snapshotToday(networkFile),
+					OfflineBuild.snapshotRegions(networkFile));
+			if (snapshot == null) {
+				System.out.println("OfflineBuild: " + networkFile + " is not a snapshot.");
+				return null;
+			}
+			network = null;
+		} else {
+			network = new CsvNetworkSource(networkFile);
+		}
+
+		long start = System.currentTimeMillis();
+		BuildRefNet builder;
+		if (snapshot != null) {
+			builder = new BuildRefNet(snapshot, outputPath, logFileName);
+		} else {
+			builder = new BuildRefNet(network, outputPath, logFileName);
+		}
+		System.out.println("Info: Loaded network in " + (System.currentTimeMillis() - start) + " ms.");
+
+		for (String attribute : attributes) {
+			start = System.currentTimeMillis();
+			if (snapshot != null) {
+				builder.addAttribute(attribute, snapshot.attributeSource(attribute, builder.getRefNetwork().geometryFactory));
+			} else {
+				builder.addAttribute(attribute, new CsvAttributeSource(new File(attribute)));
+			}
+			System.out.println("Info: Added " + attribute + " in " + (System.currentTimeMillis() - start) + " ms.");
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Reads the date of refnet_YYYYMMDD_REGIONS.snapshot.
+	 */
+	private static int snapshotToday(File file) {
+		try {
+			return Integer.parseInt(file.getName().split("_")[1]);
+		} catch (RuntimeException re) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads the regions of refnet_YYYYMMDD_REGIONS.snapshot.
+	 */
+	private static String[] snapshotRegions(File file) {
+		String name = file.getName();
+
+		try {
+			return name.substring(name.indexOf('_', 7) + 1, name.length() - ".snapshot".length()).split("-");
+		} catch (RuntimeException re) {
+			return new String[0];
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package refnet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import util.LongRegistry;
+import util.NameGenerator;
+
+/**
+ * Gives the RefLinks of a RefNetwork their consolidated attributes on several
+ * threads. Adding an attribute list only changes the parts of its RefLink, so
+ * the lists are grouped by RefLink and the groups are shared among the
+ * threads, each group keeping its lists in order.
+ *
+ * The new nodes are named by forks of the NameGenerator of the network, one
+ * per list, which are joined in list order once all threads are done. The new
+ * nodes are then added to the network in list order as well, so the result is
+ * the same as adding the lists one after another, see
+ * RefNetwork.addAttribute(ArrayList, long).
+ *
+ * In sweep mode the lists of a RefLink are instead added together, see
+ * RefNetwork.applyAttributeLayers, named by one fork in the place of the
+ * first list of the RefLink.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class ParallelAttributeApplier {
+	private static final int GROUPS_PER_TASK = 64;
+
+	/**
+	 * Adds the attribute lists to <b>rn</b>.
+	 *
+	 * @param consolidated
+	 *            as returned by RefNetwork.readAttributes.
+	 * @param threads
+	 *            number of threads to use.
+	 * @param sweep
+	 *            true to add all lists of a RefLink in one sweep.
+	 */
+	public static void apply(RefNetwork rn, List<ArrayList<Attribute>> consolidated, int threads, boolean sweep) {
+		LongRegistry<RefLink> refLinks = rn.getRefLinkRegistry();
+		LongRegistry<Group> groups = new LongRegistry<Group>();
+
+		for (int l = 0; l < consolidated.size(); l++) {
+			ArrayList<Attribute> attributes = consolidated.get(l);
+
+			if (!attributes.isEmpty()) {
+				long oid = attributes.get(0).getOid();
+				int r = refLinks.indexOf(oid);
+
+				if (r >= 0) {
+					int g = groups.getOrCreate(oid);
+
+					if (groups.valueAt(g) == null) {
+						groups.setValueAt(g, new Group(refLinks.valueAt(r)));
+					}
+					groups.valueAt(g).lists.add(l);
+				}
+			}
+		}
+
+		NameGenerator[] forks = new NameGenerator[consolidated.size()];
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ArrayList<RefNode>[] newNodes = new ArrayList[consolidated.size()];
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Void>> tasks = new ArrayList<Future<Void>>();
+
+		try {
+			for (int g = 0; g < groups.size(); g += GROUPS_PER_TASK) {
+				tasks.add(executor.submit(new GroupTask(rn, consolidated, groups, g,
+						Math.min(g + GROUPS_PER_TASK, groups.size()), sweep, forks, newNodes)));
+			}
+
+			for (Future<Void> task : tasks) {
+				ParallelAttributeApplier.get(task);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		NameGenerator nmg = rn.getNameGenerator();
+
+		for (int l = 0; l < consolidated.size(); l++) {
+			if (forks[l] != null) {
+				nmg.join(forks[l]);
+			}
+		}
+
+		for (int g = 0; g < groups.size(); g++) {
+			Group group = groups.valueAt(g);
+
+			group.refLink.resolveNodes(group.fork);
+		}
+
+		for (int l = 0; l < consolidated.size(); l++) {
+			if (forks[l] != null) {
+				ArrayList<RefNode> nodes = new ArrayList<RefNode>(newNodes[l].size());
+
+				for (RefNode node : newNodes[l]) {
+					nodes.add(new RefNode(forks[l].resolve(node.getOid()), node.getPoint(), true));
+				}
+				rn.addNodes(nodes);
+			}
+		}
+	}
+
+	/**
+	 * Waits for a task and rethrows what it threw.
+	 */
+	private static void get(Future<Void> task) {
+		try {
+			task.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while adding attributes.", ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+
+	/**
+	 * The attribute lists of one RefLink, by index in list order.
+	 */
+	private static class Group {
+		final RefLink refLink;
+		final ArrayList<Integer> lists;
+		NameGenerator fork;
+
+		Group(RefLink refLink) {
+			this.refLink = refLink;
+			this.lists = new ArrayList<Integer>(1);
+		}
+	}
+
+	/**
+	 * Adds the attribute lists of the groups first to last - 1. The lists of a
+	 * group are named by a chain of forks, so their provisional codes do not
+	 * clash.
+	 */
+	private static class GroupTask implements Callable<Void> {
+		private final RefNetwork rn;
+		private final List<ArrayList<Attribute>> consolidated;
+		private final LongRegistry<Group> groups;
+		private final int first;
+		private final int last;
+		private final boolean sweep;
+		private final NameGenerator[] forks;
+		private final ArrayList<RefNode>[] newNodes;
+
+		GroupTask(RefNetwork rn, List<ArrayList<Attribute>> consolidated, LongRegistry<Group> groups, int first,
+				int last, boolean sweep, NameGenerator[] forks, ArrayList<RefNode>[] newNodes) {
+			this.rn = rn;
+			this.consolidated = consolidated;
+			this.groups = groups;
+			this.first = first;
+			this.last = last;
+			this.sweep = sweep;
+			this.forks = forks;
+			this.newNodes = newNodes;
+		}
+
+		@Override
+		public Void call() {
+			for (int g = this.first; g < this.last; g++) {
+				Group group = this.groups.valueAt(g);
+				NameGenerator fork = this.rn.getNameGenerator();
+
+				if (this.sweep) {
+					ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+					int firstList = group.lists.get(0);
+
+					for (int l : group.lists) {
+						attributes.addAll(this.consolidated.get(l));
+					}
+					fork = fork.fork();
+					this.forks[firstList] = fork;
+					this.newNodes[firstList] = this.rn.sweepAttributes(group.refLink, attributes, fork);
+				} else {
+					for (int l : group.lists) {
+						fork = fork.fork();
+						this.forks[l] = fork;
+						this.newNodes[l] = this.rn.addAttributes(group.refLink, this.consolidated.get(l), fork);
+					}
+				}
+				group.fork = fork;
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package refnet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vividsolutions.jts.io.ParseException;
+
+import io.GeometryReader;
+import io.SQLDatabaseReader;
+import io.SQLDatabaseReaderPool;
+
+/**
+ * Loads several attribute types at the same time, one query per type on its
+ * own connection. Each type is read and consolidated by a worker thread while
+ * the calling thread adds the finished types to the RefNetwork in the given
+ * order, so the result is the same as adding the types one after another. In
+ * sweep mode all types are added at once when the last one is read, see
+ * RefNetwork.applyAttributeLayers.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class ParallelAttributeLoader {
+
+	/**
+	 * Loads all attribute types into <b>rn</b>.
+	 *
+	 * @param pool
+	 *            the types are loaded on at most pool.size() connections.
+	 * @param rn
+	 *            network the attributes are added to.
+	 * @param today
+	 *            YYYYMMDD integer.
+	 * @param regions
+	 *            e.g. {"AB", "C"}.
+	 * @param attributeTypes
+	 *            see {@link BuildRefNet#queryAttribute}.
+	 * @throws SQLException
+	 *             if any of the queries failed.
+	 */
+	public static void load(SQLDatabaseReaderPool pool, RefNetwork rn, int today, String[] regions,
+			String[] attributeTypes) throws SQLException {
+		ParallelAttributeLoader.load(pool, rn, today, regions, attributeTypes, false);
+	}
+
+	/**
+	 * Same as load, but with sweep true the types are added in one sweep per
+	 * RefLink.
+	 */
+	public static void load(SQLDatabaseReaderPool pool, RefNetwork rn, int today, String[] regions,
+			String[] attributeTypes, boolean sweep) throws SQLException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(pool.size(), attributeTypes.length));
+		ArrayList<Future<ArrayList<ArrayList<Attribute>>>> types = new ArrayList<Future<ArrayList<ArrayList<Attribute>>>>();
+		ArrayList<ArrayList<ArrayList<Attribute>>> layers = new ArrayList<ArrayList<ArrayList<Attribute>>>();
+
+		try {
+			for (String attributeType : attributeTypes) {
+				types.add(executor.submit(new AttributeTask(pool, rn, today, regions, attributeType)));
+			}
+
+			for (int i = 0; i < attributeTypes.length; i++) {
+				ArrayList<ArrayList<Attribute>> attributes;
+
+				try {
+					attributes = ParallelNetworkLoader.get(types.get(i));
+				} catch (ParseException pe) {
+					// Not thrown, refused attribute geometries are logged and
+					// skipped by readAttributes.
+					throw new SQLException(pe);
+				}
+
+				if (sweep) {
+					layers.add(attributes);
+				} else {
+					System.out.println("Info: Adding attribute " + attributeTypes[i] + " to the network.");
+					rn.applyAttributes(attributes);
+				}
+				types.set(i, null);
+			}
+
+			if (sweep) {
+				System.out.println("Info: Adding " + attributeTypes.length + " attributes to the network.");
+				rn.applyAttributeLayers(layers);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads and consolidates one attribute type.
+	 */
+	private static class AttributeTask implements Callable<ArrayList<ArrayList<Attribute>>> {
+		private final SQLDatabaseReaderPool pool;
+		private final RefNetwork rn;
+		private final int today;
+		private final String[] regions;
+		private final String attributeType;
+
+		AttributeTask(SQLDatabaseReaderPool pool, RefNetwork rn, int today, String[] regions, String attributeType) {
+			this.pool = pool;
+			this.rn = rn;
+			this.today = today;
+			this.regions = regions;
+			this.attributeType = attributeType;
+		}
+
+		@Override
+		public ArrayList<ArrayList<Attribute>> call() throws SQLException {
+			GeometryReader gr = new GeometryReader(this.rn.geometryFactory);
+			SQLDatabaseReader dbr = this.pool.take();
+			ResultSet result = null;
+
+			try {
+				System.out.println("Info: Loading attribute " + this.attributeType + " from DB.");
+				result = BuildRefNet.queryAttribute(dbr, this.today, this.regions, this.attributeType);
+
+				return this.rn.readAttributes(result, gr);
+			} finally {
+				if (result != null) {
+					try {
+						result.close();
+					} catch (SQLException e) {
+						/* ignored */ }
+				}
+				dbr.closeCursors();
+				this.pool.release(dbr);
+			}
+		}
+	}
+}
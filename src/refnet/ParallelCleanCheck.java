@@ -0,0 +1,104 @@
+package refnet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * Builds a RefNetwork from files twice, see OfflineBuild, cleans it once
+ * RefLink by RefLink and once with ParallelCleaner, and checks that the two
+ * cleaned networks and their nodes are written identically.
+ *
+ * Usage: ParallelCleanCheck outputPath threads network [attribute ...]
+ *
+ * The files are written to outputPath as refnet_clean_seq.csv,
+ * refnodes_clean_seq.csv, refnet_clean_par.csv and refnodes_clean_par.csv.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class ParallelCleanCheck {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 3) {
+			System.out.println("Usage: ParallelCleanCheck outputPath threads network [attribute ...]");
+			return;
+		}
+
+		String outputPath = args[0];
+		int threads = Integer.parseInt(args[1]);
+		File networkFile = new File(args[2]);
+		String[] attributes = Arrays.copyOfRange(args, 3, args.length);
+
+		for (int p = 0; p < 2; p++) {
+			String suffix = (p == 0) ? "seq" : "par";
+			BuildRefNet builder = OfflineBuild.load(outputPath, "log_" + suffix + ".txt", networkFile, attributes);
+
+			if (builder == null) {
+				return;
+			}
+
+			if (p == 1) {
+				builder.setCleanThreads(threads);
+			}
+
+			long start = System.currentTimeMillis();
+			builder.clean();
+			System.out.println("Info: Cleaned network (" + suffix + ") in " + (System.currentTimeMillis() - start)
+					+ " ms.");
+
+			builder.writeRefNetworkToFile(outputPath, "refnet_clean_" + suffix + ".csv", true);
+			builder.writeRefNodesToFile(outputPath, "refnodes_clean_" + suffix + ".csv");
+			builder.close();
+		}
+
+		boolean same = ParallelCleanCheck.compare(outputPath, "refnet_clean")
+				& ParallelCleanCheck.compare(outputPath, "refnodes_clean");
+
+		if (!same) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compares name_seq.csv with name_par.csv line by line and prints the
+	 * first line that differs.
+	 */
+	private static boolean compare(String path, String name) throws IOException {
+		BufferedReader seq = ParallelCleanCheck.open(new File(path, name + "_seq.csv"));
+		BufferedReader par = ParallelCleanCheck.open(new File(path, name + "_par.csv"));
+
+		try {
+			String s;
+			String p;
+			int line = 0;
+
+			do {
+				s = seq.readLine();
+				p = par.readLine();
+				line++;
+
+				if ((s == null) ? (p != null) : !s.equals(p)) {
+					System.out.println("ParallelCleanCheck: " + name + " differs at line " + line + ".");
+					System.out.println("         sequential: " + s);
+					System.out.println("         parallel:   " + p);
+					return false;
+				}
+			} while (s != null);
+
+			System.out.println("ParallelCleanCheck: " + name + " is identical, " + (line - 1) + " lines.");
+			return true;
+		} finally {
+			seq.close();
+			par.close();
+		}
+	}
+
+	private static BufferedReader open(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+	}
+}
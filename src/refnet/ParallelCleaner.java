@@ -0,0 +1,112 @@
+package refnet;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import util.LongRegistry;
+
+/**
+ * Cleans the RefLinks of an aligned RefNetwork on several threads, see
+ * RefNetwork.clean. Cleaning a RefLink only changes its own parts and reads
+ * the number of incoming and outgoing links of its nodes, which is fixed once
+ * the network is aligned, so the RefLinks are shared among the threads as
+ * they are.
+ *
+ * A node that a RefLink merges away has that RefLink as its only incoming
+ * and outgoing link, so no other RefLink reads it. The nodes are removed once
+ * all threads are done, in RefLink order, and the result is the same as
+ * cleaning the RefLinks one after another.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class ParallelCleaner {
+	private static final int LINKS_PER_TASK = 64;
+
+	/**
+	 * Cleans all RefLinks of <b>rn</b> and removes the nodes merged away.
+	 *
+	 * @param threads
+	 *            number of threads to use.
+	 */
+	public static void clean(RefNetwork rn, int threads) {
+		LongRegistry<RefLink> refLinks = rn.getRefLinkRegistry();
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ArrayList<Long>[] removed = new ArrayList[refLinks.size()];
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Void>> tasks = new ArrayList<Future<Void>>();
+
+		try {
+			for (int i = 0; i < refLinks.size(); i += LINKS_PER_TASK) {
+				tasks.add(executor.submit(new CleanTask(rn, refLinks, i,
+						Math.min(i + LINKS_PER_TASK, refLinks.size()), removed)));
+			}
+
+			for (Future<Void> task : tasks) {
+				ParallelCleaner.get(task);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (int i = 0; i < removed.length; i++) {
+			rn.removePassThroughNodes(removed[i]);
+		}
+	}
+
+	/**
+	 * Waits for a task and rethrows what it threw.
+	 */
+	private static void get(Future<Void> task) {
+		try {
+			task.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while cleaning the network.", ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Cleans the RefLinks first to last - 1 and keeps the nodes each of them
+	 * merged away.
+	 */
+	private static class CleanTask implements Callable<Void> {
+		private final RefNetwork rn;
+		private final LongRegistry<RefLink> refLinks;
+		private final int first;
+		private final int last;
+		private final ArrayList<Long>[] removed;
+
+		CleanTask(RefNetwork rn, LongRegistry<RefLink> refLinks, int first, int last, ArrayList<Long>[] removed) {
+			this.rn = rn;
+			this.refLinks = refLinks;
+			this.first = first;
+			this.last = last;
+			this.removed = removed;
+		}
+
+		@Override
+		public Void call() {
+			for (int i = this.first; i < this.last; i++) {
+				this.removed[i] = this.rn.cleanRefLink(this.refLinks.valueAt(i));
+			}
+
+			return null;
+		}
+	}
+}
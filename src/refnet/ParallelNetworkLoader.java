@@ -0,0 +1,142 @@
+package refnet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vividsolutions.jts.io.ParseException;
+
+import io.GeometryReader;
+import io.SQLDatabaseReader;
+import io.SQLDatabaseReaderPool;
+
+/**
+ * Loads the network of several regions (l&auml;n) at the same time, one query
+ * per region on its own connection. The parts of each region are read and
+ * decoded by a worker thread and then added to the RefNetwork by the calling
+ * thread, region by region in the given order, so that the result does not
+ * depend on which region finished first.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class ParallelNetworkLoader {
+
+	/**
+	 * Loads all regions into <b>rn</b>.
+	 *
+	 * @param pool
+	 *            the regions are loaded on at most pool.size() connections.
+	 * @param rn
+	 *            network the parts are added to. RefNodes on the border of two
+	 *            regions are shared through their OID.
+	 * @param today
+	 *            YYYYMMDD integer.
+	 * @param regions
+	 *            e.g. {"AB", "C"}.
+	 * @throws SQLException
+	 *             if any of the queries failed.
+	 * @throws ParseException
+	 *             if any of the geometries were refused.
+	 * @throws ClassCastException
+	 *             if any of the geometries was not a LineString.
+	 */
+	public static void load(SQLDatabaseReaderPool pool, RefNetwork rn, int today, String[] regions)
+			throws SQLException, ParseException, ClassCastException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(pool.size(), regions.length));
+		ArrayList<Future<ArrayList<RefLinkPart>>> regionParts = new ArrayList<Future<ArrayList<RefLinkPart>>>();
+
+		try {
+			for (String region : regions) {
+				regionParts.add(executor.submit(new RegionTask(pool, rn, today, region)));
+			}
+
+			for (Future<ArrayList<RefLinkPart>> parts : regionParts) {
+				rn.addRefLinkParts(ParallelNetworkLoader.get(parts));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for a task and rethrows what it threw.
+	 */
+	static <T> T get(Future<T> task) throws SQLException, ParseException, ClassCastException {
+		try {
+			return task.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for data from DB.", ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			} else if (cause instanceof ParseException) {
+				throw (ParseException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new SQLException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Reads and decodes the parts of one region.
+	 */
+	private static class RegionTask implements Callable<ArrayList<RefLinkPart>> {
+		private final SQLDatabaseReaderPool pool;
+		private final RefNetwork rn;
+		private final int today;
+		private final String region;
+
+		RegionTask(SQLDatabaseReaderPool pool, RefNetwork rn, int today, String region) {
+			this.pool = pool;
+			this.rn = rn;
+			this.today = today;
+			this.region = region;
+		}
+
+		@Override
+		public ArrayList<RefLinkPart> call() throws SQLException, ParseException {
+			ArrayList<RefLinkPart> parts = new ArrayList<RefLinkPart>();
+			GeometryReader gr = new GeometryReader(this.rn.geometryFactory);
+			SQLDatabaseReader dbr = this.pool.take();
+			ResultSet result = null;
+
+			try {
+				System.out.println("Info: Loading region " + this.region + " from DB.");
+				result = dbr.getNetworkByRegion(this.today, new String[] { this.region });
+
+				while (result.next()) {
+					RefLinkPart part = this.rn.readRefLinkPart(result, gr);
+
+					if (part != null) {
+						parts.add(part);
+					}
+				}
+
+				return parts;
+			} finally {
+				if (result != null) {
+					try {
+						result.close();
+					} catch (SQLException e) {
+						/* ignored */ }
+				}
+				dbr.closeCursors();
+				this.pool.release(dbr);
+			}
+		}
+	}
+}
@@ -1,10 +1,14 @@
 package refnet;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 import util.GeometryOps;
+import util.OidCodec;
+import util.Polyline;
 
 /**
  * Fundamental building block of the smallest possible representation of a link
@@ -14,22 +18,22 @@ import util.GeometryOps;
  * @version 1.0
  */
 public class Part {
-	private final String refLinkOid;
+	private final long refLinkOid;
 	private double measureFrom;
 	private double measureTo;
 	private LineString geom;
+	private boolean geomCached;
 	private double length;
-	private Double vel;
-	private Integer velDirection;
-	private Integer lanes;
-	private Integer functionalRoadClass;
-	private Integer unallowedDriveDir;
+	private final PartStore store;
+	private final int index;
 
 	/**
 	 * Default constructor.
 	 * 
+	 * @param store
+	 *            holds the attributes (velocity etc.) of the part.
 	 * @param refLinkOid
-	 *            the String representation of the parent RefLink.
+	 *            the OidCodec code of the parent RefLink.
 	 * @param geometry
 	 *            is a jts.geom.Geometry LineString object.
 	 * @param measureFrom
@@ -52,7 +56,7 @@ public class Part {
 	 * @throws IllegalArgumentException
 	 *             if any parameter has an illegal value (outside value range).
 	 */
-	public Part(String refLinkOid, LineString geometry, double measureFrom, double measureTo, Double velocity,
+	public Part(PartStore store, long refLinkOid, LineString geometry, double measureFrom, double measureTo, Double velocity,
 			Integer velocityDirection, Integer nbLanes, Integer functionalRoadClass, Integer unallDriveDir) {
 
 		if ((Double.compare(measureFrom, measureTo) == 0) && (Double.compare(measureFrom, measureTo) > 0)) {
@@ -80,17 +84,33 @@ public class Part {
 		this.refLinkOid = refLinkOid;
 		this.measureFrom = measureFrom;
 		this.measureTo = measureTo;
+		this.store = store;
+		this.index = store.allocate();
+
+		store.setGeometry(this.index, geometry);
 		this.geom = geometry;
+		this.geomCached = true;
 		try {
-			this.length = this.geom.getLength();
+			this.length = this.getGeometry().getLength();
 		} catch (java.lang.NullPointerException npe) {
 			this.length = 0.0d;
 		}
-		this.vel = velocity;
-		this.velDirection = velocityDirection;
-		this.lanes = nbLanes;
-		this.functionalRoadClass = functionalRoadClass;
-		this.unallowedDriveDir = unallDriveDir;
+
+		if (velocity != null) {
+			store.setVelocity(this.index, velocity);
+		}
+		if (velocityDirection != null) {
+			store.setVelocityDirection(this.index, velocityDirection);
+		}
+		if (nbLanes != null) {
+			store.setLanes(this.index, nbLanes);
+		}
+		if (functionalRoadClass != null) {
+			store.setFunctionalRoadClass(this.index, functionalRoadClass);
+		}
+		if (unallDriveDir != null) {
+			store.setUnallowedDriveDir(this.index, unallDriveDir);
+		}
 	}
 
 	/**
@@ -103,10 +123,20 @@ public class Part {
 		SPEED, LANES, FUNCTIONAL_ROADCLASS, FORBIDDEN_DRIVER_DIRECTION;
 	}
 
-	public String getOid() {
+	/**
+	 * Returns the OidCodec code of the parent RefLink.
+	 */
+	public long getOid() {
 		return this.refLinkOid;
 	}
 
+	/**
+	 * Returns the OID of the parent RefLink.
+	 */
+	public String getOidString() {
+		return OidCodec.toString(this.refLinkOid);
+	}
+
 	/**
 	 * Returns the length of this objects geometry in meters.
 	 */
@@ -129,17 +159,52 @@ public class Part {
 	}
 
 	/**
-	 * Returns this objects geometry.
+	 * Returns this objects geometry. The LineString is created from the
+	 * PartStore on first use and kept until releaseGeometry.
 	 */
 	public LineString getGeometry() {
+		if (!this.geomCached) {
+			this.geom = this.store.getLineString(this.index);
+			this.geomCached = true;
+		}
 		return this.geom;
 	}
 
+	/**
+	 * Drops the LineString of this object, leaving only the coordinates in
+	 * the PartStore. Called when an operation on the part is done.
+	 */
+	public void releaseGeometry() {
+		this.geom = null;
+		this.geomCached = false;
+	}
+
+	/**
+	 * Gives the PartStore slot of this object back, see PartStore.free. Called
+	 * when the part is merged away or dropped, the object must not be used
+	 * afterwards.
+	 */
+	public void dispose() {
+		this.releaseGeometry();
+		this.store.free(this.index);
+	}
+
 	/**
 	 * Returns a WKT-formatted representation of this objects geometry.
 	 */
 	public String getGeometryAsStr() {
-		return this.geom.toText();
+		if (this.geomCached) {
+			return this.getGeometry().toText();
+		}
+		return this.store.getLineString(this.index).toText();
+	}
+
+	/**
+	 * Returns the PartStore index of this object, its coordinates are found
+	 * through PartStore.getBuffer.
+	 */
+	int getIndex() {
+		return this.index;
 	}
 
 	/**
@@ -152,8 +217,7 @@ public class Part {
 	 *             if the conversion from String to Geometry failed.
 	 */
 	public void setGeometry(String geometryStr) throws ParseException {
-		this.geom = (LineString) new WKTReader().read(geometryStr);
-		this.length = this.geom.getLength();
+		this.setGeometry((LineString) new WKTReader().read(geometryStr));
 	}
 
 	/**
@@ -163,8 +227,44 @@ public class Part {
 	 *            the new Geometry.
 	 */
 	public void setGeometry(LineString geometry) {
+		this.length = geometry.getLength();
+		this.store.setGeometry(this.index, geometry);
 		this.geom = geometry;
-		this.length = this.geom.getLength();
+		this.geomCached = true;
+	}
+
+	/**
+	 * Sets the geometry and length of this object to the given piece of a
+	 * split, written straight to the PartStore from the packed coordinates.
+	 */
+	public void setGeometry(GeometryOps.Pieces pieces, int piece) {
+		this.store.setGeometry(this.index, pieces.getBuffer(), pieces.getFirst(piece), pieces.getLast(piece));
+		this.length = this.store.getLength(this.index);
+		this.releaseGeometry();
+	}
+
+	/**
+	 * Splits the geometry of this object at P, as GeometryOps.splitBy but on
+	 * the coordinates in the PartStore, see GeometryOps.split.
+	 */
+	public GeometryOps.Pieces splitBy(Point[] P, double tolerance, boolean allowSlack) {
+		return GeometryOps.split(this.store.getBuffer(this.index), this.store.getOffset(this.index),
+				this.store.getNbCoordinates(this.index), P, tolerance, allowSlack);
+	}
+
+	/**
+	 * Sets the geometry and length of this object to the geometry of first
+	 * followed by that of second, as
+	 * setGeometry(GeometryOps.append(first.getGeometry(), second.getGeometry(), gf, false))
+	 * but written straight to the PartStore. Either may be this object.
+	 */
+	public void setGeometry(Part first, Part second) {
+		first.nbCoordinates();
+		second.nbCoordinates();
+
+		this.store.setJoinedGeometry(this.index, first.store, first.index, second.store, second.index);
+		this.length = this.store.getLength(this.index);
+		this.releaseGeometry();
 	}
 
 	/**
@@ -182,23 +282,63 @@ public class Part {
 	}
 
 	public Double getVelocity() {
-		return this.vel;
+		return this.hasAttribute(PartStore.VELOCITY) ? Double.valueOf(this.velocity()) : null;
 	}
 
 	public Integer getVelocityDirection() {
-		return this.velDirection;
+		return this.hasAttribute(PartStore.VELOCITY_DIRECTION) ? Integer.valueOf(this.velocityDirection()) : null;
 	}
 
 	public Integer getNumberOfLanes() {
-		return this.lanes;
+		return this.hasAttribute(PartStore.LANES) ? Integer.valueOf(this.lanes()) : null;
 	}
 
 	public Integer getFunctionalRoadClass() {
-		return this.functionalRoadClass;
+		return this.hasAttribute(PartStore.FUNCTIONAL_ROAD_CLASS) ? Integer.valueOf(this.functionalRoadClass())
+				: null;
 	}
 
 	public Integer getUnallowedDriverDir() {
-		return this.unallowedDriveDir;
+		return this.hasAttribute(PartStore.UNALLOWED_DRIVE_DIR) ? Integer.valueOf(this.unallowedDriveDir()) : null;
+	}
+
+	/**
+	 * Returns true if the attribute (PartStore.VELOCITY, PartStore.LANES...)
+	 * of this object is not null.
+	 */
+	public boolean hasAttribute(int attribute) {
+		return this.store.has(this.index, attribute);
+	}
+
+	/*
+	 * Unboxed values, only valid if hasAttribute.
+	 */
+
+	double velocity() {
+		return this.store.getVelocity(this.index);
+	}
+
+	int velocityDirection() {
+		return this.store.getVelocityDirection(this.index);
+	}
+
+	int lanes() {
+		return this.store.getLanes(this.index);
+	}
+
+	int functionalRoadClass() {
+		return this.store.getFunctionalRoadClass(this.index);
+	}
+
+	int unallowedDriveDir() {
+		return this.store.getUnallowedDriveDir(this.index);
+	}
+
+	/**
+	 * Returns the PartStore holding the attributes of this object.
+	 */
+	PartStore getStore() {
+		return this.store;
 	}
 
 	/**
@@ -206,7 +346,7 @@ public class Part {
 	 */
 	public void setVelocity(double velocity) {
 		if (velocity >= 0) {
-			this.vel = velocity;
+			this.store.setVelocity(this.index, velocity);
 		}
 	}
 
@@ -214,8 +354,12 @@ public class Part {
 	 * Replace the current direction of the posted speed limit.
 	 */
 	public void setVelocityDirection(Integer velocityDirection) {
+		this.setVelocityDirection(velocityDirection.intValue());
+	}
+
+	private void setVelocityDirection(int velocityDirection) {
 		if ((velocityDirection >= 1) && (velocityDirection <= 3)) {
-			this.velDirection = velocityDirection;
+			this.store.setVelocityDirection(this.index, velocityDirection);
 		}
 	}
 
@@ -224,7 +368,7 @@ public class Part {
 	 */
 	public void setLanes(int nbLanes) {
 		if (nbLanes >= 0) {
-			this.lanes = nbLanes;
+			this.store.setLanes(this.index, nbLanes);
 		}
 	}
 
@@ -233,7 +377,7 @@ public class Part {
 	 */
 	public void setClassification(int classific) {
 		if ((classific >= 0) && (classific <= 9)) {
-			this.functionalRoadClass = classific;
+			this.store.setFunctionalRoadClass(this.index, classific);
 		}
 	}
 
@@ -242,7 +386,7 @@ public class Part {
 	 */
 	public void setUnallowedDriverDir(int unaDriveDir) {
 		if ((unaDriveDir >= 1) && (unaDriveDir <= 3)) {
-			this.unallowedDriveDir = unaDriveDir;
+			this.store.setUnallowedDriveDir(this.index, unaDriveDir);
 		}
 	}
 
@@ -251,24 +395,52 @@ public class Part {
 	 * the value equals (==) null, it is ignored.
 	 */
 	public void addAttribute(Attribute attribute) {
-		if (attribute.getNumberOfLanes() != null) {
-			this.setLanes(attribute.getNumberOfLanes());
+		if (attribute.hasAttribute(PartStore.LANES)) {
+			this.setLanes(attribute.lanes());
 		}
 
-		if (attribute.getVelocity() != null) {
-			this.setVelocity(attribute.getVelocity());
+		if (attribute.hasAttribute(PartStore.VELOCITY)) {
+			this.setVelocity(attribute.velocity());
 		}
 
-		if (attribute.getVelocityDirection() != null) {
-			this.setVelocityDirection(attribute.getVelocityDirection());
+		if (attribute.hasAttribute(PartStore.VELOCITY_DIRECTION)) {
+			this.setVelocityDirection(attribute.velocityDirection());
+		}
+		if (attribute.hasAttribute(PartStore.FUNCTIONAL_ROAD_CLASS)) {
+			this.setClassification(attribute.functionalRoadClass());
 		}
-		if (attribute.getFunctionalRoadClass() != null) {
-			this.setClassification(attribute.getFunctionalRoadClass());
+
+		if (attribute.hasAttribute(PartStore.UNALLOWED_DRIVE_DIR)) {
+			this.setUnallowedDriverDir(attribute.unallowedDriveDir());
 		}
+	}
 
-		if (attribute.getUnallowedDriverDir() != null) {
-			this.setUnallowedDriverDir(attribute.getUnallowedDriverDir());
+	/**
+	 * Returns true if every attribute (speed, lanes etc.) of this is either
+	 * null in both this and other or has the same value in both.
+	 */
+	public boolean attributesEqual(Part other) {
+		int present = this.store.present(this.index);
+
+		if (present != other.store.present(other.index)) {
+			return false;
+		} else if (((present & PartStore.VELOCITY) != 0)
+				&& (Double.doubleToLongBits(this.velocity()) != Double.doubleToLongBits(other.velocity()))) {
+			return false;
+		} else if (((present & PartStore.VELOCITY_DIRECTION) != 0)
+				&& (this.velocityDirection() != other.velocityDirection())) {
+			return false;
+		} else if (((present & PartStore.LANES) != 0) && (this.lanes() != other.lanes())) {
+			return false;
+		} else if (((present & PartStore.FUNCTIONAL_ROAD_CLASS) != 0)
+				&& (this.functionalRoadClass() != other.functionalRoadClass())) {
+			return false;
+		} else if (((present & PartStore.UNALLOWED_DRIVE_DIR) != 0)
+				&& (this.unallowedDriveDir() != other.unallowedDriveDir())) {
+			return false;
 		}
+
+		return true;
 	}
 
 	/**
@@ -276,7 +448,75 @@ public class Part {
 	 * the same class, has the same points and the points are in the same order.
 	 */
 	public boolean geomEquals(Part other) {
-		return this.geom.equalsExact(other.getGeometry());
+		int n = this.nbCoordinates();
+
+		if (n != other.nbCoordinates()) {
+			return false;
+		}
+
+		double[] xy = this.store.getBuffer(this.index);
+		double[] otherXy = other.store.getBuffer(other.index);
+		int offset = this.store.getOffset(this.index);
+		int otherOffset = other.store.getOffset(other.index);
+
+		for (int i = 0; i < 2 * n; i++) {
+			if (xy[offset + i] != otherXy[otherOffset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the envelopes of the geometries of this and other, both
+	 * grown by margin, intersect. Parts for which this is false cannot have
+	 * points closer than margin, see hasCommonGeometry.
+	 */
+	public boolean envelopeIntersects(Part other, double margin) {
+		PartStore s = this.store;
+		PartStore o = other.store;
+
+		return (s.getMinX(this.index) - margin <= o.getMaxX(other.index) + margin)
+				&& (o.getMinX(other.index) - margin <= s.getMaxX(this.index) + margin)
+				&& (s.getMinY(this.index) - margin <= o.getMaxY(other.index) + margin)
+				&& (o.getMinY(other.index) - margin <= s.getMaxY(this.index) + margin);
+	}
+
+	/**
+	 * Returns the envelope of this geometry grown by margin.
+	 */
+	public Envelope getEnvelope(double margin) {
+		return new Envelope(this.store.getMinX(this.index) - margin, this.store.getMaxX(this.index) + margin,
+				this.store.getMinY(this.index) - margin, this.store.getMaxY(this.index) + margin);
+	}
+
+	/**
+	 * Returns true if the geometries of this and other have the same number
+	 * of points and each point of this lies within <b>tolerance</b> of the
+	 * point of other in the same place, as LineString.equalsExact(other,
+	 * tolerance).
+	 */
+	public boolean geomEquals(Part other, double tolerance) {
+		int n = this.nbCoordinates();
+
+		if (n != other.nbCoordinates()) {
+			return false;
+		}
+
+		double[] xy = this.store.getBuffer(this.index);
+		double[] otherXy = other.store.getBuffer(other.index);
+		int offset = this.store.getOffset(this.index);
+		int otherOffset = other.store.getOffset(other.index);
+
+		for (int i = 0; i < 2 * n; i += 2) {
+			double dx = xy[offset + i] - otherXy[otherOffset + i];
+			double dy = xy[offset + i + 1] - otherXy[otherOffset + i + 1];
+
+			if (!(Math.sqrt(dx * dx + dy * dy) <= tolerance)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -302,8 +542,8 @@ public class Part {
 	 */
 	public boolean geomIsCompletelyWithin(Part other, GeometryFactory gf) {
 		if (this.geomIsWithin(other, gf)) {
-			if (!(this.geom.getStartPoint().equalsExact(other.getGeometry().getStartPoint()))) {
-				if (!(this.geom.getEndPoint().equalsExact(other.getGeometry().getEndPoint()))) {
+			if (!this.pointEquals(0, other, 0)) {
+				if (!this.pointEquals(-1, other, -1)) {
 					return true;
 				}
 			}
@@ -316,7 +556,7 @@ public class Part {
 	 * the geometry of other with a tolerance of 0.000000001.
 	 */
 	public boolean geomStartsWithin(Part other, GeometryFactory gf) {
-		return GeometryOps.spansPoint(other.getGeometry(), this.geom.getStartPoint(), gf, 0.0000000001d, true);
+		return other.spans(this.ordinate(0, 0), this.ordinate(0, 1));
 	}
 
 	/**
@@ -324,7 +564,86 @@ public class Part {
 	 * the geometry of other with a tolerance of 0.000000001.
 	 */
 	public boolean geomEndsWithin(Part other, GeometryFactory gf) {
-		return GeometryOps.spansPoint(other.getGeometry(), this.geom.getEndPoint(), gf, 0.0000000001d, true);
+		return other.spans(this.ordinate(-1, 0), this.ordinate(-1, 1));
+	}
+
+	/**
+	 * Returns true if the end point of this geometry equals the start point
+	 * of the geometry of other.
+	 */
+	public boolean endMeetsStart(Part other) {
+		return this.pointEquals(-1, other, 0);
+	}
+
+	public double getStartX() {
+		return this.ordinate(0, 0);
+	}
+
+	public double getStartY() {
+		return this.ordinate(0, 1);
+	}
+
+	public double getEndX() {
+		return this.ordinate(-1, 0);
+	}
+
+	public double getEndY() {
+		return this.ordinate(-1, 1);
+	}
+
+	/**
+	 * Returns true if (x, y) lies on some segment of this geometry with a
+	 * tolerance of 0.000000001, or one grid step with fixed coordinates, see
+	 * GeometryOps.spansPoint.
+	 */
+	private boolean spans(double x, double y) {
+		return Polyline.spans(this.store.getBuffer(this.index), this.store.getOffset(this.index),
+				this.nbCoordinates(), x, y, this.store.getTolerance(0.0000000001d), true);
+	}
+
+	/**
+	 * Returns how far from this geometry a point may lie and still be found on
+	 * it by spans, the tolerance of spans times the slack of Polyline.spans.
+	 */
+	double pointReach() {
+		return this.store.getTolerance(0.0000000001d) * Polyline.SLACK;
+	}
+
+	/**
+	 * Returns true if coordinate c of this geometry equals coordinate
+	 * otherC of the geometry of other, see ordinate.
+	 */
+	private boolean pointEquals(int c, Part other, int otherC) {
+		return (this.ordinate(c, 0) == other.ordinate(otherC, 0)) && (this.ordinate(c, 1) == other.ordinate(otherC, 1));
+	}
+
+	/**
+	 * Returns the x (xy = 0) or y (xy = 1) ordinate of coordinate c of this
+	 * geometry, read from the PartStore. A negative c counts from the end, -1
+	 * is the end point.
+	 */
+	private double ordinate(int c, int xy) {
+		int n = this.nbCoordinates();
+
+		if (n == 0) {
+			throw new IllegalStateException("Part of RefLink " + this.getOidString() + " has an empty geometry.");
+		}
+		return this.store.getBuffer(this.index)[this.store.getOffset(this.index) + 2 * ((c < 0) ? n + c : c) + xy];
+	}
+
+	/**
+	 * Returns the number of coordinates of this geometry.
+	 *
+	 * @throws IllegalStateException
+	 *             if this object has no geometry.
+	 */
+	int nbCoordinates() {
+		int n = this.store.getNbCoordinates(this.index);
+
+		if (n < 0) {
+			throw new IllegalStateException("Part of RefLink " + this.getOidString() + " has no geometry.");
+		}
+		return n;
 	}
 
 	/**
@@ -344,9 +663,9 @@ public class Part {
 	 */
 	public boolean hasCommonGeometry(Part other, GeometryFactory gf) {
 
-		if (this.geom.getStartPoint().equalsExact(other.getGeometry().getEndPoint())) {
+		if (this.pointEquals(0, other, -1)) {
 			return false;
-		} else if (other.getGeometry().getStartPoint().equalsExact(this.geom.getEndPoint())) {
+		} else if (other.pointEquals(0, this, -1)) {
 			return false;
 		} else {
 			if (this.geomEquals(other)) {
@@ -363,9 +682,9 @@ public class Part {
 				return true;
 			} else if (other.geomStartsWithin(this, gf)) {
 				return true;
-			} else if (other.getGeometry().getStartPoint().equalsExact(this.geom.getStartPoint())) {
+			} else if (other.pointEquals(0, this, 0)) {
 				return true;
-			} else if (other.getGeometry().getEndPoint().equalsExact(this.geom.getEndPoint())) {
+			} else if (other.pointEquals(-1, this, -1)) {
 				return true;
 			}
 		}
@@ -0,0 +1,586 @@
+package refnet;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+
+import util.GeometryOps;
+import util.LongRegistry;
+
+/**
+ * Columnar storage of the attributes (speed, lanes etc.) and geometries of
+ * Parts. Each attribute is kept in a primitive array, and whether it is null
+ * in a set of presence bits, so a Part only holds its index here instead of
+ * five boxed fields. The coordinates of the geometries are packed (x1, y1,
+ * x2, y2...) in shared double[] buffers, LineStrings are only created from
+ * them on demand, see getLineString. The envelope of each geometry is kept
+ * as well, so that parts far apart are told without reading the coordinates.
+ *
+ * The columns and buffers are split in pages that never move once created.
+ * Slots are handed out by allocate, which is thread safe, and threads may
+ * then write the slots of different Parts at the same time: the presence
+ * bits of a Part are kept in a byte of its own so that no two Parts share a
+ * word.
+ *
+ * The slot of a Part that is merged away or dropped is given back by free,
+ * and so are the coordinates a slot no longer uses. Both are handed out
+ * again, coordinates to geometries of the same number of coordinates, so
+ * that splitting and merging parts does not keep growing the store.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class PartStore {
+	public static final int VELOCITY = 1;
+	public static final int VELOCITY_DIRECTION = 2;
+	public static final int LANES = 4;
+	public static final int FUNCTIONAL_ROAD_CLASS = 8;
+	public static final int UNALLOWED_DRIVE_DIR = 16;
+
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private static final int BUFFER_SIZE = 1 << 15;
+
+	/**
+	 * Buffer of a slot that was given back.
+	 */
+	private static final int FREE = -2;
+
+	private final GeometryFactory geometryFactory;
+	private volatile Page[] pages;
+	private int size;
+	private volatile double[][] buffers;
+	private int currentBuffer;
+	private int bufferPosition;
+	private int[] freeSlots;
+	private int nbFreeSlots;
+	private LongRegistry<FreeRanges> freeRanges;
+
+	/**
+	 * One page of the columns.
+	 */
+	private static final class Page {
+		final byte[] present = new byte[PAGE_SIZE];
+		final double[] velocity = new double[PAGE_SIZE];
+		final byte[] velocityDirection = new byte[PAGE_SIZE];
+		final int[] lanes = new int[PAGE_SIZE];
+		final byte[] functionalRoadClass = new byte[PAGE_SIZE];
+		final byte[] unallowedDriveDir = new byte[PAGE_SIZE];
+		final int[] buffer = new int[PAGE_SIZE];
+		final int[] offset = new int[PAGE_SIZE];
+		final int[] nbCoordinates = new int[PAGE_SIZE];
+		final int[] capacity = new int[PAGE_SIZE];
+		final double[] minX = new double[PAGE_SIZE];
+		final double[] minY = new double[PAGE_SIZE];
+		final double[] maxX = new double[PAGE_SIZE];
+		final double[] maxY = new double[PAGE_SIZE];
+	}
+
+	/**
+	 * Positions, see allocateCoordinates, of given back room for some number
+	 * of coordinates.
+	 */
+	private static final class FreeRanges {
+		long[] positions = new long[4];
+		int size;
+	}
+
+	/**
+	 * @param geometryFactory
+	 *            creates the LineStrings of the stored geometries.
+	 */
+	public PartStore(GeometryFactory geometryFactory) {
+		this.geometryFactory = geometryFactory;
+		this.pages = new Page[0];
+		this.size = 0;
+		this.buffers = new double[0][];
+		this.currentBuffer = -1;
+		this.bufferPosition = BUFFER_SIZE;
+		this.freeSlots = new int[16];
+		this.nbFreeSlots = 0;
+		this.freeRanges = new LongRegistry<FreeRanges>();
+	}
+
+	/**
+	 * Returns the index of a new slot with all attributes and the geometry
+	 * null, one given back by free if there is any.
+	 */
+	public synchronized int allocate() {
+		int index;
+
+		if (this.nbFreeSlots > 0) {
+			index = this.freeSlots[--this.nbFreeSlots];
+		} else {
+			index = this.size;
+			int page = index >>> PAGE_BITS;
+
+			if (page == this.pages.length) {
+				Page[] grown = Arrays.copyOf(this.pages, page + 1);
+				grown[page] = new Page();
+				this.pages = grown;
+			}
+			this.size++;
+		}
+
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		page.present[i] = 0;
+		page.buffer[i] = -1;
+		page.nbCoordinates[i] = 0;
+		page.capacity[i] = 0;
+		PartStore.setUnboundedEnvelope(page, i);
+
+		return index;
+	}
+
+	/**
+	 * Gives the slot and its coordinates back, to be handed out again by
+	 * allocate. The Part of the slot must not be used afterwards.
+	 *
+	 * @throws IllegalStateException
+	 *             if the slot already was given back.
+	 */
+	public synchronized void free(int index) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		if (page.buffer[i] == FREE) {
+			throw new IllegalStateException("Slot " + index + " is already free.");
+		}
+
+		this.freeCoordinates(page, i);
+		page.buffer[i] = FREE;
+		page.nbCoordinates[i] = 0;
+
+		if (this.nbFreeSlots == this.freeSlots.length) {
+			this.freeSlots = Arrays.copyOf(this.freeSlots, 2 * this.nbFreeSlots);
+		}
+		this.freeSlots[this.nbFreeSlots++] = index;
+	}
+
+	/**
+	 * Returns the number of slots created, those given back included.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	private Page page(int index) {
+		return this.pages[index >>> PAGE_BITS];
+	}
+
+	/**
+	 * Returns true if the attribute (VELOCITY, LANES...) of the slot is not
+	 * null.
+	 */
+	public boolean has(int index, int attribute) {
+		return (this.page(index).present[index & PAGE_MASK] & attribute) != 0;
+	}
+
+	/**
+	 * Returns the presence bits of all attributes of the slot.
+	 */
+	public int present(int index) {
+		return this.page(index).present[index & PAGE_MASK];
+	}
+
+	private void setPresent(Page page, int i, int attribute) {
+		page.present[i] = (byte) (page.present[i] | attribute);
+	}
+
+	public double getVelocity(int index) {
+		return this.page(index).velocity[index & PAGE_MASK];
+	}
+
+	public int getVelocityDirection(int index) {
+		return this.page(index).velocityDirection[index & PAGE_MASK];
+	}
+
+	public int getLanes(int index) {
+		return this.page(index).lanes[index & PAGE_MASK];
+	}
+
+	public int getFunctionalRoadClass(int index) {
+		return this.page(index).functionalRoadClass[index & PAGE_MASK];
+	}
+
+	public int getUnallowedDriveDir(int index) {
+		return this.page(index).unallowedDriveDir[index & PAGE_MASK];
+	}
+
+	public void setVelocity(int index, double velocity) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		page.velocity[i] = velocity;
+		this.setPresent(page, i, VELOCITY);
+	}
+
+	public void setVelocityDirection(int index, int velocityDirection) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		page.velocityDirection[i] = PartStore.toByte(velocityDirection);
+		this.setPresent(page, i, VELOCITY_DIRECTION);
+	}
+
+	public void setLanes(int index, int lanes) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		page.lanes[i] = lanes;
+		this.setPresent(page, i, LANES);
+	}
+
+	public void setFunctionalRoadClass(int index, int functionalRoadClass) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		page.functionalRoadClass[i] = PartStore.toByte(functionalRoadClass);
+		this.setPresent(page, i, FUNCTIONAL_ROAD_CLASS);
+	}
+
+	public void setUnallowedDriveDir(int index, int unallowedDriveDir) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		page.unallowedDriveDir[i] = PartStore.toByte(unallowedDriveDir);
+		this.setPresent(page, i, UNALLOWED_DRIVE_DIR);
+	}
+
+	/**
+	 * The coded attributes are kept in bytes.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if value does not fit.
+	 */
+	private static byte toByte(int value) {
+		if ((value < Byte.MIN_VALUE) || (value > Byte.MAX_VALUE)) {
+			throw new IllegalArgumentException("Attribute value " + value + " is out of range.");
+		}
+		return (byte) value;
+	}
+
+	/**
+	 * Replaces the geometry of the slot, null is allowed. Only the x and y
+	 * ordinates are kept.
+	 */
+	public void setGeometry(int index, LineString geometry) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		if (geometry == null) {
+			this.freeCoordinates(page, i);
+			page.buffer[i] = -1;
+			page.nbCoordinates[i] = 0;
+			PartStore.setUnboundedEnvelope(page, i);
+			return;
+		}
+
+		CoordinateSequence seq = geometry.getCoordinateSequence();
+		int n = seq.size();
+
+		if (n == 0) {
+			this.freeCoordinates(page, i);
+			page.buffer[i] = 0;
+			page.offset[i] = 0;
+			page.nbCoordinates[i] = 0;
+			PartStore.setUnboundedEnvelope(page, i);
+			return;
+		}
+
+		this.reserveCoordinates(page, i, n);
+
+		double[] buffer = this.buffers[page.buffer[i]];
+		int offset = page.offset[i];
+
+		for (int c = 0; c < n; c++) {
+			buffer[offset++] = seq.getX(c);
+			buffer[offset++] = seq.getY(c);
+		}
+		page.nbCoordinates[i] = n;
+		PartStore.setEnvelope(page, i, buffer, page.offset[i], n);
+	}
+
+	/**
+	 * Replaces the geometry of the slot by the packed coordinates first to
+	 * last of xy, which must not be a buffer of this store, see
+	 * GeometryOps.split.
+	 */
+	public void setGeometry(int index, double[] xy, int first, int last) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+		int n = last - first + 1;
+
+		this.reserveCoordinates(page, i, n);
+
+		double[] buffer = this.buffers[page.buffer[i]];
+
+		System.arraycopy(xy, 2 * first, buffer, page.offset[i], 2 * n);
+		page.nbCoordinates[i] = n;
+		PartStore.setEnvelope(page, i, buffer, page.offset[i], n);
+	}
+
+	/**
+	 * Makes room for n coordinates in the slot, reusing its old room if they
+	 * fit.
+	 */
+	private void reserveCoordinates(Page page, int i, int n) {
+		if ((page.buffer[i] < 0) || (n > page.capacity[i])) {
+			this.freeCoordinates(page, i);
+			long position = this.allocateCoordinates(n);
+			page.buffer[i] = (int) (position >>> 32);
+			page.offset[i] = (int) position;
+			page.capacity[i] = n;
+		}
+	}
+
+	/**
+	 * Replaces the geometry of the slot by the coordinates of slot first of
+	 * firstStore followed by those of slot second of secondStore, leaving out
+	 * any coordinate of the latter that repeats the one before it, as
+	 * GeometryOps.append(L1, L2, gf, false) does. Both slots must have a
+	 * geometry, either may be the slot itself.
+	 */
+	public void setJoinedGeometry(int index, PartStore firstStore, int first, PartStore secondStore, int second) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		int n1 = firstStore.getNbCoordinates(first);
+		int n2 = secondStore.getNbCoordinates(second);
+		double[] xy1 = firstStore.getBuffer(first);
+		double[] xy2 = secondStore.getBuffer(second);
+		int offset1 = firstStore.getOffset(first);
+		int offset2 = secondStore.getOffset(second);
+
+		// The joined geometry is longer than both, so it always gets new
+		// room and the coordinates read are never overwritten. The old room
+		// of the slot is given back once they are copied.
+		long position = this.allocateCoordinates(n1 + n2);
+		double[] buffer = this.buffers[(int) (position >>> 32)];
+		int offset = (int) position;
+
+		System.arraycopy(xy1, offset1, buffer, offset, 2 * n1);
+		int n = n1;
+
+		for (int c = 0; c < n2; c++) {
+			double x = xy2[offset2 + 2 * c];
+			double y = xy2[offset2 + 2 * c + 1];
+			int last = offset + 2 * (n - 1);
+
+			if ((n == 0) || (buffer[last] != x) || (buffer[last + 1] != y)) {
+				buffer[offset + 2 * n] = x;
+				buffer[offset + 2 * n + 1] = y;
+				n++;
+			}
+		}
+
+		this.freeCoordinates(page, i);
+		page.buffer[i] = (int) (position >>> 32);
+		page.offset[i] = offset;
+		page.nbCoordinates[i] = n;
+		page.capacity[i] = n1 + n2;
+		PartStore.setEnvelope(page, i, buffer, offset, n);
+	}
+
+	/**
+	 * Returns the tolerance at which a point is on a stored geometry, see
+	 * GeometryOps.pointTolerance.
+	 */
+	public double getTolerance(double tolerance) {
+		return GeometryOps.pointTolerance(this.geometryFactory, tolerance);
+	}
+
+	/**
+	 * Returns the length of the geometry of the slot, summed as
+	 * LineString.getLength does.
+	 */
+	public double getLength(int index) {
+		int n = this.getNbCoordinates(index);
+
+		if (n < 2) {
+			return 0.0d;
+		}
+
+		double[] buffer = this.getBuffer(index);
+		int offset = this.getOffset(index);
+		double length = 0.0d;
+		double x0 = buffer[offset];
+		double y0 = buffer[offset + 1];
+
+		for (int c = 1; c < n; c++) {
+			double x1 = buffer[offset + 2 * c];
+			double y1 = buffer[offset + 2 * c + 1];
+			double dx = x1 - x0;
+			double dy = y1 - y0;
+
+			length += Math.sqrt(dx * dx + dy * dy);
+			x0 = x1;
+			y0 = y1;
+		}
+		return length;
+	}
+
+	private static void setEnvelope(Page page, int i, double[] buffer, int offset, int n) {
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		for (int c = 0; c < n; c++) {
+			double x = buffer[offset + 2 * c];
+			double y = buffer[offset + 2 * c + 1];
+
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+		page.minX[i] = minX;
+		page.minY[i] = minY;
+		page.maxX[i] = maxX;
+		page.maxY[i] = maxY;
+	}
+
+	/**
+	 * A slot without coordinates gets an envelope covering everything, so
+	 * that it is never told apart from other slots by its envelope.
+	 */
+	private static void setUnboundedEnvelope(Page page, int i) {
+		page.minX[i] = Double.NEGATIVE_INFINITY;
+		page.minY[i] = Double.NEGATIVE_INFINITY;
+		page.maxX[i] = Double.POSITIVE_INFINITY;
+		page.maxY[i] = Double.POSITIVE_INFINITY;
+	}
+
+	public double getMinX(int index) {
+		return this.page(index).minX[index & PAGE_MASK];
+	}
+
+	public double getMinY(int index) {
+		return this.page(index).minY[index & PAGE_MASK];
+	}
+
+	public double getMaxX(int index) {
+		return this.page(index).maxX[index & PAGE_MASK];
+	}
+
+	public double getMaxY(int index) {
+		return this.page(index).maxY[index & PAGE_MASK];
+	}
+
+	/**
+	 * Returns a new LineString of the coordinates of the slot, or null if the
+	 * slot has no geometry.
+	 */
+	public LineString getLineString(int index) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		if (page.buffer[i] < 0) {
+			return null;
+		}
+
+		int n = page.nbCoordinates[i];
+		Coordinate[] coordinates = new Coordinate[n];
+		double[] buffer = (n == 0) ? null : this.buffers[page.buffer[i]];
+		int offset = page.offset[i];
+
+		for (int c = 0; c < n; c++) {
+			coordinates[c] = new Coordinate(buffer[offset], buffer[offset + 1]);
+			offset += 2;
+		}
+
+		return this.geometryFactory.createLineString(coordinates);
+	}
+
+	/**
+	 * Returns the number of coordinates of the geometry of the slot, -1 if it
+	 * has none.
+	 */
+	public int getNbCoordinates(int index) {
+		Page page = this.page(index);
+		int i = index & PAGE_MASK;
+
+		return (page.buffer[i] < 0) ? -1 : page.nbCoordinates[i];
+	}
+
+	/**
+	 * Returns the buffer holding the coordinates of the slot, they start at
+	 * getOffset and are packed x1, y1, x2, y2...
+	 */
+	public double[] getBuffer(int index) {
+		return this.buffers[this.page(index).buffer[index & PAGE_MASK]];
+	}
+
+	public int getOffset(int index) {
+		return this.page(index).offset[index & PAGE_MASK];
+	}
+
+	/**
+	 * Returns (buffer << 32) | offset of room for n coordinates.
+	 */
+	private synchronized long allocateCoordinates(int n) {
+		FreeRanges free = this.freeRanges.get(n);
+
+		if ((free != null) && (free.size > 0)) {
+			return free.positions[--free.size];
+		}
+
+		int length = 2 * n;
+
+		if (length > BUFFER_SIZE / 2) {
+			// A long geometry gets a buffer of its own.
+			return ((long) this.addBuffer(length)) << 32;
+		} else if (this.bufferPosition + length > BUFFER_SIZE) {
+			this.currentBuffer = this.addBuffer(BUFFER_SIZE);
+			this.bufferPosition = 0;
+		}
+
+		long position = (((long) this.currentBuffer) << 32) | this.bufferPosition;
+		this.bufferPosition += length;
+
+		return position;
+	}
+
+	/**
+	 * Gives back the room for coordinates of the slot, if it has any.
+	 */
+	private synchronized void freeCoordinates(Page page, int i) {
+		int n = page.capacity[i];
+
+		if ((page.buffer[i] < 0) || (n == 0)) {
+			return;
+		}
+
+		int r = this.freeRanges.getOrCreate(n);
+
+		if (this.freeRanges.valueAt(r) == null) {
+			this.freeRanges.setValueAt(r, new FreeRanges());
+		}
+
+		FreeRanges free = this.freeRanges.valueAt(r);
+
+		if (free.size == free.positions.length) {
+			free.positions = Arrays.copyOf(free.positions, 2 * free.size);
+		}
+		free.positions[free.size++] = (((long) page.buffer[i]) << 32) | page.offset[i];
+		page.capacity[i] = 0;
+	}
+
+	private int addBuffer(int length) {
+		int b = this.buffers.length;
+		double[][] grown = Arrays.copyOf(this.buffers, b + 1);
+
+		grown[b] = new double[length];
+		this.buffers = grown;
+
+		return b;
+	}
+}
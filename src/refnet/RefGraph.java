@@ -0,0 +1,190 @@
+package refnet;
+
+import util.LongRegistry;
+
+/**
+ * Immutable compressed sparse row (CSR) graph of a RefNetwork, built by
+ * RefGraphBuilder. Nodes and edges are dense ints: node v is RefNode
+ * getNodeOid(v) and edge e is a RefLinkPart, given in its travel direction
+ * from getEdgeFrom(e) to getEdgeTo(e).
+ *
+ * The edges are numbered by their from node, so the outgoing edges of v are
+ * getFirstOutgoing(v) to getFirstOutgoing(v + 1) - 1. The incoming edges of
+ * v are getIncoming(i) for i from getFirstIncoming(v) to
+ * getFirstIncoming(v + 1) - 1.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class RefGraph {
+	/**
+	 * Direction flag, the edge may be travelled from its from node to its to
+	 * node.
+	 */
+	public static final int FORWARD = 1;
+	/**
+	 * Direction flag, the edge may be travelled from its to node to its from
+	 * node.
+	 */
+	public static final int BACKWARD = 2;
+
+	private final LongRegistry<Object> nodeIndex;
+	private final double[] nodeX;
+	private final double[] nodeY;
+
+	private final int[] outStart;
+	private final int[] inStart;
+	private final int[] inEdges;
+
+	private final int[] edgeFrom;
+	private final int[] edgeTo;
+	private final long[] edgeRefLink;
+	private final double[] edgeMeasureFrom;
+	private final double[] edgeMeasureTo;
+	private final double[] edgeLength;
+	private final double[] edgeSpeed;
+	private final int[] edgeLanes;
+	private final byte[] edgeRoadClass;
+	private final byte[] edgeDirection;
+
+	RefGraph(LongRegistry<Object> nodeIndex, double[] nodeX, double[] nodeY, int[] outStart, int[] inStart,
+			int[] inEdges, int[] edgeFrom, int[] edgeTo, long[] edgeRefLink, double[] edgeMeasureFrom,
+			double[] edgeMeasureTo, double[] edgeLength, double[] edgeSpeed, int[] edgeLanes, byte[] edgeRoadClass,
+			byte[] edgeDirection) {
+		this.nodeIndex = nodeIndex;
+		this.nodeX = nodeX;
+		this.nodeY = nodeY;
+		this.outStart = outStart;
+		this.inStart = inStart;
+		this.inEdges = inEdges;
+		this.edgeFrom = edgeFrom;
+		this.edgeTo = edgeTo;
+		this.edgeRefLink = edgeRefLink;
+		this.edgeMeasureFrom = edgeMeasureFrom;
+		this.edgeMeasureTo = edgeMeasureTo;
+		this.edgeLength = edgeLength;
+		this.edgeSpeed = edgeSpeed;
+		this.edgeLanes = edgeLanes;
+		this.edgeRoadClass = edgeRoadClass;
+		this.edgeDirection = edgeDirection;
+	}
+
+	public int getNbNodes() {
+		return this.nodeX.length;
+	}
+
+	public int getNbEdges() {
+		return this.edgeFrom.length;
+	}
+
+	/**
+	 * Returns the node of an OidCodec code, or -1 if it is not in the graph.
+	 */
+	public int getNode(long nodeOid) {
+		return this.nodeIndex.indexOf(nodeOid);
+	}
+
+	/**
+	 * Returns the OidCodec code of node v, see RefNetwork.getOidString.
+	 */
+	public long getNodeOid(int v) {
+		return this.nodeIndex.keyAt(v);
+	}
+
+	public double getNodeX(int v) {
+		return this.nodeX[v];
+	}
+
+	public double getNodeY(int v) {
+		return this.nodeY[v];
+	}
+
+	/**
+	 * Returns the first outgoing edge of v, getFirstOutgoing(v + 1) is the
+	 * end of them (v + 1 may equal getNbNodes()).
+	 */
+	public int getFirstOutgoing(int v) {
+		return this.outStart[v];
+	}
+
+	public int getNbOutgoing(int v) {
+		return this.outStart[v + 1] - this.outStart[v];
+	}
+
+	/**
+	 * Returns the position of the first incoming edge of v in the reverse
+	 * CSR, see getIncoming.
+	 */
+	public int getFirstIncoming(int v) {
+		return this.inStart[v];
+	}
+
+	public int getNbIncoming(int v) {
+		return this.inStart[v + 1] - this.inStart[v];
+	}
+
+	/**
+	 * Returns the edge at position i of the reverse CSR.
+	 */
+	public int getIncoming(int i) {
+		return this.inEdges[i];
+	}
+
+	public int getEdgeFrom(int e) {
+		return this.edgeFrom[e];
+	}
+
+	public int getEdgeTo(int e) {
+		return this.edgeTo[e];
+	}
+
+	/**
+	 * Returns the OidCodec code of the RefLink of edge e.
+	 */
+	public long getEdgeRefLink(int e) {
+		return this.edgeRefLink[e];
+	}
+
+	public double getEdgeMeasureFrom(int e) {
+		return this.edgeMeasureFrom[e];
+	}
+
+	public double getEdgeMeasureTo(int e) {
+		return this.edgeMeasureTo[e];
+	}
+
+	/**
+	 * Returns the length of the geometry of edge e in meters.
+	 */
+	public double getEdgeLength(int e) {
+		return this.edgeLength[e];
+	}
+
+	/**
+	 * Returns the posted speed limit of edge e in kmph, NaN if unknown.
+	 */
+	public double getEdgeSpeed(int e) {
+		return this.edgeSpeed[e];
+	}
+
+	/**
+	 * Returns the number of lanes of edge e, -1 if unknown.
+	 */
+	public int getEdgeLanes(int e) {
+		return this.edgeLanes[e];
+	}
+
+	/**
+	 * Returns the functional road class of edge e, -1 if unknown.
+	 */
+	public int getEdgeRoadClass(int e) {
+		return this.edgeRoadClass[e];
+	}
+
+	/**
+	 * Returns the FORWARD and BACKWARD flags of edge e.
+	 */
+	public int getEdgeDirection(int e) {
+		return this.edgeDirection[e];
+	}
+}
@@ -0,0 +1,193 @@
+package refnet;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+import util.LongRegistry;
+
+/**
+ * Freezes a RefNetwork into a RefGraph. Meant to be used once the network
+ * has been cleaned, as the graph does not follow later changes to it.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class RefGraphBuilder {
+
+	/**
+	 * Builds the graph of all RefLinkParts and RefNodes of the network. The
+	 * nodes are numbered in the order of the network, followed by any node
+	 * referenced by a part but missing from the network.
+	 */
+	public static RefGraph build(RefNetwork rn) {
+		LongRegistry<RefLink> refLinks = rn.getRefLinkRegistry();
+		LongRegistry<RefNode> refNodes = rn.getRefNodeRegistry();
+
+		int nbEdges = 0;
+		for (int l = 0; l < refLinks.size(); l++) {
+			nbEdges += refLinks.valueAt(l).getNbParts();
+		}
+
+		// Nodes.
+		LongRegistry<Object> nodeIndex = new LongRegistry<Object>(refNodes.size());
+		double[] nodeX = new double[refNodes.size()];
+		double[] nodeY = new double[refNodes.size()];
+
+		for (int v = 0; v < refNodes.size(); v++) {
+			RefNode node = refNodes.valueAt(v);
+
+			nodeIndex.getOrCreate(node.getOid());
+			nodeX[v] = node.getPoint().getX();
+			nodeY[v] = node.getPoint().getY();
+		}
+
+		// Edges in network order.
+		int[] from = new int[nbEdges];
+		int[] to = new int[nbEdges];
+		RefLinkPart[] parts = new RefLinkPart[nbEdges];
+		int e = 0;
+
+		for (int l = 0; l < refLinks.size(); l++) {
+			RefLink refLink = refLinks.valueAt(l);
+
+			for (int p = 0; p < refLink.getNbParts(); p++) {
+				RefLinkPart part = refLink.getRefLinkPart(p);
+				int nb = nodeIndex.size();
+
+				parts[e] = part;
+				from[e] = nodeIndex.getOrCreate(part.getNodeFrom());
+				to[e] = nodeIndex.getOrCreate(part.getNodeTo());
+
+				if (nodeIndex.size() > nb) {
+					LineString geometry = part.getGeometry();
+
+					nodeX = RefGraphBuilder.grow(nodeX, nodeIndex.size());
+					nodeY = RefGraphBuilder.grow(nodeY, nodeIndex.size());
+					RefGraphBuilder.locate(nodeX, nodeY, from[e], nb, geometry, 0);
+					RefGraphBuilder.locate(nodeX, nodeY, to[e], nb, geometry, -1);
+					part.releaseGeometry();
+				}
+				e++;
+			}
+		}
+
+		int nbNodes = nodeIndex.size();
+
+		if (nodeX.length > nbNodes) {
+			nodeX = Arrays.copyOf(nodeX, nbNodes);
+			nodeY = Arrays.copyOf(nodeY, nbNodes);
+		}
+
+		// Forward CSR, the edges are renumbered by from node.
+		int[] outStart = RefGraphBuilder.starts(from, nbNodes);
+		int[] next = outStart.clone();
+		int[] order = new int[nbEdges];
+
+		for (e = 0; e < nbEdges; e++) {
+			order[next[from[e]]++] = e;
+		}
+
+		int[] edgeFrom = new int[nbEdges];
+		int[] edgeTo = new int[nbEdges];
+		long[] edgeRefLink = new long[nbEdges];
+		double[] edgeMeasureFrom = new double[nbEdges];
+		double[] edgeMeasureTo = new double[nbEdges];
+		double[] edgeLength = new double[nbEdges];
+		double[] edgeSpeed = new double[nbEdges];
+		int[] edgeLanes = new int[nbEdges];
+		byte[] edgeRoadClass = new byte[nbEdges];
+		byte[] edgeDirection = new byte[nbEdges];
+
+		for (e = 0; e < nbEdges; e++) {
+			RefLinkPart part = parts[order[e]];
+
+			edgeFrom[e] = from[order[e]];
+			edgeTo[e] = to[order[e]];
+			edgeRefLink[e] = part.getOid();
+			edgeMeasureFrom[e] = part.getMeasureFrom();
+			edgeMeasureTo[e] = part.getMeasureTo();
+			edgeLength[e] = part.getLength();
+			edgeSpeed[e] = part.hasAttribute(PartStore.VELOCITY) ? part.velocity() : Double.NaN;
+			edgeLanes[e] = part.hasAttribute(PartStore.LANES) ? part.lanes() : -1;
+			edgeRoadClass[e] = (byte) (part.hasAttribute(PartStore.FUNCTIONAL_ROAD_CLASS)
+					? part.functionalRoadClass() : -1);
+			edgeDirection[e] = (byte) RefGraphBuilder.direction(part);
+		}
+
+		// Reverse CSR.
+		int[] inStart = RefGraphBuilder.starts(edgeTo, nbNodes);
+		int[] inEdges = new int[nbEdges];
+		next = inStart.clone();
+
+		for (e = 0; e < nbEdges; e++) {
+			inEdges[next[edgeTo[e]]++] = e;
+		}
+
+		return new RefGraph(nodeIndex, nodeX, nodeY, outStart, inStart, inEdges, edgeFrom, edgeTo, edgeRefLink,
+				edgeMeasureFrom, edgeMeasureTo, edgeLength, edgeSpeed, edgeLanes, edgeRoadClass, edgeDirection);
+	}
+
+	/**
+	 * Returns the CSR row starts (nbNodes + 1 of them) of the nodes.
+	 */
+	private static int[] starts(int[] nodes, int nbNodes) {
+		int[] start = new int[nbNodes + 1];
+
+		for (int v : nodes) {
+			start[v + 1]++;
+		}
+		for (int v = 0; v < nbNodes; v++) {
+			start[v + 1] += start[v];
+		}
+
+		return start;
+	}
+
+	/**
+	 * The forbidden driving direction is given relative to the part, which
+	 * RefNetwork.clean has aligned with the travel direction.
+	 */
+	private static int direction(RefLinkPart part) {
+		if (!part.hasAttribute(PartStore.UNALLOWED_DRIVE_DIR)) {
+			return RefGraph.FORWARD | RefGraph.BACKWARD;
+		}
+
+		switch (part.unallowedDriveDir()) {
+		case 1:
+			return RefGraph.BACKWARD;
+		case 2:
+			return RefGraph.FORWARD;
+		case 3:
+			return 0;
+		default:
+			return RefGraph.FORWARD | RefGraph.BACKWARD;
+		}
+	}
+
+	private static double[] grow(double[] values, int size) {
+		if (values.length >= size) {
+			return values;
+		}
+
+		double[] grown = new double[Math.max(size, 2 * values.length)];
+		System.arraycopy(values, 0, grown, 0, values.length);
+
+		return grown;
+	}
+
+	/**
+	 * Places a node created by the graph at the start (c = 0) or end (c = -1)
+	 * of the part geometry.
+	 */
+	private static void locate(double[] x, double[] y, int v, int firstNew, LineString geometry, int c) {
+		if ((v < firstNew) || (geometry == null) || geometry.isEmpty()) {
+			return;
+		}
+
+		Coordinate coordinate = geometry.getCoordinateN((c < 0) ? geometry.getNumPoints() - 1 : c);
+		x[v] = coordinate.x;
+		y[v] = coordinate.y;
+	}
+}
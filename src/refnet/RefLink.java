@@ -1,33 +1,63 @@
 package refnet;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.ListIterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
 
 import io.Logger;
 import util.NameGenerator;
 import util.Consolidator;
+import util.EndpointIndex;
 import util.GeometryOps;
+import util.LongRegistry;
+import util.OidCodec;
 
 /**
  * Owner of all parts of the network that has the same OID. Manages the addition
  * of attributes.
  * 
+ * The parts are kept sorted by MEASURE_FROM. As they do not overlap (see
+ * addRefLinkPart) they are then sorted by MEASURE_TO as well, so the list is
+ * an interval index of the parts and the parts overlapping a measure range
+ * are found by binary search, see addAttributeByGeom.
+ * 
  * @author Magnus Fransson, magnus.fransson@sweco.se
  * @version 1.0
  */
 public class RefLink {
-	private final String oid;
+	/**
+	 * Slack of the measure ranges compared in addAttributeByGeom, so that
+	 * parts that only touch the attribute are still tested.
+	 */
+	private static final double MEASURE_TOLERANCE = 0.000001d;
+	/**
+	 * Margin of the envelopes compared in addRefLinkPart on top of the reach
+	 * of the Part predicates, see envelopeMargin. Parts the predicates may
+	 * find overlapping must never be told apart by their envelopes, so the
+	 * margin leaves plenty of room for rounding.
+	 */
+	private static final double ENVELOPE_MARGIN = 0.001d;
+	/**
+	 * Number of parts from which addRefLinkPart looks up the parts to compare
+	 * with in a spatial index instead of going through all of them.
+	 */
+	private static final int INDEX_THRESHOLD = 16;
+
+	private final long oid;
 	private ArrayList<RefLinkPart> refLinkParts;
 	private int nbParts;
+	private Quadtree partIndex;
+	private int nbIndexed;
 
-	public RefLink(String linkOid, RefLinkPart firstRefLinkPart) {
+	public RefLink(long linkOid, RefLinkPart firstRefLinkPart) {
 		this.oid = linkOid;
 
 		this.refLinkParts = new ArrayList<RefLinkPart>();
@@ -43,7 +73,7 @@ public class RefLink {
 		ArrayList<RefLinkPart> unaligned = new ArrayList<RefLinkPart>(this.refLinkParts);
 		ArrayList<RefLinkPart> aligned = new ArrayList<RefLinkPart>();
 
-		Collections.sort(unaligned, new CustomComparator());
+		CustomComparator.sort(unaligned);
 
 		RefLinkPart r;
 
@@ -58,6 +88,7 @@ public class RefLink {
 		}
 
 		this.refLinkParts = new ArrayList<RefLinkPart>(aligned);
+		this.partIndex = null;
 	}
 
 	/**
@@ -66,14 +97,14 @@ public class RefLink {
 	 * sequential RefLinkParts iff: they are property equal and if a from-node
 	 * can be removed (only has one incoming and one outgoing link).
 	 */
-	public ArrayList<String> clean(GeometryFactory geometryFactory, HashMap<String, RefNode> nodes) {
+	public ArrayList<Long> clean(GeometryFactory geometryFactory, LongRegistry<RefNode> nodes) {
 
-		ArrayList<String> removedNodes = new ArrayList<String>();
+		ArrayList<Long> removedNodes = new ArrayList<Long>();
 
 		ArrayList<RefLinkPart> dirty = new ArrayList<RefLinkPart>(this.refLinkParts);
 		ArrayList<RefLinkPart> clean = new ArrayList<RefLinkPart>();
 
-		Collections.sort(dirty, new CustomComparator());
+		CustomComparator.sort(dirty);
 
 		RefLinkPart r1, r2;
 
@@ -90,6 +121,7 @@ public class RefLink {
 			r1.replaceNullAttributesBy(r2);
 
 			clean.add(dirty.get(0));
+			EndpointIndex<RefLinkPart> ends = new EndpointIndex<RefLinkPart>(clean);
 
 			RefNode from;
 
@@ -99,12 +131,13 @@ public class RefLink {
 				from = nodes.get(dirty.get(n).getNodeFrom());
 
 				if ((from.nbIncoming() == 1) && (from.nbOutgoing() == 1)) {
-					clean = Consolidator.Consolidate(clean, dirty.get(n), geometryFactory);
+					clean = Consolidator.Consolidate(clean, ends, dirty.get(n), geometryFactory);
 					if (clean.size() == nb) {
 						removedNodes.add(from.getOid());
 					}
 				} else {
 					clean.add(dirty.get(n));
+					ends.add(dirty.get(n));
 				}
 
 				nb = clean.size();
@@ -115,17 +148,25 @@ public class RefLink {
 
 		this.refLinkParts = new ArrayList<RefLinkPart>(clean);
 		this.nbParts = clean.size();
+		this.partIndex = null;
 
 		return removedNodes;
 	}
 
 	/**
-	 * Returns the OID of this RefLink
+	 * Returns the OidCodec code of this RefLink
 	 */
-	public String getOid() {
+	public long getOid() {
 		return this.oid;
 	}
 
+	/**
+	 * Returns the OID of this RefLink
+	 */
+	public String getOidString() {
+		return OidCodec.toString(this.oid);
+	}
+
 	/**
 	 * Add the first <b>RefLinkPart</b> if none available.
 	 */
@@ -140,22 +181,123 @@ public class RefLink {
 	 * Adds a new <b>RefLinkPart</b> to the list of parts. Guarantees that new
 	 * part does not overlap previous parts by rejecting it.
 	 * 
+	 * Only the parts whose envelopes meet the envelope of the new part are
+	 * compared with it, see overlapCandidates.
+	 * 
 	 * @param newPart
 	 * @return true if new RefLinkPart was approved.
 	 */
 	public boolean addRefLinkPart(RefLinkPart newPart, GeometryFactory gf) {
 
-		for (RefLinkPart oldPart : this.refLinkParts) {
-			if (oldPart.hasCommonGeometry(newPart, gf)) {
+		for (RefLinkPart oldPart : this.overlapCandidates(newPart)) {
+			if (oldPart.envelopeIntersects(newPart, RefLink.envelopeMargin(newPart))
+					&& oldPart.hasCommonGeometry(newPart, gf)) {
 				return false;
 			}
 		}
 
-		this.refLinkParts.add(newPart);
+		assert !this.overlapsAny(newPart, gf) : "The envelopes of " + this.getOidString()
+				+ " left out a part overlapping " + newPart.getMeasureFrom() + "-" + newPart.getMeasureTo();
+
+		this.refLinkParts.add(this.upperBound(newPart.getMeasureFrom()), newPart);
 		this.nbParts = this.nbParts + 1;
+
+		if (this.partIndex != null) {
+			this.partIndex.insert(newPart.getEnvelope(RefLink.envelopeMargin(newPart)), newPart);
+			this.nbIndexed++;
+		}
 		return true;
 	}
 
+	/**
+	 * Returns the parts that may overlap part: all of them for a RefLink of
+	 * few parts, otherwise those found in a Quadtree of their envelopes. The
+	 * Quadtree is kept up to date by addRefLinkPart and built again if the
+	 * parts were changed in some other way, e.g. split by an attribute.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<RefLinkPart> overlapCandidates(RefLinkPart part) {
+		if (this.refLinkParts.size() < INDEX_THRESHOLD) {
+			this.partIndex = null;
+			return this.refLinkParts;
+		}
+
+		if ((this.partIndex == null) || (this.nbIndexed != this.refLinkParts.size())) {
+			this.partIndex = new Quadtree();
+
+			for (RefLinkPart p : this.refLinkParts) {
+				this.partIndex.insert(p.getEnvelope(RefLink.envelopeMargin(p)), p);
+			}
+			this.nbIndexed = this.refLinkParts.size();
+		}
+
+		return (List<RefLinkPart>) this.partIndex.query(part.getEnvelope(RefLink.envelopeMargin(part)));
+	}
+
+	/**
+	 * Returns the margin of the envelope of part, ENVELOPE_MARGIN more than
+	 * Part.pointReach. With fixed coordinates the reach is ten grid steps.
+	 */
+	private static double envelopeMargin(RefLinkPart part) {
+		return ENVELOPE_MARGIN + part.pointReach();
+	}
+
+	/**
+	 * Returns true if part overlaps any part of this RefLink, going through
+	 * all of them. Checks the envelope prefilter of addRefLinkPart when
+	 * assertions are enabled.
+	 */
+	private boolean overlapsAny(RefLinkPart part, GeometryFactory gf) {
+		for (RefLinkPart oldPart : this.refLinkParts) {
+			if (oldPart.hasCommonGeometry(part, gf)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index of the first part with a MEASURE_FROM greater than
+	 * measure.
+	 */
+	private int upperBound(double measure) {
+		int lo = 0;
+		int hi = this.refLinkParts.size();
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (this.refLinkParts.get(mid).getMeasureFrom() > measure) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the first part with a MEASURE_TO not less than
+	 * measure.
+	 */
+	private int lowerBoundTo(double measure) {
+		int lo = 0;
+		int hi = this.refLinkParts.size();
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (this.refLinkParts.get(mid).getMeasureTo() < measure) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return lo;
+	}
+
 	/**
 	 * Adds an <b>Attribute</b> to the object by a "slice and dice RefLinkParts"
 	 * method. The following cases apply for all <b>RefLinkPart</b>s rlp: If the
@@ -167,6 +309,9 @@ public class RefLink {
 	 * overlapped the attribute will inherit the attribute properties. The nodes
 	 * and measures gets altered in this process.
 	 * 
+	 * Only the parts whose measure range overlaps the one of the attribute are
+	 * tested, the parts created by a split are not tested again.
+	 * 
 	 * @param attribute
 	 * @param gf
 	 * @param nmg
@@ -178,18 +323,19 @@ public class RefLink {
 	 *            parts do intersect at that distance. The final tolerance is
 	 *            posted in Console.
 	 * @return HashSet<RefNode> new nodes generated with <b>nmg</b> to be added
-	 *         to RefNetworks list of nodes.
+	 *         to RefNetworks list of nodes, in the order they were created.
 	 */
 	public HashSet<RefNode> addAttributeByGeom(Attribute attribute, GeometryFactory gf, NameGenerator nmg,
 			double tolerance, boolean allowSlack, Logger logger) {
 
-		HashSet<RefNode> newNodes = new HashSet<RefNode>();
+		HashSet<RefNode> newNodes = new LinkedHashSet<RefNode>();
 
-		ListIterator<RefLinkPart> iterator = this.refLinkParts.listIterator();
+		double measureTo = attribute.getMeasureTo() + RefLink.MEASURE_TOLERANCE;
+		int i = this.lowerBoundTo(attribute.getMeasureFrom() - RefLink.MEASURE_TOLERANCE);
 
-		while (iterator.hasNext()) {
+		for (; (i < this.refLinkParts.size()) && (this.refLinkParts.get(i).getMeasureFrom() <= measureTo); i++) {
 
-			RefLinkPart rlp = iterator.next();
+			RefLinkPart rlp = this.refLinkParts.get(i);
 
 			boolean rlpEndEqualsAttrStart = (attribute.getGeometry().getStartPoint())
 					.equalsExact((rlp.getGeometry().getEndPoint()));
@@ -206,8 +352,6 @@ public class RefLink {
 			if ((rlp.geomIsWithin(attribute, gf)) || rlpStartAndEndEqualsAttrStartAndEnd) {
 				// Trivial case, just add the property.
 				rlp.addAttribute(attribute);
-				// set() replaces the last object returned by next()
-				iterator.set(rlp);
 
 			} else if (attribute.geomIsCompletelyWithin(rlp, gf)) {
 				// Split in 3.
@@ -215,30 +359,25 @@ public class RefLink {
 				Point[] P = new Point[] { attribute.getGeometry().getStartPoint(),
 						attribute.getGeometry().getEndPoint() };
 
-				RefNode n1 = new RefNode(attribute.getOid() + ":" + nmg.newName(), P[0], true);
-				RefNode n2 = new RefNode(attribute.getOid() + ":" + nmg.newName(), P[1], true);
+				RefNode n1 = new RefNode(nmg.newCode(attribute.getOid()), P[0], true);
+				RefNode n2 = new RefNode(nmg.newCode(attribute.getOid()), P[1], true);
 
-				LineString[] L = GeometryOps.splitBy(rlp.getGeometry(), P, gf, tolerance, allowSlack);
+				GeometryOps.Pieces L = rlp.splitBy(P, tolerance, allowSlack);
 
-				if (L != null) {
-					RefLinkPart rlpMiddle = new RefLinkPart(rlp.getOid(), L[1], attribute.getMeasureFrom(),
-							attribute.getMeasureTo(), n1.getOid(), n2.getOid(), rlp.getVelocity(),
-							rlp.getVelocityDirection(), rlp.getNumberOfLanes(), rlp.getFunctionalRoadClass(),
-							rlp.getUnallowedDriverDir());
+				if ((L != null) && L.isComplete()) {
+					RefLinkPart rlpMiddle = this.copy(rlp, L, 1, attribute.getMeasureFrom(), attribute.getMeasureTo(),
+							n1.getOid(), n2.getOid());
 					rlpMiddle.addAttribute(attribute);
 
-					RefLinkPart rlpLast = new RefLinkPart(rlp.getOid(), L[2], attribute.getMeasureTo(),
-							rlp.getMeasureTo(), n2.getOid(), rlp.getNodeTo(), rlp.getVelocity(),
-							rlp.getVelocityDirection(), rlp.getNumberOfLanes(), rlp.getFunctionalRoadClass(),
-							rlp.getUnallowedDriverDir());
+					RefLinkPart rlpLast = this.copy(rlp, L, 2, attribute.getMeasureTo(), rlp.getMeasureTo(),
+							n2.getOid(), rlp.getNodeTo());
 
-					rlp.setGeometry(L[0]);
+					rlp.setGeometry(L, 0);
 					rlp.setMeasureTo(attribute.getMeasureFrom());
 					rlp.setNodeTo(n1.getOid());
 
-					iterator.set(rlp);
-					iterator.add(rlpMiddle);
-					iterator.add(rlpLast);
+					this.refLinkParts.add(++i, rlpMiddle);
+					this.refLinkParts.add(++i, rlpLast);
 					this.nbParts = this.nbParts + 2;
 
 					if (!newNodes.contains(n1)) {
@@ -253,30 +392,27 @@ public class RefLink {
 							new String[] {
 									"RefLink: (Case1) Failed to add attribute: "
 											+ attribute.toCSVStringWithoutAttributes() + " ...",
-									" 	... on RefLinkPart " + rlp.toCSVString(false) });
+									" 	... on RefLinkPart " + rlp.toCSVString(false, nmg) });
 				}
 			} else if (rlp.geomEndsWithin(attribute, gf) && !(rlpEndEqualsAttrStart)) {
 				// split in 2.
 
 				Point[] P = new Point[] { attribute.getGeometry().getStartPoint() };
 
-				RefNode n1 = new RefNode(attribute.getOid() + ":" + nmg.newName(), P[0], true);
+				RefNode n1 = new RefNode(nmg.newCode(attribute.getOid()), P[0], true);
 
-				LineString[] L = GeometryOps.splitBy(rlp.getGeometry(), P, gf, tolerance, allowSlack);
+				GeometryOps.Pieces L = rlp.splitBy(P, tolerance, allowSlack);
 
-				if (L != null) {
-					RefLinkPart rlpLast = new RefLinkPart(rlp.getOid(), L[1], attribute.getMeasureFrom(),
-							rlp.getMeasureTo(), n1.getOid(), rlp.getNodeTo(), rlp.getVelocity(),
-							rlp.getVelocityDirection(), rlp.getNumberOfLanes(), rlp.getFunctionalRoadClass(),
-							rlp.getUnallowedDriverDir());
+				if ((L != null) && L.isComplete()) {
+					RefLinkPart rlpLast = this.copy(rlp, L, 1, attribute.getMeasureFrom(), rlp.getMeasureTo(),
+							n1.getOid(), rlp.getNodeTo());
 					rlpLast.addAttribute(attribute);
 
-					rlp.setGeometry(L[0]);
+					rlp.setGeometry(L, 0);
 					rlp.setMeasureTo(attribute.getMeasureFrom());
 					rlp.setNodeTo(n1.getOid());
 
-					iterator.set(rlp);
-					iterator.add(rlpLast);
+					this.refLinkParts.add(++i, rlpLast);
 					this.nbParts = this.nbParts + 1;
 
 					if (!newNodes.contains(n1)) {
@@ -287,7 +423,7 @@ public class RefLink {
 							new String[] {
 									"RefLink: (Case3) Failed to add attribute: "
 											+ attribute.toCSVStringWithoutAttributes() + " ...",
-									" 	... on RefLinkPart " + rlp.toCSVString(false) });
+									" 	... on RefLinkPart " + rlp.toCSVString(false, nmg) });
 
 				}
 			} else if (attribute.geomEndsWithin(rlp, gf) && !(rlpStartEqualsAttrEnd)) {
@@ -301,23 +437,21 @@ public class RefLink {
 
 				Point[] P = new Point[] { attribute.getGeometry().getEndPoint() };
 
-				RefNode n2 = new RefNode(attribute.getOid() + ":" + nmg.newName(), P[0], true);
+				RefNode n2 = new RefNode(nmg.newCode(attribute.getOid()), P[0], true);
 
-				LineString[] L = GeometryOps.splitBy(rlp.getGeometry(), P, gf, tolerance, allowSlack);
+				GeometryOps.Pieces L = rlp.splitBy(P, tolerance, allowSlack);
 
-				if (L != null) {
-					RefLinkPart rlpFirst = new RefLinkPart(rlp.getOid(), L[0], rlp.getMeasureFrom(),
-							attribute.getMeasureTo(), rlp.getNodeFrom(), n2.getOid(), rlp.getVelocity(),
-							rlp.getVelocityDirection(), rlp.getNumberOfLanes(), rlp.getFunctionalRoadClass(),
-							rlp.getUnallowedDriverDir());
+				if ((L != null) && L.isComplete()) {
+					RefLinkPart rlpFirst = this.copy(rlp, L, 0, rlp.getMeasureFrom(), attribute.getMeasureTo(),
+							rlp.getNodeFrom(), n2.getOid());
 					rlpFirst.addAttribute(attribute);
 
-					rlp.setGeometry(L[1]);
+					rlp.setGeometry(L, 1);
 					rlp.setMeasureFrom(attribute.getMeasureTo());
 					rlp.setNodeFrom(n2.getOid());
 
-					iterator.set(rlp);
-					iterator.add(rlpFirst);
+					this.refLinkParts.set(i, rlpFirst);
+					this.refLinkParts.add(++i, rlp);
 					this.nbParts = this.nbParts + 1;
 
 					if (!newNodes.contains(n2)) {
@@ -328,13 +462,254 @@ public class RefLink {
 							new String[] {
 									"RefLink: (Case2) Failed to add attribute: "
 											+ attribute.toCSVStringWithoutAttributes() + " ...",
-									" 	... on RefLinkPart " + rlp.toCSVString(false) });
+									" 	... on RefLinkPart " + rlp.toCSVString(false, nmg) });
 				}
 			}
 		}
 		return newNodes;
 	}
 
+	/**
+	 * Adds the attributes of several layers (speed, lanes etc.) to the object
+	 * in one sweep, instead of one addAttributeByGeom per attribute. The
+	 * measures at which the attributes start and end are collected from all
+	 * layers and each <b>RefLinkPart</b> is split once at the ones within it,
+	 * so that breakpoints common to several layers give one split and one new
+	 * node. Each resulting part then inherits the properties of every
+	 * attribute whose measure range covers it, in list order.
+	 * 
+	 * Attributes of other RefLinks are ignored, as their measures do not
+	 * refer to this object.
+	 * 
+	 * @param attributes
+	 *            of all layers, in the order they are to be applied.
+	 * @param tolerance
+	 *            expresses the tolerated distance between a breakpoint and
+	 *            the part it splits.
+	 * @return HashSet<RefNode> new nodes generated with <b>nmg</b> to be added
+	 *         to RefNetworks list of nodes, in the order they were created.
+	 */
+	public HashSet<RefNode> addAttributesBySweep(ArrayList<Attribute> attributes, GeometryFactory gf,
+			NameGenerator nmg, double tolerance, Logger logger) {
+
+		HashSet<RefNode> newNodes = new LinkedHashSet<RefNode>();
+		ArrayList<Attribute> own = new ArrayList<Attribute>(attributes.size());
+
+		for (Attribute attribute : attributes) {
+			if ((attribute.getOid() == this.oid) && (attribute.getGeometry() != null)) {
+				own.add(attribute);
+				attribute.setSnapping(Attribute.ON_LINK, tolerance);
+			}
+		}
+
+		// The breakpoints, sorted by measure.
+		int nb = 2 * own.size();
+		double[] measures = new double[nb];
+		Point[] points = new Point[nb];
+		Integer[] order = new Integer[nb];
+
+		for (int a = 0; a < own.size(); a++) {
+			measures[2 * a] = own.get(a).getMeasureFrom();
+			points[2 * a] = own.get(a).getGeometry().getStartPoint();
+			measures[2 * a + 1] = own.get(a).getMeasureTo();
+			points[2 * a + 1] = own.get(a).getGeometry().getEndPoint();
+		}
+		for (int b = 0; b < nb; b++) {
+			order[b] = b;
+		}
+
+		final double[] m = measures;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer b1, Integer b2) {
+				return Double.compare(m[b1], m[b2]);
+			}
+		});
+
+		// Split each part once at the breakpoints within it.
+		int b = 0;
+
+		for (int i = 0; i < this.refLinkParts.size(); i++) {
+			RefLinkPart rlp = this.refLinkParts.get(i);
+			LineString geometry = rlp.getGeometry();
+			double from = rlp.getMeasureFrom() + RefLink.MEASURE_TOLERANCE;
+			double to = rlp.getMeasureTo() - RefLink.MEASURE_TOLERANCE;
+
+			while ((b < nb) && (measures[order[b]] <= from)) {
+				b++;
+			}
+
+			ArrayList<Integer> within = new ArrayList<Integer>();
+			double last = Double.NEGATIVE_INFINITY;
+			double split = tolerance;
+
+			for (int c = b; (c < nb) && (measures[order[c]] < to); c++) {
+				Point P = points[order[c]];
+
+				// Breakpoints common to several layers give one split.
+				if ((measures[order[c]] <= last + RefLink.MEASURE_TOLERANCE)
+						|| P.equalsExact(geometry.getStartPoint()) || P.equalsExact(geometry.getEndPoint())) {
+					continue;
+				}
+
+				double sl = GeometryOps.spansPoint(geometry, P, gf, tolerance, true) ? tolerance
+						: this.snapBreakpoint(geometry, P, gf, tolerance, own.get(order[c] / 2), logger);
+
+				if (sl > 0) {
+					within.add(order[c]);
+					last = measures[order[c]];
+					split = Math.max(split, sl);
+				}
+			}
+
+			if (within.isEmpty()) {
+				continue;
+			}
+
+			Point[] P = new Point[within.size()];
+
+			for (int c = 0; c < P.length; c++) {
+				P[c] = points[within.get(c)];
+			}
+
+			GeometryOps.Pieces L = rlp.splitBy(P, split, true);
+
+			if ((L == null) || !L.isComplete()) {
+				logger.log(new String[] { "RefLink: (Sweep) Failed to split RefLinkPart " + rlp.toCSVString(false, nmg)
+						+ " at " + P.length + " breakpoints." });
+
+				for (int c = 0; c < P.length; c++) {
+					own.get(within.get(c) / 2).setSnapping(Attribute.FAILED, split);
+				}
+				continue;
+			}
+
+			double measureTo = rlp.getMeasureTo();
+			long nodeTo = rlp.getNodeTo();
+			long node = OidCodec.NONE;
+
+			for (int c = 0; c < P.length; c++) {
+				RefNode n = new RefNode(nmg.newCode(this.oid), P[c], true);
+				newNodes.add(n);
+
+				if (c == 0) {
+					rlp.setGeometry(L, 0);
+					rlp.setMeasureTo(measures[within.get(0)]);
+					rlp.setNodeTo(n.getOid());
+				} else {
+					this.refLinkParts.add(++i, this.copy(rlp, L, c, measures[within.get(c - 1)],
+							measures[within.get(c)], node, n.getOid()));
+				}
+				node = n.getOid();
+			}
+			this.refLinkParts.add(++i, this.copy(rlp, L, P.length, measures[within.get(P.length - 1)], measureTo,
+					node, nodeTo));
+			this.nbParts = this.nbParts + P.length;
+		}
+
+		// Give each part the properties of the attributes covering it.
+		for (Attribute attribute : own) {
+			double measureFrom = attribute.getMeasureFrom() - RefLink.MEASURE_TOLERANCE;
+			double measureTo = attribute.getMeasureTo() + RefLink.MEASURE_TOLERANCE;
+
+			for (int i = this.lowerBoundTo(measureFrom); (i < this.refLinkParts.size())
+					&& (this.refLinkParts.get(i).getMeasureFrom() < measureTo); i++) {
+				RefLinkPart rlp = this.refLinkParts.get(i);
+
+				if ((rlp.getMeasureFrom() >= measureFrom) && (rlp.getMeasureTo() <= measureTo)) {
+					rlp.addAttribute(attribute);
+				}
+			}
+		}
+
+		return newNodes;
+	}
+
+	/**
+	 * Handles a breakpoint of attribute that is within the measures of a part
+	 * but not on its geometry at tolerance, like RefNetwork.addAttributes
+	 * does for an attribute: it is logged and snapped once, at its distance to
+	 * the part, if that is within RefNetwork.toleranceMax.
+	 * 
+	 * @return the tolerance at which the part spans P, or -1 if the breakpoint
+	 *         is dropped.
+	 */
+	private double snapBreakpoint(LineString geometry, Point P, GeometryFactory gf, double tolerance,
+			Attribute attribute, Logger logger) {
+		double distance = geometry.distance(P);
+
+		logger.log(new String[] {
+				"RefLink: (Sweep) Breakpoint not on the RefLinkPart with tolerance " + tolerance + " for "
+						+ this.getOidString() + ":",
+				"         Attribute: " + attribute.toCSVStringWithoutAttributes(),
+				"         the breakpoint is " + distance + " m from the RefLinkPart." });
+
+		if (distance > RefNetwork.toleranceMax) {
+			logger.log(new String[] { "         REJECTED, the distance exceeds " + RefNetwork.toleranceMax + " m." });
+			attribute.setSnapping(Attribute.REJECTED, tolerance);
+			return -1;
+		}
+
+		double sl = Math.max(tolerance, RefNetwork.SNAP_MARGIN * distance);
+
+		if ((sl > tolerance) && GeometryOps.spansPoint(geometry, P, gf, sl, true)) {
+			logger.log(new String[] { "         succeded at a tolerance of " + sl + " m." });
+			attribute.setSnapping(Attribute.SNAPPED, sl);
+			return sl;
+		}
+
+		logger.log(new String[] { "         FAILED to add the breakpoint at a tolerance of " + sl + " m." });
+		attribute.setSnapping(Attribute.FAILED, sl);
+		return -1;
+	}
+
+	/**
+	 * Returns a new part with the properties of rlp and the given piece of a
+	 * split of rlp as geometry.
+	 */
+	private RefLinkPart copy(RefLinkPart rlp, GeometryOps.Pieces pieces, int piece, double measureFrom,
+			double measureTo, long nodeFrom, long nodeTo) {
+		RefLinkPart part = new RefLinkPart(rlp.getStore(), rlp.getOid(), (LineString) null, measureFrom, measureTo,
+				nodeFrom, nodeTo, rlp.getVelocity(), rlp.getVelocityDirection(), rlp.getNumberOfLanes(),
+				rlp.getFunctionalRoadClass(), rlp.getUnallowedDriverDir());
+
+		part.setGeometry(pieces, piece);
+		return part;
+	}
+
+	/**
+	 * Returns the distance from P to the closest part of this RefLink.
+	 */
+	public double distance(Point P) {
+		double distance = Double.POSITIVE_INFINITY;
+
+		for (RefLinkPart r : this.refLinkParts) {
+			distance = Math.min(distance, r.getGeometry().distance(P));
+		}
+
+		return distance;
+	}
+
+	/**
+	 * Replaces the provisional node codes handed out by fork by their final
+	 * codes, see NameGenerator.join.
+	 */
+	void resolveNodes(NameGenerator fork) {
+		for (RefLinkPart r : this.refLinkParts) {
+			r.setNodeFrom(fork.resolve(r.getNodeFrom()));
+			r.setNodeTo(fork.resolve(r.getNodeTo()));
+		}
+	}
+
+	/**
+	 * Drops the LineStrings of all parts, see Part.releaseGeometry.
+	 */
+	public void releaseGeometries() {
+		for (RefLinkPart r : this.refLinkParts) {
+			r.releaseGeometry();
+		}
+	}
+
 	/**
 	 * Get the number of <b>RefLinkParts</b> on the RefLink.
 	 */
@@ -342,12 +717,19 @@ public class RefLink {
 		return this.nbParts;
 	}
 
+	/**
+	 * Get the one <b>RefLinkPart</b>.
+	 */
+	public RefLinkPart getRefLinkPart(int idx) {
+		return this.refLinkParts.get(idx);
+	}
+
 	/**
 	 * Get the one <b>RefLinkPart</b> as a ;-separated String without new line.
 	 */
-	public String refLinkPartAsCSVString(int idx, boolean withAttributes) {
+	public String refLinkPartAsCSVString(int idx, boolean withAttributes, NameGenerator nmg) {
 		if (idx < this.refLinkParts.size()) {
-			return this.refLinkParts.get(idx).toCSVString(withAttributes);
+			return this.refLinkParts.get(idx).toCSVString(withAttributes, nmg);
 		} else {
 			return null;
 		}
@@ -357,13 +739,13 @@ public class RefLink {
 	 * Get the whole list of <b>RefLinkPart</b>s as a String with new line
 	 * (System.lineSeparator).
 	 */
-	public String getRefLinkPartsAsCSVStringWithNewRow(boolean withAttributes) {
+	public String getRefLinkPartsAsCSVStringWithNewRow(boolean withAttributes, NameGenerator nmg) {
 		String str = "";
 
 		int idx = 0;
 
 		while (this.refLinkParts.size() > idx) {
-			str = str + this.refLinkParts.get(idx).toCSVString(withAttributes);
+			str = str + this.refLinkParts.get(idx).toCSVString(withAttributes, nmg);
 
 			if (idx < (this.refLinkParts.size() - 1)) {
 				str = str + System.lineSeparator();
@@ -375,34 +757,34 @@ public class RefLink {
 	}
 
 	/**
-	 * Returns a list of all from node oids.
+	 * Returns the OidCodec codes of all from nodes.
 	 */
-	public ArrayList<String> getNodesFrom() {
-		ArrayList<String> from = new ArrayList<String>();
+	public long[] getNodesFrom() {
+		long[] from = new long[this.refLinkParts.size()];
 
-		for (RefLinkPart r : this.refLinkParts) {
-			from.add(r.getNodeFrom());
+		for (int i = 0; i < from.length; i++) {
+			from[i] = this.refLinkParts.get(i).getNodeFrom();
 		}
 
 		return from;
 	}
 
 	/**
-	 * Returns a list of all to node oids.
+	 * Returns the OidCodec codes of all to nodes.
 	 */
-	public ArrayList<String> getNodesTo() {
-		ArrayList<String> to = new ArrayList<String>();
+	public long[] getNodesTo() {
+		long[] to = new long[this.refLinkParts.size()];
 
-		for (RefLinkPart r : this.refLinkParts) {
-			to.add(r.getNodeTo());
+		for (int i = 0; i < to.length; i++) {
+			to[i] = this.refLinkParts.get(i).getNodeTo();
 		}
 
 		return to;
 	}
 	
-	public String getEndNodeOid() {
+	public long getEndNodeOid() {
 		double to = 0.0d;
-		String n = null;
+		long n = OidCodec.NONE;
 		
 		for (RefLinkPart p : this.refLinkParts) {
 			if (p.getMeasureTo() > to) {
@@ -414,9 +796,9 @@ public class RefLink {
 		return n;
 	}
 	
-	public String getStartNodeOid() {
+	public long getStartNodeOid() {
 		double from = 1.0d;
-		String n = null;
+		long n = OidCodec.NONE;
 		
 		for (RefLinkPart p : this.refLinkParts) {
 			if (p.getMeasureFrom() < from) {
@@ -3,6 +3,8 @@ package refnet;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 
+import util.NameGenerator;
+
 /**
  * The true edge-representation of the network. Holds start - and end node,
  * extends Part.
@@ -11,15 +13,17 @@ import com.vividsolutions.jts.geom.LineString;
  * @version 1.0
  */
 public class RefLinkPart extends Part {
-	private String nodeFrom;
-	private String nodeTo;
+	private long nodeFrom;
+	private long nodeTo;
 
 	/**
 	 * Constructor when road network is loaded. I.e. no attributes are
 	 * available.
 	 * 
+	 * @param store
+	 *            holds the attributes of the part.
 	 * @param refLinkOid
-	 *            should be OID of parent RefLink.
+	 *            should be OidCodec code of parent RefLink.
 	 * @param geometry
 	 *            JTS LineString
 	 * @param measureFrom
@@ -30,19 +34,22 @@ public class RefLinkPart extends Part {
 	 *            represents the relative end position of this part on the
 	 *            RefLink parent.
 	 * @param nodeFromOid
-	 *            start node at this parts origin.
+	 *            OidCodec code of the start node at this parts origin.
 	 * @param nodeToOid
-	 *            end node at this parts end.
+	 *            OidCodec code of the end node at this parts end.
 	 */
-	public RefLinkPart(String refLinkOid, LineString geometry, double measureFrom, double measureTo, String nodeFromOid,
-			String nodeToOid) throws IllegalArgumentException {
+	public RefLinkPart(PartStore store, long refLinkOid, LineString geometry, double measureFrom, double measureTo,
+			long nodeFromOid, long nodeToOid) throws IllegalArgumentException {
 
-		this(refLinkOid, geometry, measureFrom, measureTo, nodeFromOid, nodeToOid, null, null, null, null, null);
+		this(store, refLinkOid, geometry, measureFrom, measureTo, nodeFromOid, nodeToOid, null, null, null, null,
+				null);
 	}
 
 	/**
+	 * @param store
+	 *            holds the attributes of the part.
 	 * @param refLinkOid
-	 *            the String representation of the parent RefLink.
+	 *            the OidCodec code of the parent RefLink.
 	 * @param geometry
 	 *            is a jts.geom.Geometry LineString object.
 	 * @param measureFrom
@@ -67,54 +74,64 @@ public class RefLinkPart extends Part {
 	 * @throws IllegalArgumentException
 	 *             if any parameter has an illegal value (outside value range).
 	 */
-	public RefLinkPart(String refLinkOid, LineString geometry, double measureFrom, double measureTo, String nodeFromOid,
-			String nodeToOid, Double velocity, Integer velocityDirection, Integer nbLanes, Integer functionalRoadClass,
-			Integer unallDriveDir) throws IllegalArgumentException {
+	public RefLinkPart(PartStore store, long refLinkOid, LineString geometry, double measureFrom, double measureTo,
+			long nodeFromOid, long nodeToOid, Double velocity, Integer velocityDirection, Integer nbLanes,
+			Integer functionalRoadClass, Integer unallDriveDir) throws IllegalArgumentException {
 
-		super(refLinkOid, geometry, measureFrom, measureTo, velocity, velocityDirection, nbLanes, functionalRoadClass,
+		super(store, refLinkOid, geometry, measureFrom, measureTo, velocity, velocityDirection, nbLanes, functionalRoadClass,
 				unallDriveDir);
 
 		this.nodeFrom = nodeFromOid;
 		this.nodeTo = nodeToOid;
 	}
 
-	public String getNodeFrom() {
+	/**
+	 * Returns the OidCodec code of the origin node.
+	 */
+	public long getNodeFrom() {
 		return this.nodeFrom;
 	}
 
-	public String getNodeTo() {
+	/**
+	 * Returns the OidCodec code of the destination node.
+	 */
+	public long getNodeTo() {
 		return this.nodeTo;
 	}
 
 	/**
 	 * Replace the current destination node oid.
 	 */
-	public void setNodeTo(String oid) {
+	public void setNodeTo(long oid) {
 		this.nodeTo = oid;
 	}
 
 	/**
 	 * Replace the current origin node oid.
 	 */
-	public void setNodeFrom(String oid) {
+	public void setNodeFrom(long oid) {
 		this.nodeFrom = oid;
 	}
 
 	/**
+	 * @param nmg
+	 *            the NameGenerator of the network, names the nodes.
 	 * @return all fields of this object as a ;-separated String. The Geometry
 	 *         will be in WKT-format.
 	 */
-	public String toCSVString(boolean withAttribute) {
+	public String toCSVString(boolean withAttribute, NameGenerator nmg) {
 		if (withAttribute) {
-			return (this.getOid() + ";" + String.valueOf(this.getMeasureFrom()) + ";"
-					+ String.valueOf(this.getMeasureTo()) + ";" + this.nodeFrom + ";" + this.nodeTo + ";"
+			return (this.getOidString() + ";" + String.valueOf(this.getMeasureFrom()) + ";"
+					+ String.valueOf(this.getMeasureTo()) + ";" + nmg.toString(this.nodeFrom) + ";"
+					+ nmg.toString(this.nodeTo) + ";"
 					+ this.getGeometryAsStr() + ";" + String.valueOf(this.getLength()) + ";"
 					+ String.valueOf(this.getFunctionalRoadClass()) + ";" + String.valueOf(this.getVelocity()) + ";"
 					+ String.valueOf(this.getNumberOfLanes()) + ";" + String.valueOf(this.getUnallowedDriverDir()) + ";"
 					+ String.valueOf(this.getVelocityDirection()));
 		} else {
-			return (this.getOid() + ";" + String.valueOf(this.getMeasureFrom()) + ";"
-					+ String.valueOf(this.getMeasureTo()) + ";" + this.nodeFrom + ";" + this.nodeTo + ";"
+			return (this.getOidString() + ";" + String.valueOf(this.getMeasureFrom()) + ";"
+					+ String.valueOf(this.getMeasureTo()) + ";" + nmg.toString(this.nodeFrom) + ";"
+					+ nmg.toString(this.nodeTo) + ";"
 					+ this.getGeometryAsStr() + ";" + String.valueOf(this.getLength()));
 		}
 
@@ -126,24 +143,24 @@ public class RefLinkPart extends Part {
 	 * direction as other.
 	 */
 	public void replaceNullAttributesBy(RefLinkPart other) {
-		if ((this.getFunctionalRoadClass() == null) && (other.getFunctionalRoadClass() != null)) {
-			this.setClassification(other.getFunctionalRoadClass());
+		if (!this.hasAttribute(PartStore.FUNCTIONAL_ROAD_CLASS) && other.hasAttribute(PartStore.FUNCTIONAL_ROAD_CLASS)) {
+			this.setClassification(other.functionalRoadClass());
 		}
 
-		if ((this.getNumberOfLanes() == null) && (other.getNumberOfLanes() != null)) {
-			this.setLanes(other.getNumberOfLanes());
+		if (!this.hasAttribute(PartStore.LANES) && other.hasAttribute(PartStore.LANES)) {
+			this.setLanes(other.lanes());
 		}
 
-		if (this.getNodeFrom().equals(other.getNodeTo()) || (this.getNodeTo().equals(other.getNodeFrom()))) {
-			if ((this.getUnallowedDriverDir() == null) && (other.getUnallowedDriverDir() != null)) {
-				this.setUnallowedDriverDir(other.getUnallowedDriverDir());
+		if ((this.getNodeFrom() == other.getNodeTo()) || (this.getNodeTo() == other.getNodeFrom())) {
+			if (!this.hasAttribute(PartStore.UNALLOWED_DRIVE_DIR) && other.hasAttribute(PartStore.UNALLOWED_DRIVE_DIR)) {
+				this.setUnallowedDriverDir(other.unallowedDriveDir());
 			}
 
-			if ((this.getVelocity() == null) && (other.getVelocity() != null)) {
-				this.setVelocity(other.getVelocity());
+			if (!this.hasAttribute(PartStore.VELOCITY) && other.hasAttribute(PartStore.VELOCITY)) {
+				this.setVelocity(other.velocity());
 			}
 
-			if ((this.getVelocityDirection() == null) && (other.getVelocityDirection() != null)) {
+			if (!this.hasAttribute(PartStore.VELOCITY_DIRECTION) && other.hasAttribute(PartStore.VELOCITY_DIRECTION)) {
 				this.setVelocityDirection(other.getVelocityDirection());
 			}
 		}
@@ -153,79 +170,7 @@ public class RefLinkPart extends Part {
 	 * Returns true if all attributes of this equals those of other.
 	 */
 	public boolean propertyEqual(RefLinkPart other) {
-		boolean retval = true;
-
-		if (!this.getOid().equals(other.getOid())) {
-			retval = false;
-		}
-		
-		if (this.getFunctionalRoadClass() != null && other.getFunctionalRoadClass() != null) {
-			if (!(this.getFunctionalRoadClass().equals(other.getFunctionalRoadClass()))) {
-				return false;
-			}
-		} else if (!(this.getFunctionalRoadClass() == null && other.getFunctionalRoadClass() == null)) {
-			return false;
-		}
-		
-		if (this.getNumberOfLanes() != null && other.getNumberOfLanes() != null) {
-			if (!(this.getNumberOfLanes().equals(other.getNumberOfLanes()))) {
-				return false;
-			}
-		} else if (!(this.getNumberOfLanes() == null && other.getNumberOfLanes() == null)) {
-			return false;
-		}
-		
-		if (this.getUnallowedDriverDir() != null && other.getUnallowedDriverDir() != null) {
-			if (!(this.getUnallowedDriverDir().equals(other.getUnallowedDriverDir()))) {
-				return false;
-			}
-		} else if (!(this.getUnallowedDriverDir() == null && other.getUnallowedDriverDir() == null)) {
-			return false;
-		}
-		
-		if (this.getVelocity() != null && other.getVelocity() != null) {
-			if (!(this.getVelocity().equals(other.getVelocity()))) {
-				return false;
-			}
-		} else if (!(this.getVelocity() == null && other.getVelocity() == null)) {
-			return false;
-		}
-		
-		if (this.getVelocityDirection() != null && other.getVelocityDirection() != null) {
-			if (!(this.getVelocityDirection().equals(other.getVelocityDirection()))) {
-				return false;
-			}
-		} else if (!(this.getVelocityDirection() == null && other.getVelocityDirection() == null)) {
-			return false;
-		}
-		
-		/*
-		if (!(((this.getFunctionalRoadClass() == null) && (other.getFunctionalRoadClass() == null))
-				|| (this.getFunctionalRoadClass().equals(other.getFunctionalRoadClass())))) {
-			retval = false;
-		}
-
-		if (!(((this.getNumberOfLanes() == null) && (other.getNumberOfLanes() == null))
-				|| (this.getNumberOfLanes().equals(other.getNumberOfLanes())))) {
-			retval = false;
-		}
-
-		if (!(((this.getUnallowedDriverDir() == null) && (other.getUnallowedDriverDir() == null))
-				|| (this.getUnallowedDriverDir().equals(other.getUnallowedDriverDir())))) {
-			retval = false;
-		}
-
-		if (!(((this.getVelocity() == null) && (other.getVelocity() == null))
-				|| (this.getVelocity().equals(other.getVelocity())))) {
-			retval = false;
-		}
-
-		if (!(((this.getVelocityDirection() == null) && (other.getVelocityDirection() == null))
-				|| (this.getVelocityDirection().equals(other.getVelocityDirection())))) {
-			retval = false;
-		}
-		 */
-		return retval;
+		return (this.getOid() == other.getOid()) && this.attributesEqual(other);
 	}
 
 	/**
@@ -233,9 +178,9 @@ public class RefLinkPart extends Part {
 	 * with the travel direction.
 	 */
 	public boolean aligned() {
-		if (this.getUnallowedDriverDir() != null && this.getUnallowedDriverDir() == 1) {
+		if (this.hasAttribute(PartStore.UNALLOWED_DRIVE_DIR) && this.unallowedDriveDir() == 1) {
 			return false;
-		} else if (this.getVelocityDirection() != null && this.getVelocityDirection() == 2) {
+		} else if (this.hasAttribute(PartStore.VELOCITY_DIRECTION) && this.velocityDirection() == 2) {
 			return false;
 		} else {
 			return true;
@@ -248,7 +193,7 @@ public class RefLinkPart extends Part {
 	public void align(GeometryFactory gf) {
 		if (!this.aligned()) {
 			if (this.reverseGeom(gf)) {
-				String oldTo = this.getNodeTo();
+				long oldTo = this.getNodeTo();
 
 				this.setNodeTo(this.getNodeFrom());
 				this.setNodeFrom(oldTo);
@@ -0,0 +1,218 @@
+package refnet;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.vividsolutions.jts.io.ParseException;
+
+import io.GeometryReader;
+
+/**
+ * Pipelined version of RefNetwork.addRefLinkParts. One reader thread copies
+ * the raw rows from the ResultSet or NetworkSource, a pool of workers decode
+ * the geometries and create the RefLinkParts, and the calling thread adds the
+ * parts to the network. The decoded parts pass through a bounded queue in the
+ * order the rows were read, so the network is built exactly as if the rows
+ * had been read one by one.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class RefLinkPartPipeline {
+
+	/**
+	 * Number of rows that may be read ahead of the assembling thread.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private static final long POLL_MS = 100;
+
+	/**
+	 * Marks the end of the rows.
+	 */
+	private static final Future<RefLinkPart> END = new FutureTask<RefLinkPart>(new Callable<RefLinkPart>() {
+		@Override
+		public RefLinkPart call() {
+			return null;
+		}
+	});
+
+	/**
+	 * Reads all rows of the ResultSet and adds them to the network.
+	 *
+	 * @param refLinkParts
+	 *            ResultSet with the columns of
+	 *            {@link RefNetwork#RefNetwork(ResultSet, String, String)}.
+	 * @param rn
+	 *            the network the parts are added to.
+	 * @param nbWorkers
+	 *            number of threads decoding geometries.
+	 * @param capacity
+	 *            maximum number of rows read ahead of the assembling thread.
+	 * @throws SQLException
+	 *             if reading the ResultSet failed.
+	 * @throws ParseException
+	 *             if a geometry was refused.
+	 * @throws ClassCastException
+	 *             if a geometry was not a LineString.
+	 */
+	public static void load(ResultSet refLinkParts, RefNetwork rn, int nbWorkers, int capacity)
+			throws SQLException, ParseException, ClassCastException {
+
+		try {
+			RefLinkPartPipeline.load(new JdbcNetworkSource(refLinkParts), rn, nbWorkers, capacity);
+		} catch (IOException ioe) {
+			if (ioe.getCause() instanceof SQLException) {
+				throw (SQLException) ioe.getCause();
+			}
+			throw new SQLException(ioe);
+		}
+	}
+
+	/**
+	 * Reads all rows of the NetworkSource and adds them to the network.
+	 *
+	 * @param nbWorkers
+	 *            number of threads decoding geometries.
+	 * @param capacity
+	 *            maximum number of rows read ahead of the assembling thread.
+	 * @throws IOException
+	 *             if reading the source failed.
+	 * @throws ParseException
+	 *             if a geometry was refused.
+	 * @throws ClassCastException
+	 *             if a geometry was not a LineString.
+	 */
+	public static void load(NetworkSource refLinkParts, final RefNetwork rn, int nbWorkers, int capacity)
+			throws IOException, ParseException, ClassCastException {
+
+		final ArrayBlockingQueue<Future<RefLinkPart>> decoded = new ArrayBlockingQueue<Future<RefLinkPart>>(capacity);
+		final ExecutorService workers = Executors.newFixedThreadPool(nbWorkers);
+		final ThreadLocal<GeometryReader> readers = new ThreadLocal<GeometryReader>() {
+			@Override
+			protected GeometryReader initialValue() {
+				return new GeometryReader(rn.geometryFactory);
+			}
+		};
+
+		Reader reader = new Reader(refLinkParts, rn, workers, readers, decoded);
+		Thread readerThread = new Thread(reader, "RefLinkPartPipeline-reader");
+		readerThread.start();
+
+		try {
+			Future<RefLinkPart> next;
+
+			while ((next = RefLinkPartPipeline.take(decoded)) != END) {
+				RefLinkPart part;
+
+				try {
+					part = ParallelNetworkLoader.get(next);
+				} catch (SQLException se) {
+					// Only thrown if interrupted, the workers do not read.
+					throw new IOException(se);
+				}
+
+				if (part != null) {
+					rn.addRefLinkPart(part);
+				}
+			}
+
+			if (reader.failure != null) {
+				throw reader.failure;
+			}
+		} finally {
+			reader.stopped = true;
+			decoded.clear();
+			workers.shutdownNow();
+
+			try {
+				readerThread.join();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static Future<RefLinkPart> take(ArrayBlockingQueue<Future<RefLinkPart>> decoded) throws IOException {
+		try {
+			return decoded.take();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for RefLinkParts.", ie);
+		}
+	}
+
+	/**
+	 * Copies rows and hands them to the workers, in order.
+	 */
+	private static class Reader implements Runnable {
+		private final NetworkSource rows;
+		private final RefNetwork rn;
+		private final ExecutorService workers;
+		private final ThreadLocal<GeometryReader> readers;
+		private final ArrayBlockingQueue<Future<RefLinkPart>> decoded;
+		volatile boolean stopped;
+		volatile IOException failure;
+
+		Reader(NetworkSource rows, RefNetwork rn, ExecutorService workers, ThreadLocal<GeometryReader> readers,
+				ArrayBlockingQueue<Future<RefLinkPart>> decoded) {
+			this.rows = rows;
+			this.rn = rn;
+			this.workers = workers;
+			this.readers = readers;
+			this.decoded = decoded;
+		}
+
+		@Override
+		public void run() {
+			try {
+				RefLinkPartRow next;
+
+				while (!this.stopped && ((next = this.rows.next()) != null)) {
+					final RefLinkPartRow row = next;
+
+					Future<RefLinkPart> part = this.workers.submit(new Callable<RefLinkPart>() {
+						@Override
+						public RefLinkPart call() throws ParseException {
+							return Reader.this.rn.createRefLinkPart(row, Reader.this.readers.get());
+						}
+					});
+
+					this.put(part);
+				}
+			} catch (IOException ioe) {
+				this.failure = ioe;
+			} catch (InterruptedException ie) {
+				this.stopped = true;
+			} catch (RejectedExecutionException ree) {
+				// The workers were shut down by the assembling thread.
+				this.stopped = true;
+			} finally {
+				try {
+					this.put(END);
+				} catch (InterruptedException ie) {
+					/* stopped */ }
+			}
+		}
+
+		/**
+		 * Waits for room in the queue unless the assembling thread has quit.
+		 */
+		private void put(Future<RefLinkPart> part) throws InterruptedException {
+			while (!this.stopped) {
+				if (this.decoded.offer(part, POLL_MS, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		}
+	}
+}
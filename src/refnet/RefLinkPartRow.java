@@ -0,0 +1,42 @@
+package refnet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import io.GeometryReader;
+
+/**
+ * The undecoded columns of one row of the network query, i.e. everything
+ * needed to create a RefLinkPart with the geometry still as WKT or WKB.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class RefLinkPartRow {
+	public final String refLinkOid;
+	public final double measureFrom;
+	public final double measureTo;
+	public final String nodeFromOid;
+	public final String nodeToOid;
+	public final Object geometry;
+
+	public RefLinkPartRow(String refLinkOid, double measureFrom, double measureTo, String nodeFromOid,
+			String nodeToOid, Object geometry) {
+		this.refLinkOid = refLinkOid;
+		this.measureFrom = measureFrom;
+		this.measureTo = measureTo;
+		this.nodeFromOid = nodeFromOid;
+		this.nodeToOid = nodeToOid;
+		this.geometry = geometry;
+	}
+
+	/**
+	 * Copies the current row of a ResultSet with the columns REFLINK_OID,
+	 * MEASURE_FROM, MEASURE_TO, REFNODE_OID_FROM, REFNODE_OID_TO and GEOM.
+	 */
+	public static RefLinkPartRow read(ResultSet row) throws SQLException {
+		return new RefLinkPartRow(row.getString("REFLINK_OID"), row.getDouble("MEASURE_FROM"),
+				row.getDouble("MEASURE_TO"), row.getString("REFNODE_OID_FROM"), row.getString("REFNODE_OID_TO"),
+				GeometryReader.readRaw(row, "GEOM"));
+	}
+}
@@ -4,9 +4,9 @@ import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
@@ -15,9 +15,12 @@ import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 
 import io.FileWriters;
+import io.GeometryReader;
 import io.Logger;
-import util.Consolidator;
+import util.GeometryOps;
+import util.LongRegistry;
 import util.NameGenerator;
+import util.OidCodec;
 
 /**
  * This class hold a network generated from the netdb database and formats
@@ -28,14 +31,24 @@ import util.NameGenerator;
  */
 public class RefNetwork {
 	private Logger logger;
-	private HashMap<String, RefLink> refLinks;
-	private HashMap<String, RefNode> _refNodes;
+	private LongRegistry<RefLink> refLinks;
+	private LongRegistry<RefNode> _refNodes;
+	private PartStore partStore;
 	// private HashSet<RefNode> refNodes;
 	public WKTReader wktReader;
+	public GeometryReader geometryReader;
 	public GeometryFactory geometryFactory;
 	private NameGenerator nmg;
+	private int attributeThreads;
+	private int cleanThreads;
+	private double pointTolerance;
 	public static final double tolerance = 0.0000000001d;
 	public static final double toleranceMax = 0.1000000000d;
+	/**
+	 * An attribute that could not be added is snapped at this factor times
+	 * the distance from its end points to the RefLink, see addAttributes.
+	 */
+	static final double SNAP_MARGIN = 1.1000000000d;
 	public static final int SRID = 3006;
 
 	/**
@@ -48,8 +61,8 @@ public class RefNetwork {
 	 * 
 	 * @param refLinkParts
 	 *            ResultSet with columns (REFLINK_OID, MEASURE_FROM, MEASURE_TO,
-	 *            REFNODE_OID_FROM, REFNODE_OID_TO, GEOM [wkt-formatted
-	 *            LineString]).
+	 *            REFNODE_OID_FROM, REFNODE_OID_TO, GEOM [wkt- or
+	 *            wkb-formatted LineString]).
 	 * @throws SQLException
 	 *             if any get... from ResultSet went wrong or if the set is
 	 *             empty.
@@ -64,95 +77,287 @@ public class RefNetwork {
 	public RefNetwork(ResultSet refLinkParts, String path, String fileName)
 			throws SQLException, ParseException, ClassCastException, IOException {
 
+		this(path, fileName);
+
+		this.addRefLinkParts(refLinkParts);
+	}
+
+	/**
+	 * Creates an empty RefNetwork, RefLinkParts are added through
+	 * addRefLinkParts or addRefLinkPart.
+	 * 
+	 * Assumes SRID 3006.
+	 * 
+	 * @throws IOException
+	 *             if a Logger couldn't be created.
+	 */
+	public RefNetwork(String path, String fileName) throws IOException {
+		this(path, fileName, new PrecisionModel(PrecisionModel.FLOATING));
+	}
+
+	/**
+	 * Creates an empty RefNetwork whose coordinates follow precisionModel.
+	 * With a fixed PrecisionModel, e.g. new PrecisionModel(1000) for a
+	 * millimetre grid in SWEREF 99 TM, every coordinate is rounded to the grid
+	 * as it is read, so that equal end points are exactly equal and parts and
+	 * nodes are matched without tolerance. Attributes are then added at a
+	 * tolerance of one grid step, see getTolerance.
+	 * 
+	 * Assumes SRID 3006.
+	 * 
+	 * @throws IOException
+	 *             if a Logger couldn't be created.
+	 */
+	public RefNetwork(String path, String fileName, PrecisionModel precisionModel) throws IOException {
+
 		this.logger = new Logger(path, fileName);
 		System.out.println("Info will be written to log: " + path + fileName);
 
-		PrecisionModel pm = new PrecisionModel(PrecisionModel.FLOATING);
-		this.geometryFactory = new GeometryFactory(pm, RefNetwork.SRID);
+		this.geometryFactory = new GeometryFactory(precisionModel, RefNetwork.SRID);
+		this.pointTolerance = GeometryOps.pointTolerance(this.geometryFactory, RefNetwork.tolerance);
 		this.wktReader = new WKTReader(this.geometryFactory);
+		this.geometryReader = new GeometryReader(this.geometryFactory);
 
-		this.refLinks = new HashMap<String, RefLink>();
-		this._refNodes = new HashMap<String, RefNode>();
+		this.refLinks = new LongRegistry<RefLink>();
+		this._refNodes = new LongRegistry<RefNode>();
+		this.partStore = new PartStore(this.geometryFactory);
 		// this.refNodes = new HashSet<RefNode>();
 
 		this.nmg = new NameGenerator();
+		this.attributeThreads = 1;
+		this.cleanThreads = 1;
+	}
 
-		String nodeFromOid, nodeToOid;
-
-		String refLinkOid;
-		LineString refLinkPartGeometry;
-		double refLinkPartMeasureFrom;
-		double refLinkPartMeasureTo;
-		RefNode reflinkPartRefNodeFrom;
-		RefNode reflinkPartRefNodeTo;
+	/**
+	 * Reads all rows of the ResultSet and adds them to the network.
+	 * 
+	 * @param refLinkParts
+	 *            ResultSet with columns (REFLINK_OID, MEASURE_FROM, MEASURE_TO,
+	 *            REFNODE_OID_FROM, REFNODE_OID_TO, GEOM [wkt- or
+	 *            wkb-formatted LineString]).
+	 * @see #RefNetwork(ResultSet, String, String)
+	 */
+	public void addRefLinkParts(ResultSet refLinkParts) throws SQLException, ParseException, ClassCastException {
+		RefLinkPart newRefLinkPart;
 
 		while (refLinkParts.next()) {
-			// Get value of each column in result-row.
-			refLinkOid = refLinkParts.getString("REFLINK_OID");
-			refLinkPartGeometry = (LineString) wktReader.read(refLinkParts.getString("GEOM"));
-			refLinkPartMeasureFrom = refLinkParts.getDouble("MEASURE_FROM");
-			refLinkPartMeasureTo = refLinkParts.getDouble("MEASURE_TO");
-
-			/*
-			 * tempNode = refLinkParts.getString("REFNODE_OID_FROM");
-			 * reflinkPartRefNodeFrom = new RefNode(tempNode,
-			 * refLinkPartGeometry.getStartPoint(), false);
-			 * 
-			 * tempNode = refLinkParts.getString("REFNODE_OID_TO");
-			 * reflinkPartRefNodeTo = new RefNode(tempNode,
-			 * refLinkPartGeometry.getEndPoint(), false);
-			 */
-
-			// Create part for storage with link
-			try {
-				nodeFromOid = refLinkParts.getString("REFNODE_OID_FROM");
-				nodeToOid = refLinkParts.getString("REFNODE_OID_TO");
+			newRefLinkPart = this.readRefLinkPart(refLinkParts, this.geometryReader);
 
-				if (this._refNodes.containsKey(nodeFromOid)) {
-					reflinkPartRefNodeFrom = this._refNodes.get(nodeFromOid);
-				} else {
-					reflinkPartRefNodeFrom = new RefNode(nodeFromOid, refLinkPartGeometry.getStartPoint(), false);
-				}
+			if (newRefLinkPart != null) {
+				this.addRefLinkPart(newRefLinkPart);
+			}
+		}
+	}
 
-				if (this._refNodes.containsKey(nodeToOid)) {
-					reflinkPartRefNodeTo = this._refNodes.get(nodeToOid);
-				} else {
-					reflinkPartRefNodeTo = new RefNode(nodeToOid, refLinkPartGeometry.getEndPoint(), false);
-				}
+	/**
+	 * Reads all rows of a NetworkSource and adds them to the network.
+	 * 
+	 * @throws IOException
+	 *             if a row could not be read.
+	 * @throws ParseException
+	 *             if a geometry was refused.
+	 * @throws ClassCastException
+	 *             if a geometry was not a LineString.
+	 */
+	public void addRefLinkParts(NetworkSource refLinkParts) throws IOException, ParseException, ClassCastException {
+		RefLinkPartRow row;
+		RefLinkPart newRefLinkPart;
 
-				RefLinkPart newRefLinkPart = new RefLinkPart(refLinkOid, refLinkPartGeometry, refLinkPartMeasureFrom,
-						refLinkPartMeasureTo, reflinkPartRefNodeFrom.getOid(), reflinkPartRefNodeTo.getOid());
+		while ((row = refLinkParts.next()) != null) {
+			newRefLinkPart = this.createRefLinkPart(row, this.geometryReader);
 
-				if (this.refLinks.containsKey(refLinkOid)) {
-					if (!this.refLinks.get(refLinkOid).addRefLinkPart(newRefLinkPart, this.geometryFactory)) {
-						// TODO: Should keep the integrity of the network.
-						this.logger.log(new String[] { "Warning: The latest RefLinkPart with REFLINK_OID " + refLinkOid
-								+ " AND MEASURE_FROM " + refLinkPartMeasureFrom + "AND MEASURE TO "
-								+ refLinkPartMeasureTo
-								+ " was illegal as it occupied space already occupied by another RefLinkPart." });
-					}
-				} else {
-					RefLink newRefLink = new RefLink(refLinkOid, newRefLinkPart);
-					this.refLinks.put(refLinkOid, newRefLink);
+			if (newRefLinkPart != null) {
+				this.addRefLinkPart(newRefLinkPart);
+			}
+		}
+	}
+
+	/**
+	 * Adds RefLinkParts, in list order, to the network.
+	 */
+	public void addRefLinkParts(List<RefLinkPart> refLinkParts) {
+		for (RefLinkPart refLinkPart : refLinkParts) {
+			this.addRefLinkPart(refLinkPart);
+		}
+	}
+
+	/**
+	 * Creates a RefLinkPart from the current row of the ResultSet without
+	 * adding it to the network. Thread safe as long as each thread uses its
+	 * own GeometryReader.
+	 * 
+	 * @param row
+	 *            ResultSet positioned on a row with the columns of
+	 *            {@link #RefNetwork(ResultSet, String, String)}.
+	 * @param gr
+	 *            GeometryReader used to decode the GEOM column.
+	 * @return a new RefLinkPart, or null if the row had illegal values (the
+	 *         row is then logged).
+	 */
+	public RefLinkPart readRefLinkPart(ResultSet row, GeometryReader gr)
+			throws SQLException, ParseException, ClassCastException {
+		return this.createRefLinkPart(RefLinkPartRow.read(row), gr);
+	}
+
+	/**
+	 * Decodes the geometry of a row and creates a RefLinkPart from it without
+	 * adding it to the network. Thread safe as long as each thread uses its
+	 * own GeometryReader.
+	 * 
+	 * @return a new RefLinkPart, or null if the row had illegal values (the
+	 *         row is then logged).
+	 * @throws ParseException
+	 *             if the geometry was refused.
+	 * @throws ClassCastException
+	 *             if the geometry was not a LineString.
+	 */
+	public RefLinkPart createRefLinkPart(RefLinkPartRow row, GeometryReader gr)
+			throws ParseException, ClassCastException {
+
+		LineString refLinkPartGeometry = (LineString) gr.read(row.geometry);
+
+		try {
+			return new RefLinkPart(this.partStore, OidCodec.encode(row.refLinkOid), refLinkPartGeometry,
+					row.measureFrom, row.measureTo, OidCodec.encode(row.nodeFromOid), OidCodec.encode(row.nodeToOid));
+		} catch (IllegalArgumentException iae) {
+			this.logger.log(new String[] { "RefNetwork: Could not create RefLinkPart (Illegal Argument:",
+					iae.getMessage() });
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a new RefLinkPart to its RefLink, creating the RefLink and the
+	 * RefNodes at its start and end if they are not yet in the network. Nodes
+	 * are identified by their OID only, so a node shared by parts loaded from
+	 * different regions is only created once.
+	 * 
+	 * @return true if the part was added.
+	 */
+	public boolean addRefLinkPart(RefLinkPart newRefLinkPart) {
+		long refLinkOid = newRefLinkPart.getOid();
+		long nodeFromOid = newRefLinkPart.getNodeFrom();
+		long nodeToOid = newRefLinkPart.getNodeTo();
+		boolean added = true;
+
+		try {
+			int refLink = this.refLinks.getOrCreate(refLinkOid);
+
+			if (this.refLinks.valueAt(refLink) != null) {
+				if (!this.refLinks.valueAt(refLink).addRefLinkPart(newRefLinkPart, this.geometryFactory)) {
+					// TODO: Should keep the integrity of the network.
+					this.logger.log(new String[] { "Warning: The latest RefLinkPart with REFLINK_OID " + OidCodec.toString(refLinkOid)
+							+ " AND MEASURE_FROM " + newRefLinkPart.getMeasureFrom() + "AND MEASURE TO "
+							+ newRefLinkPart.getMeasureTo()
+							+ " was illegal as it occupied space already occupied by another RefLinkPart." });
+					added = false;
 				}
+			} else {
+				this.refLinks.setValueAt(refLink, new RefLink(refLinkOid, newRefLinkPart));
+			}
 
-				this._refNodes.put(nodeFromOid, reflinkPartRefNodeFrom);
-				this._refNodes.put(nodeToOid, reflinkPartRefNodeTo);
+			int nodeFrom = this._refNodes.getOrCreate(nodeFromOid);
+			int nodeTo = this._refNodes.getOrCreate(nodeToOid);
+			boolean newNodeTo = (this._refNodes.valueAt(nodeTo) == null);
 
-				/*
-				 * if (!(this.refNodes.contains(reflinkPartRefNodeTo))) {
-				 * this.refNodes.add(reflinkPartRefNodeTo); }
-				 * 
-				 * if (!(this.refNodes.contains(reflinkPartRefNodeFrom))) {
-				 * this.refNodes.add(reflinkPartRefNodeFrom); }
-				 */
-			} catch (IllegalArgumentException iae) {
-				this.logger.log(new String[] { "RefNetwork: Could not create RefLinkPart (Illegal Argument:",
-						iae.getMessage() });
+			if (this._refNodes.valueAt(nodeFrom) == null) {
+				this._refNodes.setValueAt(nodeFrom,
+						new RefNode(nodeFromOid, newRefLinkPart.getGeometry().getStartPoint(), false));
+			}
+
+			// A new node that is both start and end gets the end point.
+			if (newNodeTo) {
+				this._refNodes.setValueAt(nodeTo,
+						new RefNode(nodeToOid, newRefLinkPart.getGeometry().getEndPoint(), false));
 			}
+
+			newRefLinkPart.releaseGeometry();
+
+			return added;
+		} catch (IllegalArgumentException iae) {
+			this.logger.log(new String[] { "RefNetwork: Could not create RefLinkPart (Illegal Argument:",
+					iae.getMessage() });
+			return false;
 		}
 	}
 
+	/**
+	 * Returns the Logger of this network, shared by everything that loads
+	 * data into it.
+	 */
+	public Logger getLogger() {
+		return this.logger;
+	}
+
+	/**
+	 * Returns the RefLinks of the network, see RefGraphBuilder.
+	 */
+	LongRegistry<RefLink> getRefLinkRegistry() {
+		return this.refLinks;
+	}
+
+	/**
+	 * Returns the RefNodes of the network, see RefGraphBuilder.
+	 */
+	LongRegistry<RefNode> getRefNodeRegistry() {
+		return this._refNodes;
+	}
+
+	/**
+	 * Returns the NameGenerator of the nodes created during attribute
+	 * assignment, see ParallelAttributeApplier.
+	 */
+	NameGenerator getNameGenerator() {
+		return this.nmg;
+	}
+
+	/**
+	 * Sets the number of threads applyAttributes gives the RefLinks their
+	 * attributes on, 1 (the default) to use the calling thread only. See
+	 * ParallelAttributeApplier.
+	 */
+	public void setAttributeThreads(int attributeThreads) {
+		this.attributeThreads = Math.max(1, attributeThreads);
+	}
+
+	/**
+	 * Sets the number of threads clean cleans the RefLinks on, 1 (the default)
+	 * to use the calling thread only. See ParallelCleaner.
+	 */
+	public void setCleanThreads(int cleanThreads) {
+		this.cleanThreads = Math.max(1, cleanThreads);
+	}
+
+	/**
+	 * Returns the tolerance at which attributes are added, RefNetwork.tolerance
+	 * with floating coordinates and one grid step with fixed ones.
+	 */
+	public double getTolerance() {
+		return this.pointTolerance;
+	}
+
+	/**
+	 * Returns the OID of a RefLink or RefNode OidCodec code, also for the
+	 * nodes created during attribute assignment.
+	 */
+	public String getOidString(long code) {
+		return this.nmg.toString(code);
+	}
+
+	/**
+	 * Returns true if the network has a RefLink with this OID.
+	 */
+	public boolean containsRefLink(String refLinkOid) {
+		return this.containsRefLink(OidCodec.encode(refLinkOid));
+	}
+
+	/**
+	 * Returns true if the network has a RefLink with this OidCodec code.
+	 */
+	public boolean containsRefLink(long refLinkOid) {
+		return this.refLinks.containsKey(refLinkOid);
+	}
+
 	/**
 	 * Returns the a list of all OID of all RefLinks in the network.
 	 * 
@@ -160,7 +365,13 @@ public class RefNetwork {
 	 *         order.
 	 */
 	public ArrayList<String> getRefLinks() {
-		return new ArrayList<String>(this.refLinks.keySet());
+		ArrayList<String> oids = new ArrayList<String>(this.refLinks.size());
+
+		for (int i = 0; i < this.refLinks.size(); i++) {
+			oids.add(OidCodec.toString(this.refLinks.keyAt(i)));
+		}
+
+		return oids;
 	}
 
 	/**
@@ -168,73 +379,126 @@ public class RefNetwork {
 	 * method assumes that each entry in attributes have been added to the list
 	 * through util.Consolidate.
 	 */
-	public void addAttribute(ArrayList<Attribute> attributes, String refLinkOid) {
-		if ((!(attributes.isEmpty())) && (this.refLinks.containsKey(attributes.get(0).getOid()))) {
-
-			RefLink rl = this.refLinks.get(attributes.get(0).getOid());
-			HashSet<RefNode> nodesToAdd = new HashSet<RefNode>();
-
-			for (int i = 0; i < attributes.size(); i++) {
-				try {
-					/*
-					 * this.refNodes.addAll(rl.addAttributeByGeom(attributes.get
-					 * (i), this.geometryFactory, this.nmg,
-					 * RefNetwork.tolerance, true, this.logger));
-					 */
-					nodesToAdd = rl.addAttributeByGeom(attributes.get(i), this.geometryFactory, this.nmg,
-							RefNetwork.tolerance, true, this.logger);
-
-					for (RefNode nodeToAdd : nodesToAdd) {
-						if (!(this._refNodes.containsKey(nodeToAdd.getOid()))) {
-							this._refNodes.put(nodeToAdd.getOid(), nodeToAdd);
-						}
-					}
-				} catch (IllegalArgumentException e1) {
-					/*
-					 * Could be java.lang.IllegalArgumentException: Invalid
-					 * number of points in LineString (found 1 - must be 0 or >=
-					 * 2) from GeometryOps: lgb.endLine() failed. This has
-					 * happened for e.g. REFLINK_OID 16499:2200
-					 */
-					this.logger.log(new String[] {
-							"RefNetwork could not add attribute with tolerance " + RefNetwork.tolerance + " for "
-									+ rl.getOid() + ":",
-							"         Attribute: " + attributes.get(i).toCSVStringWithoutAttributes(),
-							"         will try with increased tolerance..." });
-
-					double sl = RefNetwork.tolerance * 10.0000000000d;
-					while (true) {
-						try {
-							/*
-							 * this.refNodes.addAll(rl.addAttributeByGeom(
-							 * attributes.get(i), this.geometryFactory,
-							 * this.nmg, sl, false, this.logger));
-							 */
-							nodesToAdd = rl.addAttributeByGeom(attributes.get(i), this.geometryFactory, this.nmg,
-									RefNetwork.tolerance, true, this.logger);
-
-							for (RefNode nodeToAdd : nodesToAdd) {
-								if (!(this._refNodes.containsKey(nodeToAdd.getOid()))) {
-									this._refNodes.put(nodeToAdd.getOid(), nodeToAdd);
-								}
-							}
-
-							this.logger.log(new String[] { "         succeded at a tolerance of " + sl + " m." });
-							break;
-						} catch (IllegalArgumentException e2) {
-							sl = sl * 1.1000000000d;
-							/*
-							 * In SWEREF 99 TM, this should be 0.1 m. (And at
-							 * the most, 216 iterations)..
-							 */
-							if (sl > RefNetwork.toleranceMax) {
-								this.logger.log(new String[] { "         FAILED to add the attribute." });
-								break;
-							}
-						}
+	public void addAttribute(ArrayList<Attribute> attributes, long refLinkOid) {
+		RefLink rl = (attributes.isEmpty()) ? null : this.refLinks.get(attributes.get(0).getOid());
+
+		if (rl != null) {
+			this.addNodes(this.addAttributes(rl, attributes, this.nmg));
+		}
+	}
+
+	/**
+	 * Adds the attributes to rl, see addAttribute(ArrayList, long), and
+	 * returns the new nodes named by nmg in the order they are to be added to
+	 * the network. Only changes rl, so different RefLinks may be given their
+	 * attributes at the same time on different threads, each with its own
+	 * fork of the NameGenerator.
+	 */
+	ArrayList<RefNode> addAttributes(RefLink rl, ArrayList<Attribute> attributes, NameGenerator nmg) {
+		ArrayList<RefNode> newNodes = new ArrayList<RefNode>();
+		HashSet<RefNode> nodesToAdd;
+
+		for (int i = 0; i < attributes.size(); i++) {
+			try {
+				/*
+				 * this.refNodes.addAll(rl.addAttributeByGeom(attributes.get
+				 * (i), this.geometryFactory, this.nmg,
+				 * RefNetwork.tolerance, true, this.logger));
+				 */
+				nodesToAdd = rl.addAttributeByGeom(attributes.get(i), this.geometryFactory, nmg,
+						this.pointTolerance, true, this.logger);
+
+				newNodes.addAll(nodesToAdd);
+				attributes.get(i).setSnapping(Attribute.ON_LINK, this.pointTolerance);
+			} catch (IllegalArgumentException e1) {
+				/*
+				 * Could be java.lang.IllegalArgumentException: Invalid
+				 * number of points in LineString (found 1 - must be 0 or >=
+				 * 2) from GeometryOps: lgb.endLine() failed. This has
+				 * happened for e.g. REFLINK_OID 16499:2200
+				 */
+				Attribute attribute = attributes.get(i);
+				double distance = Math.max(rl.distance(attribute.getGeometry().getStartPoint()),
+						rl.distance(attribute.getGeometry().getEndPoint()));
+
+				this.logger.log(new String[] {
+						"RefNetwork could not add attribute with tolerance " + this.pointTolerance + " for "
+								+ rl.getOidString() + ":",
+						"         Attribute: " + attribute.toCSVStringWithoutAttributes(),
+						"         its end points are at most " + distance + " m from the RefLink." });
+
+				/*
+				 * In SWEREF 99 TM, toleranceMax should be 0.1 m. The attribute
+				 * is snapped once, at the distance of its end points.
+				 */
+				double sl = Math.max(this.pointTolerance, RefNetwork.SNAP_MARGIN * distance);
+
+				if (distance > RefNetwork.toleranceMax) {
+					this.logger.log(new String[] { "         REJECTED, the distance exceeds " + RefNetwork.toleranceMax
+							+ " m." });
+					attribute.setSnapping(Attribute.REJECTED, this.pointTolerance);
+				} else if (sl <= this.pointTolerance) {
+					// Snapping would not change the tolerance, so neither the outcome.
+					this.logger.log(new String[] { "         FAILED, the end points are within the tolerance." });
+					attribute.setSnapping(Attribute.FAILED, this.pointTolerance);
+				} else {
+					try {
+						nodesToAdd = rl.addAttributeByGeom(attribute, this.geometryFactory, nmg, sl, true,
+								this.logger);
+
+						newNodes.addAll(nodesToAdd);
+
+						this.logger.log(new String[] { "         succeded at a tolerance of " + sl + " m." });
+						attribute.setSnapping(Attribute.SNAPPED, sl);
+					} catch (IllegalArgumentException e2) {
+						this.logger.log(
+								new String[] { "         FAILED to add the attribute at a tolerance of " + sl + " m." });
+						attribute.setSnapping(Attribute.FAILED, sl);
 					}
 				}
-				this.refLinks.put(rl.getOid(), rl);
+			}
+		}
+
+		rl.releaseGeometries();
+
+		return newNodes;
+	}
+
+	/**
+	 * Adds the attributes of several layers to rl in one sweep, see
+	 * RefLink.addAttributesBySweep, and returns the new nodes named by nmg in
+	 * the order they are to be added to the network. Like addAttributes, only
+	 * changes rl.
+	 */
+	ArrayList<RefNode> sweepAttributes(RefLink rl, ArrayList<Attribute> attributes, NameGenerator nmg) {
+		ArrayList<RefNode> newNodes = new ArrayList<RefNode>();
+
+		try {
+			newNodes.addAll(rl.addAttributesBySweep(attributes, this.geometryFactory, nmg, this.pointTolerance,
+					this.logger));
+		} catch (IllegalArgumentException iae) {
+			this.logger.log(new String[] { "RefNetwork could not sweep the attributes of " + rl.getOidString() + ": "
+					+ iae.getMessage() });
+
+			for (Attribute attribute : attributes) {
+				attribute.setSnapping(Attribute.FAILED, this.pointTolerance);
+			}
+		}
+
+		rl.releaseGeometries();
+
+		return newNodes;
+	}
+
+	/**
+	 * Adds the nodes that are not yet in the network.
+	 */
+	void addNodes(Collection<RefNode> nodesToAdd) {
+		for (RefNode nodeToAdd : nodesToAdd) {
+			int i = this._refNodes.getOrCreate(nodeToAdd.getOid());
+
+			if (this._refNodes.valueAt(i) == null) {
+				this._refNodes.setValueAt(i, nodeToAdd);
 			}
 		}
 	}
@@ -253,172 +517,146 @@ public class RefNetwork {
 	 *             a closed result set
 	 */
 	public void addAttribute(ResultSet attr) throws SQLException {
+		this.applyAttributes(this.readAttributes(attr, this.geometryReader));
+	}
 
-		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
-		Attribute attribute = null;
-		Attribute attributeNoGeom = null;
-		boolean hasAttributeNoGeom = false;
-		String prevOid = null;
-		String currOid = null;
-		String refLinkOid, attributeGeomStr;
-		LineString attributeGeom;
-		double attributeFromMeasure, attributeToMeasure;
-		Double vel;
-		Integer velDir, lanes, classification, unallowedDriveDir;
+	/**
+	 * Same as addAttribute(ResultSet) for the rows of an AttributeSource.
+	 * 
+	 * @throws IOException
+	 *             if a row could not be read.
+	 */
+	public void addAttribute(AttributeSource attr) throws IOException {
+		this.applyAttributes(this.readAttributes(attr, this.geometryReader));
+	}
 
-		while (attr.next()) {
-			currOid = attr.getString("REFLINK_OID");
-
-			// 1. Check to see if data is useful.
-			if (this.refLinks.containsKey(currOid)) {
-				attributeGeomStr = attr.getString("GEOM");
-				// 2. Get data
-				refLinkOid = attr.getString("REFLINK_OID");
-				attributeFromMeasure = attr.getDouble("MEASURE_FROM");
-				attributeToMeasure = attr.getDouble("MEASURE_TO");
-
-				// 3. Find the correct attribute field.
-				try {
-					vel = attr.getDouble("speed");
-				} catch (SQLException se) {
-					vel = null;
+	/**
+	 * Adds attribute lists, as returned by readAttributes, to the network in
+	 * list order. With more than one attribute thread the RefLinks are given
+	 * their attributes at the same time, which gives the same network, see
+	 * setAttributeThreads.
+	 */
+	public void applyAttributes(List<ArrayList<Attribute>> consolidated) {
+		if (this.attributeThreads > 1) {
+			ParallelAttributeApplier.apply(this, consolidated, this.attributeThreads, false);
+		} else {
+			for (ArrayList<Attribute> attributes : consolidated) {
+				if (!attributes.isEmpty()) {
+					this.addAttribute(attributes, attributes.get(0).getOid());
 				}
+			}
+		}
 
-				try {
-					velDir = attr.getInt("speed_direction");
-				} catch (SQLException se) {
-					velDir = null;
-				}
+		this.logSnapping(consolidated);
+	}
 
-				try {
-					lanes = attr.getInt("lanes");
-				} catch (SQLException se) {
-					lanes = null;
-				}
+	/**
+	 * Adds several attribute layers (speed, lanes etc.), each as returned by
+	 * readAttributes, to the network in one sweep per RefLink instead of one
+	 * pass per layer, see RefLink.addAttributesBySweep. A breakpoint common to
+	 * several layers then splits a part once, so fewer parts and nodes are
+	 * created, and clean() has less to merge. The later layers take
+	 * precedence where attributes of the same property overlap.
+	 */
+	public void applyAttributeLayers(List<? extends List<ArrayList<Attribute>>> layers) {
+		ArrayList<ArrayList<Attribute>> consolidated = new ArrayList<ArrayList<Attribute>>();
 
-				try {
-					classification = attr.getInt("functional_road_class");
-				} catch (SQLException se) {
-					classification = null;
-				}
+		for (List<ArrayList<Attribute>> layer : layers) {
+			consolidated.addAll(layer);
+		}
 
-				try {
-					unallowedDriveDir = attr.getInt("forbidden_direction");
-				} catch (SQLException se) {
-					unallowedDriveDir = null;
-				}
+		if (this.attributeThreads > 1) {
+			ParallelAttributeApplier.apply(this, consolidated, this.attributeThreads, true);
+			this.logSnapping(consolidated);
+			return;
+		}
 
-				// 4. If the attribute has geometry, it is business as usual.
-				if ((attributeGeomStr != null) && (!attributeGeomStr.equals("POINT EMPTY"))) {
-					try {
-						// 5. Create new attribute
-						attributeGeom = (LineString) wktReader.read(attributeGeomStr);
-
-						attribute = new Attribute(refLinkOid, attributeGeom, attributeFromMeasure, attributeToMeasure,
-								vel, velDir, lanes, classification, unallowedDriveDir);
-
-						if ((prevOid != null) && (currOid.equals(prevOid))) {
-							/*
-							 * 6. If this is not the first attribute in the
-							 * resultset and if the OID equals the previous OID,
-							 * try to consolidate the attributes (one common
-							 * geometry).
-							 */
-							
-							boolean sameAttributes = false;
-							for(Attribute otherAttribute : attributes)
-							{
-								if(otherAttribute.getOid().equals(attribute.getOid()) &&
-								   otherAttribute.getGeometry().equalsExact(attribute.getGeometry(),0.1) &&	
-								   otherAttribute.getMeasureFrom() == attribute.getMeasureFrom() &&
-								   otherAttribute.getMeasureTo() == attribute.getMeasureTo() &&
-								   ((otherAttribute.getVelocity() == null && attribute.getVelocity() == null) ||
-								    otherAttribute.getVelocity().equals(attribute.getVelocity())) &&
-								   ((otherAttribute.getNumberOfLanes() == null && attribute.getNumberOfLanes() == null) ||
-								   otherAttribute.getNumberOfLanes().equals(attribute.getNumberOfLanes())) &&
-								   ((otherAttribute.getFunctionalRoadClass() == null && attribute.getFunctionalRoadClass() == null) ||
-								   otherAttribute.getFunctionalRoadClass().equals(attribute.getFunctionalRoadClass())))
-								{
-									 if(otherAttribute.getUnallowedDriverDir() != null && attribute.getUnallowedDriverDir() != null &&
-									   !otherAttribute.getUnallowedDriverDir().equals(attribute.getFunctionalRoadClass()))
-									 {
-										 otherAttribute.setUnallowedDriverDir(3);
-										 sameAttributes = true;
-									 }
-									 if(otherAttribute.getVelocityDirection() != null && attribute.getVelocityDirection() != null &&
-									    !otherAttribute.getVelocityDirection().equals(attribute.getVelocityDirection()))
-									 {
-										 otherAttribute.setVelocityDirection(3);
-										 sameAttributes = true;
-										 
-									 }
-								}
-							}
-							
-							if(!sameAttributes)
-							{
-								attributes = Consolidator.Consolidate(attributes, attribute, this.geometryFactory);
-							}
-						} else if (attributes.isEmpty()) {
-							/*
-							 * 7. if the list has been emptied, then this is the
-							 * first attribute of this OID.
-							 */
-							attributes.add(attribute);
-						} else {
-							/*
-							 * 8. Otherwise the list isn't empty, but the new
-							 * attribute has another RefLink parent than the
-							 * items already in the list (different OID). If
-							 * this is the case, we first try to salvage
-							 * possible attributes without geometries, then we
-							 * add the attribute list to the RefLink before
-							 * moving on to the new OID.
-							 */
-							if (hasAttributeNoGeom) {
-								attributes = Consolidator.ConsolidateWithoutGeom(attributes, attributeNoGeom,
-										this.geometryFactory, this.logger);
-								attributeNoGeom = null;
-								hasAttributeNoGeom = false;
-							}
-							this.addAttribute(attributes, currOid);
-							attributes.clear();
-							attributes.add(attribute);
-						}
-
-						prevOid = attr.getString("REFLINK_OID");
-
-					} catch (ParseException pe) {
-						this.logger.log(new String[] {
-								"Consolidator through RefNetwork: Skipping one attribute (ParseException): "
-										+ currOid });
-					} catch (IllegalArgumentException iae) {
-						this.logger.log(
-								new String[] { "RefNetwork: Skipping one attribute (Illegal arguments): " + currOid });
-					}
+		LongRegistry<ArrayList<Attribute>> byRefLink = new LongRegistry<ArrayList<Attribute>>();
+
+		for (ArrayList<Attribute> attributes : consolidated) {
+			if (!attributes.isEmpty() && this.refLinks.containsKey(attributes.get(0).getOid())) {
+				int i = byRefLink.getOrCreate(attributes.get(0).getOid());
+
+				if (byRefLink.valueAt(i) == null) {
+					byRefLink.setValueAt(i, new ArrayList<Attribute>(attributes));
 				} else {
-					try {
-						attributeNoGeom = new Attribute(refLinkOid, null, attributeFromMeasure, attributeToMeasure, vel,
-								velDir, lanes, classification, unallowedDriveDir);
-						hasAttributeNoGeom = true;
-					} catch (IllegalArgumentException iae) {
-						this.logger.log(new String[] {
-								"RefNetwork: Skipping one attribute (Illegal arguments, also lacked geometry): "
-										+ currOid });
-					}
+					byRefLink.valueAt(i).addAll(attributes);
+				}
+			}
+		}
+
+		for (int i = 0; i < byRefLink.size(); i++) {
+			RefLink rl = this.refLinks.get(byRefLink.keyAt(i));
+
+			this.addNodes(this.sweepAttributes(rl, byRefLink.valueAt(i), this.nmg));
+		}
+
+		this.logSnapping(consolidated);
+	}
+
+	/**
+	 * Logs how many of the attributes were added on their RefLink, snapped,
+	 * rejected or failed, see Attribute.getSnapping.
+	 */
+	private void logSnapping(List<ArrayList<Attribute>> consolidated) {
+		int[] count = new int[Attribute.FAILED + 1];
+		double maxSnapped = 0.0d;
+
+		for (ArrayList<Attribute> attributes : consolidated) {
+			for (Attribute attribute : attributes) {
+				count[attribute.getSnapping()]++;
+
+				if (attribute.getSnapping() == Attribute.SNAPPED) {
+					maxSnapped = Math.max(maxSnapped, attribute.getSnapTolerance());
 				}
 			}
 		}
 
-		if (hasAttributeNoGeom) {
-			attributes = Consolidator.ConsolidateWithoutGeom(attributes, attributeNoGeom, this.geometryFactory,
-					this.logger);
-			attributeNoGeom = null;
-			hasAttributeNoGeom = false;
+		this.logger.log(new String[] { "RefNetwork: Attributes on their RefLink at tolerance " + this.pointTolerance
+				+ ": " + count[Attribute.ON_LINK] + ", snapped: " + count[Attribute.SNAPPED] + " (at most "
+				+ maxSnapped + " m), rejected: " + count[Attribute.REJECTED] + ", failed: " + count[Attribute.FAILED]
+				+ ", not added: " + count[Attribute.NOT_ADDED] + "." });
+	}
+
+	/**
+	 * Reads and consolidates a returned query of attributes without adding
+	 * them to the network, see addAttribute(ResultSet). Only reads the
+	 * network, so several attribute queries may be read at the same time as
+	 * long as each thread uses its own GeometryReader.
+	 * 
+	 * @return one consolidated list of attributes per RefLink, in the order
+	 *         addAttribute(ResultSet) would have added them.
+	 * @throws SQLException
+	 *             if a database access error occurs or this method is called on
+	 *             a closed result set
+	 */
+	public ArrayList<ArrayList<Attribute>> readAttributes(ResultSet attr, GeometryReader gr) throws SQLException {
+		AttributeGrouper grouper = new AttributeGrouper(this, gr);
+
+		while (attr.next()) {
+			grouper.add(AttributeRow.read(attr));
+		}
+
+		return grouper.finish();
+	}
+
+	/**
+	 * Same as readAttributes(ResultSet, GeometryReader) for the rows of an
+	 * AttributeSource.
+	 * 
+	 * @throws IOException
+	 *             if a row could not be read.
+	 */
+	public ArrayList<ArrayList<Attribute>> readAttributes(AttributeSource attr, GeometryReader gr)
+			throws IOException {
+		AttributeGrouper grouper = new AttributeGrouper(this, gr);
+		AttributeRow row;
+
+		while ((row = attr.next()) != null) {
+			grouper.add(row);
 		}
-		this.addAttribute(attributes, currOid);
-		attributes.clear();
-		attributes.add(attribute);
+
+		return grouper.finish();
 	}
 
 	/**
@@ -429,15 +667,16 @@ public class RefNetwork {
 	public int getNumberOfParts() {
 		int n = 0;
 
-		for (RefLink rf : this.refLinks.values()) {
-			n = n + rf.getNbParts();
+		for (int i = 0; i < this.refLinks.size(); i++) {
+			n = n + this.refLinks.valueAt(i).getNbParts();
 		}
 
 		return n;
 	}
 
 	/**
-	 * Prints all of the RefLinkParts in the network to the console.
+	 * Prints all of the RefLinkParts in the network to the console, in the
+	 * order of writeToFile.
 	 * 
 	 * @param withAttributes
 	 *            determines if the attributes also should be printed.
@@ -451,14 +690,20 @@ public class RefNetwork {
 
 		System.out.println(heading);
 
-		for (RefLink rf : this.refLinks.values()) {
-			System.out.println(rf.getRefLinkPartsAsCSVStringWithNewRow(withAttributes));
+		for (int i = 0; i < this.refLinks.size(); i++) {
+			System.out.println(this.refLinks.valueAt(i).getRefLinkPartsAsCSVStringWithNewRow(withAttributes, this.nmg));
 		}
 	}
 
 	/**
 	 * Writes all nodes in the Network to a ;-separated file.
 	 * 
+	 * The rows are in the order of _refNodes: the nodes read with the network
+	 * in load order, then the nodes created while adding attributes in the
+	 * order addNodes received them. A node removed by clean is replaced in that
+	 * order by the node that was last at the time. The same network gives
+	 * the same file, but the order is not sorted by REFNODE_OID.
+	 * 
 	 * @param path
 	 *            the system path where the new file should be saved.
 	 * @param fileName
@@ -471,8 +716,8 @@ public class RefNetwork {
 
 			fw.FileWritersAppendRow("REFNODE_OID;EXTENDED;GEOM");
 
-			for (RefNode rn : this._refNodes.values()) {
-				fw.FileWritersAppendRow(rn.toCsvString());
+			for (int i = 0; i < this._refNodes.size(); i++) {
+				fw.FileWritersAppendRow(this._refNodes.valueAt(i).toCsvString(this.nmg));
 			}
 			fw.destroy();
 
@@ -484,6 +729,11 @@ public class RefNetwork {
 	/**
 	 * Writes all RefLinkParts in the network to a file.
 	 * 
+	 * The RefLinks are written in the order of refLinks, the order their
+	 * first parts were loaded in, each with its parts in the order of the
+	 * RefLink. The same input gives the same file, but the rows are not
+	 * sorted by REFLINK_OID.
+	 * 
 	 * @param path
 	 *            the system path where the new file should be saved.
 	 * @param fileName
@@ -503,11 +753,12 @@ public class RefNetwork {
 
 			fw.FileWritersAppendRow(heading);
 
-			for (RefLink rf : this.refLinks.values()) {
+			for (int i = 0; i < this.refLinks.size(); i++) {
+				RefLink rf = this.refLinks.valueAt(i);
 				int idx = 0;
 
 				while (idx < rf.getNbParts()) {
-					fw.FileWritersAppendRow(rf.refLinkPartAsCSVString(idx, withAttributes));
+					fw.FileWritersAppendRow(rf.refLinkPartAsCSVString(idx, withAttributes, this.nmg));
 
 					idx++;
 				}
@@ -529,51 +780,71 @@ public class RefNetwork {
 		
 		this.align();
 		
-		RefLink value;
-		ArrayList<String> remove;
-		for (Map.Entry<String, RefLink> entry : this.refLinks.entrySet()) {
-			value = entry.getValue();
-			remove = value.clean(this.geometryFactory, this._refNodes);
-
-			this.refLinks.put(entry.getKey(), value);
-
-			for (String rm : remove) {
-				if (this._refNodes.containsKey(rm)) {
-					if (this._refNodes.get(rm).nbIncoming() == 1 && this._refNodes.get(rm).nbOutgoing() == 1)
-						this._refNodes.remove(rm);
-				}
+		if (this.cleanThreads > 1) {
+			ParallelCleaner.clean(this, this.cleanThreads);
+		} else {
+			for (int i = 0; i < this.refLinks.size(); i++) {
+				this.removePassThroughNodes(this.cleanRefLink(this.refLinks.valueAt(i)));
 			}
 		}
 		
 		this.forbidTurns();
 	}
 
+	/**
+	 * Cleans r, see RefLink.clean, and returns the nodes it merged away. Only
+	 * changes r, so different RefLinks may be cleaned at the same time on
+	 * different threads.
+	 */
+	ArrayList<Long> cleanRefLink(RefLink r) {
+		ArrayList<Long> remove = r.clean(this.geometryFactory, this._refNodes);
+		r.releaseGeometries();
+
+		return remove;
+	}
+
+	/**
+	 * Removes the nodes of remove that have one incoming and one outgoing
+	 * link.
+	 */
+	void removePassThroughNodes(List<Long> remove) {
+		RefNode n;
+
+		for (Long rm : remove) {
+			n = this._refNodes.get(rm);
+			if (n != null) {
+				if (n.nbIncoming() == 1 && n.nbOutgoing() == 1)
+					this._refNodes.remove(rm);
+			}
+		}
+	}
+
 	/**
 	 * Aligns all Parts of all RefLinks to be given <from, to> in the driving
 	 * direction and then set the incoming and outgoing links of all nodes.
 	 */
 	private void align() {
-		ArrayList<String> from, to;
+		long[] from, to;
+		RefLink r;
 		RefNode n;
 
-		for (RefLink r : this.refLinks.values()) {
+		for (int i = 0; i < this.refLinks.size(); i++) {
+			r = this.refLinks.valueAt(i);
 			r.align(this.geometryFactory);
 			from = r.getNodesFrom();
 			to = r.getNodesTo();
 
-			for (String f : from) {
-				if (this._refNodes.containsKey(f)) {
-					n = this._refNodes.get(f);
+			for (long f : from) {
+				n = this._refNodes.get(f);
+				if (n != null) {
 					n.setOutgoing(r.getOid());
-					this._refNodes.put(f, n);
 				}
 			}
 
-			for (String t : to) {
-				if (this._refNodes.containsKey(t)) {
-					n = this._refNodes.get(t);
+			for (long t : to) {
+				n = this._refNodes.get(t);
+				if (n != null) {
 					n.setIncoming(r.getOid());
-					this._refNodes.put(t, n);
 				}
 			}
 		}
@@ -581,12 +852,12 @@ public class RefNetwork {
 
 	private void forbidTurns() {
 		/*
-		String o;
+		long o;
 		RefNode n;
 		
-		for (RefLink r : this.refLinks.values()) {
-			o = r.getEndNodeOid();
-			if (o != null) {
+		for (int i = 0; i < this.refLinks.size(); i++) {
+			o = this.refLinks.valueAt(i).getEndNodeOid();
+			if (o != OidCodec.NONE) {
 				n = this._refNodes.get(o);
 				
 				if (n.nbOutgoing() > 1) {
@@ -1,34 +1,43 @@
 package refnet;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.vividsolutions.jts.geom.Point;
 
+import util.NameGenerator;
 import util.Pair;
 
 /**
- * A network node, which is just a String with some additions.
+ * A network node, which is just an OidCodec code with some additions.
  * 
  * @author Magnus Fransson <magnus.fransson@sweco.se>
  * @author Rasmus Ringdahl <rasmus.ringdahl@liu.se>
  * @version 1.0
  */
 public class RefNode {
-	private final String oid;
+	private final long oid;
 	private final boolean extended;
 	private Point point;
-	private ArrayList<String> incoming;
-	private ArrayList<String> outgoing;
-	private ArrayList<Pair<String, String>> forbiddenTurns;
+	private long[] incoming;
+	private int nbIncoming;
+	private long[] outgoing;
+	private int nbOutgoing;
+	private ArrayList<Pair<Long, Long>> forbiddenTurns;
 
-	public RefNode(String nodeOid, Point P, boolean createdDuringRunTime) {
+	/**
+	 * @param nodeOid
+	 *            OidCodec code of the node, given by the NameGenerator if the
+	 *            node was created during attribute assignment.
+	 */
+	public RefNode(long nodeOid, Point P, boolean createdDuringRunTime) {
 		this.oid = nodeOid;
 		this.extended = createdDuringRunTime;
 		this.point = (Point) P.clone();
 
-		this.incoming = new ArrayList<String>();
-		this.outgoing = new ArrayList<String>();
-		this.forbiddenTurns = new ArrayList<Pair<String, String>>();
+		this.incoming = new long[2];
+		this.outgoing = new long[2];
+		this.forbiddenTurns = new ArrayList<Pair<Long, Long>>();
 	}
 
 	/**
@@ -38,24 +47,20 @@ public class RefNode {
 	public int hashCode() {
 		int hash = 7;
 
-		hash = 17 * hash + this.oid.hashCode() + Boolean.valueOf(this.extended).hashCode();
+		hash = 17 * hash + (int) (this.oid ^ (this.oid >>> 32)) + Boolean.valueOf(this.extended).hashCode();
 
 		return hash;
 	}
 
 	/**
-	 * Compares the hashcode of this to other
+	 * Compares the OID of this to other
 	 */
 	@Override
 	public boolean equals(Object other) {
 		if ((other == null) || !(other instanceof RefNode)) {
 			return false;
 		} else {
-			if (this.hashCode() == other.hashCode()) {
-				return true;
-			} else {
-				return false;
-			}
+			return (this.oid == ((RefNode) other).oid) && (this.extended == ((RefNode) other).extended);
 		}
 	}
 
@@ -67,9 +72,16 @@ public class RefNode {
 	}
 
 	/**
-	 * Returns the String identifier of this object.
+	 * Returns the location of this object.
 	 */
-	public String getOid() {
+	public Point getPoint() {
+		return this.point;
+	}
+
+	/**
+	 * Returns the OidCodec code of this object.
+	 */
+	public long getOid() {
 		return this.oid;
 	}
 
@@ -77,75 +89,106 @@ public class RefNode {
 	 * Returns a ;-separated String with OID;t/f;Geometry. Second value is 't'
 	 * if this node was created during attribute assignment. The Geometry is
 	 * WKT-formatted.
+	 * 
+	 * @param nmg
+	 *            the NameGenerator of the network, names the OID.
 	 */
-	public String toCsvString() {
-		return this.oid + ";" + ((this.extended) ? "t" : "f") + ";" + this.point.toText();
+	public String toCsvString(NameGenerator nmg) {
+		return nmg.toString(this.oid) + ";" + ((this.extended) ? "t" : "f") + ";" + this.point.toText();
 	}
 	
 	/**
-	 * Adds a String OID to the list of incoming links.
+	 * Adds a RefLink OID to the list of incoming links.
 	 */
-	public void setIncoming(String refLinkOid) {
-		if (!(this.incoming.contains(refLinkOid))) {
-			this.incoming.add(refLinkOid);
+	public void setIncoming(long refLinkOid) {
+		if (RefNode.indexOf(this.incoming, this.nbIncoming, refLinkOid) < 0) {
+			this.incoming = RefNode.append(this.incoming, this.nbIncoming, refLinkOid);
+			this.nbIncoming++;
 		}
 	}
 
 	/**
-	 * Adds a String OID to the list of outgoing links.
+	 * Adds a RefLink OID to the list of outgoing links.
 	 */
-	public void setOutgoing(String refLinkOid) {
-		if (!(this.outgoing.contains(refLinkOid))) {
-			this.outgoing.add(refLinkOid);
+	public void setOutgoing(long refLinkOid) {
+		if (RefNode.indexOf(this.outgoing, this.nbOutgoing, refLinkOid) < 0) {
+			this.outgoing = RefNode.append(this.outgoing, this.nbOutgoing, refLinkOid);
+			this.nbOutgoing++;
 		}
 	}
 
 	/**
-	 * Removes an OID String from the list of incoming links.
+	 * Removes a RefLink OID from the list of incoming links.
 	 */
-	public void removeIncoming(String refLinkOid) {
-		if (this.incoming.contains(refLinkOid)) {
-			this.incoming.remove(refLinkOid);
+	public void removeIncoming(long refLinkOid) {
+		if (RefNode.remove(this.incoming, this.nbIncoming, refLinkOid)) {
+			this.nbIncoming--;
 		}
 	}
 	
 	/**
-	 * Removes an OID String from the list of outgoing links.
+	 * Removes a RefLink OID from the list of outgoing links.
 	 */
-	public void removeOutGoing(String refLinkOid) {
-		if (this.outgoing.contains(refLinkOid)) {
-			this.outgoing.remove(refLinkOid);
+	public void removeOutGoing(long refLinkOid) {
+		if (RefNode.remove(this.outgoing, this.nbOutgoing, refLinkOid)) {
+			this.nbOutgoing--;
 		}
 	}
 	
+	private static int indexOf(long[] oids, int size, long oid) {
+		for (int i = 0; i < size; i++) {
+			if (oids[i] == oid) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static long[] append(long[] oids, int size, long oid) {
+		if (size == oids.length) {
+			oids = Arrays.copyOf(oids, 2 * size);
+		}
+		oids[size] = oid;
+		return oids;
+	}
+
+	private static boolean remove(long[] oids, int size, long oid) {
+		int i = RefNode.indexOf(oids, size, oid);
+
+		if (i < 0) {
+			return false;
+		}
+		System.arraycopy(oids, i + 1, oids, i, size - i - 1);
+		return true;
+	}
 	
 	/**
 	 * returns the number of outgoing links.
 	 */
 	public int nbIncoming() {
-		return this.incoming.size();
+		return this.nbIncoming;
 	}
 
 	/**
 	 * returns the number of outgoing links.
 	 */
 	public int nbOutgoing() {
-		return this.outgoing.size();
+		return this.nbOutgoing;
 	}
 
 	/**
 	 * Note turn from <b>from</b> to <b>to</b> as forbidden.
 	 */
-	public void forbidTurn(String from, String to) {
-		if (!(from.equals(to))) {
-			this.forbiddenTurns.add(new Pair<String, String>(from, to));
+	public void forbidTurn(long from, long to) {
+		if (from != to) {
+			this.forbiddenTurns.add(new Pair<Long, Long>(from, to));
 		}
 	}
 
 	/**
 	 * Returns true if a turn is forbidden
 	 */
-	public boolean forbiddenTurn(String from, String to) {
-		return this.forbiddenTurns.contains(new Pair<String, String>(from, to));
+	public boolean forbiddenTurn(long from, long to) {
+		return this.forbiddenTurns.contains(new Pair<Long, Long>(from, to));
 	}
 }
\ No newline at end of file
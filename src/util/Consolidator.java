@@ -1,7 +1,6 @@
 package util;
 
 import java.util.ArrayList;
-import java.util.Collections;
 
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
@@ -9,8 +8,20 @@ import com.vividsolutions.jts.geom.LineString;
 import io.Logger;
 import refnet.Attribute;
 import refnet.CustomComparator;
+import refnet.Part;
 import refnet.RefLinkPart;
 
+/**
+ * Consolidates lists of Attributes or RefLinkParts of one RefLink, merging the
+ * property equal neighbours that meet end to start. The lists are kept
+ * sorted by MEASURE_FROM and an EndpointIndex of them is kept alongside by
+ * the caller, so that a new element only looks at the elements that meet its
+ * end points. The elements are merged in list order, as if the whole list was
+ * scanned. The elements merged away are disposed, see Part.dispose.
+ * 
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
 public class Consolidator {
 
 	/**
@@ -21,7 +32,16 @@ public class Consolidator {
 	 */
 	public static ArrayList<Attribute> Consolidate(ArrayList<Attribute> attributes, Attribute attribute,
 			GeometryFactory gf) {
-		return Consolidator.addToList(attributes, attribute, gf);
+		return Consolidator.Consolidate(attributes, new EndpointIndex<Attribute>(attributes), attribute, gf);
+	}
+
+	/**
+	 * As Consolidate(attributes, attribute, gf), <b>ends</b> is the index of
+	 * attributes and is kept up to date.
+	 */
+	public static ArrayList<Attribute> Consolidate(ArrayList<Attribute> attributes, EndpointIndex<Attribute> ends,
+			Attribute attribute, GeometryFactory gf) {
+		return Consolidator.addToList(attributes, ends, attribute);
 	}
 
 	/**
@@ -30,16 +50,27 @@ public class Consolidator {
 	 */
 	public static ArrayList<Attribute> ConsolidateWithoutGeom(ArrayList<Attribute> attributes,
 			Attribute attributeWithoutGeom, GeometryFactory geometryFactory, Logger logger) {
+		return Consolidator.ConsolidateWithoutGeom(attributes, new EndpointIndex<Attribute>(attributes),
+				attributeWithoutGeom, geometryFactory, logger);
+	}
+
+	/**
+	 * As ConsolidateWithoutGeom(attributes, attributeWithoutGeom,
+	 * geometryFactory, logger), <b>ends</b> is the index of attributes and is
+	 * kept up to date.
+	 */
+	public static ArrayList<Attribute> ConsolidateWithoutGeom(ArrayList<Attribute> attributes,
+			EndpointIndex<Attribute> ends, Attribute attributeWithoutGeom, GeometryFactory geometryFactory,
+			Logger logger) {
 
-		Collections.sort(attributes, new CustomComparator());
+		CustomComparator.sort(attributes);
 
 		LineString L = null;
 
 		if (attributes.size() > 1) {
 			for (int i = 1; i < attributes.size(); i++) {
 				// Step 1: Find part before and part after.
-				if (!(attributes.get(i).getGeometry().getStartPoint()
-						.equalsExact(attributes.get(i - 1).getGeometry().getEndPoint()))) {
+				if (!attributes.get(i - 1).endMeetsStart(attributes.get(i))) {
 					// Step 2: Create new LineString with new method in
 					// GeometryOps.
 					L = GeometryOps.lineStringBetween(attributes.get(i - 1).getGeometry(),
@@ -51,7 +82,7 @@ public class Consolidator {
 			// TODO: Get Geometry from reflink part....
 			logger.log(new String[] {
 					"Consolidator: Could not create geometry for attribute (it is probably first or last in the list): "
-							+ attributeWithoutGeom.getOid() + ";" + attributeWithoutGeom.getMeasureFrom() + ";"
+							+ attributeWithoutGeom.getOidString() + ";" + attributeWithoutGeom.getMeasureFrom() + ";"
 							+ attributeWithoutGeom.getMeasureTo() });
 		}
 
@@ -59,45 +90,37 @@ public class Consolidator {
 			// Step 3: Add geometry to attribute.
 			attributeWithoutGeom.setGeometry(L);
 			// Step 4: Add attribute to list.
-			return Consolidator.addToList(attributes, attributeWithoutGeom, geometryFactory);
+			return Consolidator.addToList(attributes, ends, attributeWithoutGeom);
 		}
 
 		return attributes;
 	}
 
-	static ArrayList<Attribute> addToList(ArrayList<Attribute> attributes, Attribute attribute, GeometryFactory gf) {
-		boolean add = true;
-
-		for (int i = 0; i < attributes.size(); i++) {
-
-			if (attributes.get(i).propertyEqual(attribute)) {
-				// L1 has the same endpoint as L2:s startpoint...
-				if (attributes.get(i).getGeometry().getEndPoint()
-						.equalsExact(attribute.getGeometry().getStartPoint())) {
-					attribute.setGeometry(
-							GeometryOps.append(attributes.get(i).getGeometry(), attribute.getGeometry(), gf, false));
-					attribute.setMeasureFrom(attributes.get(i).getMeasureFrom());
-
-					attributes.set(i, attribute);
-					add = false; // Already added.
-					// L2 has the same endpoint as L1:s startpoint...
-				} else if (attribute.getGeometry().getEndPoint()
-						.equalsExact(attributes.get(i).getGeometry().getStartPoint())) {
-					attribute.setGeometry(
-							GeometryOps.append(attribute.getGeometry(), attributes.get(i).getGeometry(), gf, false));
-					attribute.setMeasureTo(attributes.get(i).getMeasureTo());
-
-					attributes.set(i, attribute);
-					add = false; // Already added.
-				}
-			}
-		}
+	/**
+	 * Merges attribute with every attribute it meets, in list order, each of
+	 * them replaced by attribute in the list.
+	 */
+	static ArrayList<Attribute> addToList(ArrayList<Attribute> attributes, EndpointIndex<Attribute> ends,
+			Attribute attribute) {
+		ArrayList<Integer> merged = new ArrayList<Integer>(2);
+		int i = -1;
 
-		if (add) {
-			attributes.add(attribute);
+		while ((i = Consolidator.nextMerge(attributes, ends, attribute, i)) >= 0) {
+			Attribute other = attributes.get(i);
+
+			// L1 has the same endpoint as L2:s startpoint...
+			if (other.endMeetsStart(attribute)) {
+				attribute.setGeometry(other, attribute);
+				attribute.setMeasureFrom(other.getMeasureFrom());
+				// L2 has the same endpoint as L1:s startpoint...
+			} else {
+				attribute.setGeometry(attribute, other);
+				attribute.setMeasureTo(other.getMeasureTo());
+			}
+			merged.add(i);
 		}
 
-		Collections.sort(attributes, new CustomComparator());
+		Consolidator.replace(attributes, ends, merged, attribute);
 
 		return attributes;
 	}
@@ -110,48 +133,141 @@ public class Consolidator {
 	 */
 	public static ArrayList<RefLinkPart> Consolidate(ArrayList<RefLinkPart> refLinkParts, RefLinkPart refLinkPart,
 			GeometryFactory gf) {
-		return Consolidator.addToList(refLinkParts, refLinkPart, gf);
+		return Consolidator.Consolidate(refLinkParts, new EndpointIndex<RefLinkPart>(refLinkParts), refLinkPart, gf);
 	}
 
-	static ArrayList<RefLinkPart> addToList(ArrayList<RefLinkPart> refLinkParts, RefLinkPart refLinkPart,
-			GeometryFactory gf) {
-		boolean add = true;
+	/**
+	 * As Consolidate(refLinkParts, refLinkPart, gf), <b>ends</b> is the index
+	 * of refLinkParts and is kept up to date.
+	 */
+	public static ArrayList<RefLinkPart> Consolidate(ArrayList<RefLinkPart> refLinkParts,
+			EndpointIndex<RefLinkPart> ends, RefLinkPart refLinkPart, GeometryFactory gf) {
+		return Consolidator.addToList(refLinkParts, ends, refLinkPart);
+	}
 
-		for (int i = 0; i < refLinkParts.size(); i++) {
+	/**
+	 * Merges refLinkPart with the first part it meets, which it replaces in
+	 * the list.
+	 */
+	static ArrayList<RefLinkPart> addToList(ArrayList<RefLinkPart> refLinkParts, EndpointIndex<RefLinkPart> ends,
+			RefLinkPart refLinkPart) {
+		ArrayList<Integer> merged = new ArrayList<Integer>(1);
+		int i = Consolidator.nextMerge(refLinkParts, ends, refLinkPart, -1);
 
-			if (refLinkParts.get(i).propertyEqual(refLinkPart)) {
-				// L1 has the same endpoint as L2:s startpoint...
-				if (refLinkParts.get(i).getGeometry().getEndPoint()
-						.equalsExact(refLinkPart.getGeometry().getStartPoint())) {
-					refLinkPart.setGeometry(GeometryOps.append(refLinkParts.get(i).getGeometry(),
-							refLinkPart.getGeometry(), gf, false));
-					refLinkPart.setMeasureFrom(refLinkParts.get(i).getMeasureFrom());
-					refLinkPart.setNodeFrom(refLinkParts.get(i).getNodeFrom());
+		if (i >= 0) {
+			RefLinkPart other = refLinkParts.get(i);
 
-					refLinkParts.set(i, refLinkPart);
-					add = false; // Already added.
-					break;
-					// L2 has the same endpoint as L1:s startpoint...
-				} else if (refLinkPart.getGeometry().getEndPoint()
-						.equalsExact(refLinkParts.get(i).getGeometry().getStartPoint())) {
-					refLinkPart.setGeometry(GeometryOps.append(refLinkPart.getGeometry(),
-							refLinkParts.get(i).getGeometry(), gf, false));
-					refLinkPart.setMeasureTo(refLinkParts.get(i).getMeasureTo());
-					refLinkPart.setNodeTo(refLinkParts.get(i).getNodeTo());
-
-					refLinkParts.set(i, refLinkPart);
-					add = false; // Already added.
-					break;
-				}
+			// L1 has the same endpoint as L2:s startpoint...
+			if (other.endMeetsStart(refLinkPart)) {
+				refLinkPart.setGeometry(other, refLinkPart);
+				refLinkPart.setMeasureFrom(other.getMeasureFrom());
+				refLinkPart.setNodeFrom(other.getNodeFrom());
+				// L2 has the same endpoint as L1:s startpoint...
+			} else {
+				refLinkPart.setGeometry(refLinkPart, other);
+				refLinkPart.setMeasureTo(other.getMeasureTo());
+				refLinkPart.setNodeTo(other.getNodeTo());
 			}
+			merged.add(i);
 		}
 
-		if (add) {
-			refLinkParts.add(refLinkPart);
+		Consolidator.replace(refLinkParts, ends, merged, refLinkPart);
+
+		return refLinkParts;
+	}
+
+	/**
+	 * Returns the first position after <b>after</b> of a part of parts that
+	 * is property equal to part and ends where part starts or starts where
+	 * part ends, or -1. Only the parts found in ends are looked at. parts is
+	 * not changed while merging, so it is still sorted and their positions
+	 * are found by binary search.
+	 */
+	private static <T extends Part> int nextMerge(ArrayList<T> parts, EndpointIndex<T> ends, T part, int after) {
+		int next = -1;
+
+		for (T other : ends.endingAt(part.getStartX(), part.getStartY())) {
+			if (other.endMeetsStart(part)) {
+				next = Consolidator.earlier(next, Consolidator.nextPosition(parts, other, part, after));
+			}
+		}
+		for (T other : ends.startingAt(part.getEndX(), part.getEndY())) {
+			if (part.endMeetsStart(other)) {
+				next = Consolidator.earlier(next, Consolidator.nextPosition(parts, other, part, after));
+			}
 		}
 
-		Collections.sort(refLinkParts, new CustomComparator());
+		return next;
+	}
+
+	private static int earlier(int p1, int p2) {
+		if (p1 < 0) {
+			return p2;
+		} else if (p2 < 0) {
+			return p1;
+		}
+		return Math.min(p1, p2);
+	}
 
-		return refLinkParts;
+	/**
+	 * Returns the first position after <b>after</b> holding other, if other
+	 * is property equal to part, or -1.
+	 */
+	private static <T extends Part> int nextPosition(ArrayList<T> parts, T other, T part, int after) {
+		if ((other.getOid() != part.getOid()) || !other.attributesEqual(part)) {
+			return -1;
+		}
+
+		double measure = other.getMeasureFrom();
+		int lo = after + 1;
+		int hi = parts.size();
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (parts.get(mid).getMeasureFrom() < measure) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		for (int i = lo; (i < parts.size()) && !(parts.get(i).getMeasureFrom() > measure); i++) {
+			if (parts.get(i) == other) {
+				return i;
+			}
+		}
+
+		// Not where the order says, look through the rest.
+		for (int i = after + 1; i < parts.size(); i++) {
+			if (parts.get(i) == other) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Puts part in place of the parts at the merged positions, or adds it if
+	 * it was not merged, and sorts parts again. The parts replaced are
+	 * disposed.
+	 */
+	private static <T extends Part> void replace(ArrayList<T> parts, EndpointIndex<T> ends,
+			ArrayList<Integer> merged, T part) {
+		if (merged.isEmpty()) {
+			parts.add(part);
+			ends.add(part);
+		}
+
+		for (int i : merged) {
+			T other = parts.get(i);
+
+			ends.remove(other);
+			parts.set(i, part);
+			ends.add(part);
+			other.dispose();
+		}
+
+		CustomComparator.sort(parts);
 	}
 }
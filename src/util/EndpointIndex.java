@@ -0,0 +1,115 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import refnet.Part;
+
+/**
+ * Index of Parts by their start and end points, so that the Parts meeting a
+ * point are found without going through all of them, see Consolidator. The
+ * points are hashed by a key quantized to QUANTUM, the Parts of a key are
+ * then to be compared exactly by the caller.
+ *
+ * A Part is indexed once per add, and its end points must not change until
+ * it is removed again.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class EndpointIndex<T extends Part> {
+	/**
+	 * Side of the grid cells in which the end points are hashed.
+	 */
+	public static final double QUANTUM = 0.001d;
+
+	private LongRegistry<ArrayList<T>> starts;
+	private LongRegistry<ArrayList<T>> ends;
+
+	public EndpointIndex() {
+		this.clear();
+	}
+
+	/**
+	 * Creates an index of all parts.
+	 */
+	public EndpointIndex(List<T> parts) {
+		this.clear();
+
+		for (T part : parts) {
+			this.add(part);
+		}
+	}
+
+	public void clear() {
+		this.starts = new LongRegistry<ArrayList<T>>();
+		this.ends = new LongRegistry<ArrayList<T>>();
+	}
+
+	public void add(T part) {
+		EndpointIndex.bucket(this.starts, EndpointIndex.key(part.getStartX(), part.getStartY())).add(part);
+		EndpointIndex.bucket(this.ends, EndpointIndex.key(part.getEndX(), part.getEndY())).add(part);
+	}
+
+	/**
+	 * Removes part once.
+	 */
+	public void remove(T part) {
+		EndpointIndex.remove(this.starts.get(EndpointIndex.key(part.getStartX(), part.getStartY())), part);
+		EndpointIndex.remove(this.ends.get(EndpointIndex.key(part.getEndX(), part.getEndY())), part);
+	}
+
+	/**
+	 * Returns the parts that may start at (x, y), in no particular order.
+	 */
+	public List<T> startingAt(double x, double y) {
+		return EndpointIndex.nonNull(this.starts.get(EndpointIndex.key(x, y)));
+	}
+
+	/**
+	 * Returns the parts that may end at (x, y), in no particular order.
+	 */
+	public List<T> endingAt(double x, double y) {
+		return EndpointIndex.nonNull(this.ends.get(EndpointIndex.key(x, y)));
+	}
+
+	/**
+	 * Equal points always get the same key, also 0.0 and -0.0.
+	 */
+	static long key(double x, double y) {
+		long qx = (long) Math.floor(x / QUANTUM);
+		long qy = (long) Math.floor(y / QUANTUM);
+
+		return (qx * 0x9E3779B97F4A7C15L) + qy;
+	}
+
+	private static <T> ArrayList<T> bucket(LongRegistry<ArrayList<T>> buckets, long key) {
+		int b = buckets.getOrCreate(key);
+
+		if (buckets.valueAt(b) == null) {
+			buckets.setValueAt(b, new ArrayList<T>(1));
+		}
+		return buckets.valueAt(b);
+	}
+
+	private static <T> void remove(ArrayList<T> bucket, T part) {
+		if (bucket == null) {
+			return;
+		}
+
+		for (int i = 0; i < bucket.size(); i++) {
+			if (bucket.get(i) == part) {
+				bucket.remove(i);
+				return;
+			}
+		}
+	}
+
+	private static <T> List<T> nonNull(ArrayList<T> bucket) {
+		if (bucket == null) {
+			return Collections.emptyList();
+		}
+		return bucket;
+	}
+}
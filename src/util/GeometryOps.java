@@ -2,10 +2,9 @@ package util;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.LineSegment;
 import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.PrecisionModel;
 import com.vividsolutions.jts.linearref.LinearGeometryBuilder;
 
 /**
@@ -49,39 +48,29 @@ public class GeometryOps {
 
 	/**
 	 * Returns true if the distance from P2 to any segment of L1 is smaller than
-	 * tolerance.
+	 * tolerance, see Polyline.spans.
 	 */
 	public static boolean spansPoint(LineString L1, Point P2, GeometryFactory gf, double tolerance, boolean allowSlack)
 			throws IllegalArgumentException {
 
-		LinearGeometryBuilder lgb = new LinearGeometryBuilder(gf);
-		Coordinate[] coordinates = L1.getCoordinates();
-
-		// This just adds the coordinates in the right sequence (hopefully).
-		for (int i = 0; i < coordinates.length; i++) {
-
-			// Don't add duplicate coordinates.
-			lgb.add(coordinates[i], false);
-
-			if (i < (coordinates.length - 1)) {
-				LineSegment ls = new LineSegment(coordinates[i], coordinates[i + 1]);
+		Coordinate P = P2.getCoordinate();
 
-				if (Math.abs(ls.distance(P2.getCoordinate())) < tolerance) {
-					lgb.add(P2.getCoordinate(), false);
-					return true;
-				}
-			}
-		}
-
-		lgb.endLine();
+		return Polyline.spans(L1.getCoordinates(), P.x, P.y, tolerance, allowSlack);
+	}
 
-		LineString returnval = (LineString) lgb.getGeometry();
+	/**
+	 * Returns the tolerance at which a point is taken to lie on a LineString
+	 * of gf: <b>tolerance</b> if the coordinates are floating, otherwise at
+	 * least one step of the grid of the PrecisionModel, as a point rounded to
+	 * the grid may have moved up to 0.71 steps off the line it was on.
+	 */
+	public static double pointTolerance(GeometryFactory gf, double tolerance) {
+		PrecisionModel pm = gf.getPrecisionModel();
 
-		if (returnval.getNumPoints() == L1.getNumPoints() && allowSlack) {
-			return GeometryOps.spansPoint(returnval, P2, gf, tolerance * 10.0000000000d, false);
-		} else {
-			return false;
+		if (pm.isFloating()) {
+			return tolerance;
 		}
+		return Math.max(tolerance, 1.0d / pm.getScale());
 	}
 
 	/**
@@ -146,6 +135,9 @@ public class GeometryOps {
 
 		LinearGeometryBuilder lgb1 = new LinearGeometryBuilder(gf);
 		Coordinate[] coordinates = L.getCoordinates();
+		Coordinate p = P.getCoordinate();
+
+		int next = Polyline.locate(coordinates, 0, p.x, p.y, tolerance, null);
 
 		// This just adds the coordinates in the right sequence (hopefully).
 		for (int i = 0; i < coordinates.length; i++) {
@@ -153,12 +145,9 @@ public class GeometryOps {
 			// Don't add duplicate coordinates.
 			lgb1.add(coordinates[i], false);
 
-			if (i < (coordinates.length - 1)) {
-				LineSegment ls = new LineSegment(coordinates[i], coordinates[i + 1]);
-
-				if (Math.abs(ls.distance(P.getCoordinate())) < tolerance) {
-					lgb1.add(P.getCoordinate(), false);
-				}
+			if (i == next) {
+				lgb1.add(p, false);
+				next = Polyline.locate(coordinates, i + 1, p.x, p.y, tolerance, null);
 			}
 		}
 
@@ -167,7 +156,7 @@ public class GeometryOps {
 		LineString returnval = (LineString) lgb1.getGeometry();
 
 		if (returnval.getNumPoints() == L.getNumPoints() && allowSlack) {
-			return GeometryOps.projectPoint(returnval, P, gf, tolerance * 10.0000000000d, false);
+			return GeometryOps.projectPoint(returnval, P, gf, tolerance * Polyline.SLACK, false);
 		} else {
 			return returnval;
 		}
@@ -177,6 +166,9 @@ public class GeometryOps {
 	 * Splits the LineString L at each point p of P that could be "projected" on
 	 * L given that p was within the tolerated distance of L.
 	 * 
+	 * Same as split on the coordinates of L, with each piece created as a
+	 * LineString.
+	 * 
 	 * @param L
 	 *            the LineString object that will be separated.
 	 * @param P
@@ -186,62 +178,188 @@ public class GeometryOps {
 	 *            the maximum allowed distance between each Point of P and L.
 	 * @param allowSlack
 	 * @return an array of LineStrings of length |P|+1, or null if the split was
-	 *         unsuccessful, i.e. if the processed cast a
-	 *         java.lang.ClassCaseException at LineString linestring =
-	 *         (LineString) Geometry object.
+	 *         unsuccessful, i.e. if no point of P was found on L. If only some
+	 *         of them were found the LineStrings are all null.
+	 * @throws IllegalArgumentException
+	 *             if a piece would have a single coordinate.
 	 */
 	public static LineString[] splitBy(LineString L, Point[] P, GeometryFactory gf, double tolerance,
 			boolean allowSlack) {
-		LineString[] retval = new LineString[(P.length + 1)];
+		Coordinate[] coordinates = L.getCoordinates();
+		int n = coordinates.length;
+		double[] xy = new double[2 * n];
 
-		for (int i = 0; i < P.length; i++) {
-			L = GeometryOps.projectPoint(L, P[i], gf, tolerance, allowSlack);
+		for (int i = 0; i < n; i++) {
+			xy[2 * i] = coordinates[i].x;
+			xy[2 * i + 1] = coordinates[i].y;
 		}
 
-		Coordinate[] C = new Coordinate[L.getCoordinates().length];
+		Pieces pieces = GeometryOps.split(xy, 0, n, P, tolerance, allowSlack);
 
-		for (int i = 0; i < C.length; i++) {
-			C[i] = L.getCoordinateN(i);
+		if (pieces == null) {
+			return null;
 		}
 
-		int idx = 0;
-
-		LinearGeometryBuilder lgb = new LinearGeometryBuilder(gf);
-
-		for (int i = 0; i < C.length; i++) {
-			lgb.add(C[i], false);
+		LineString[] retval = new LineString[pieces.size()];
 
-			// End of first LineString.
-			if (idx < P.length) {
-				if (C[i].equals(P[idx].getCoordinates()[0])) {
-					lgb.endLine();
-					lgb.add(C[i], false);
-					idx++;
-				}
+		if (pieces.isComplete()) {
+			for (int i = 0; i < retval.length; i++) {
+				retval[i] = GeometryOps.lineString(pieces.getBuffer(), pieces.getFirst(i), pieces.getLast(i), gf);
 			}
 		}
+		return retval;
+	}
 
-		lgb.endLine();
+	/**
+	 * Splits the n packed coordinates of xy from offset at each point p of P
+	 * that could be "projected" on them given that p was within the tolerated
+	 * distance, without creating any geometry. The pieces are left packed in
+	 * one buffer, from which Part.setGeometry(Pieces, int) writes them to the
+	 * PartStore. xy is only read.
+	 * 
+	 * The points are projected one after another as by projectPoint (see
+	 * Polyline.project), and the pieces are then cut in one pass. Locating
+	 * all points in a single pass by cumulative length would not give the
+	 * same pieces: a point within tolerance of several segments is added at
+	 * each of them.
+	 * 
+	 * @return the |P|+1 pieces, or null if the split was unsuccessful, i.e.
+	 *         if P is empty or no point of P was found. If only some of them
+	 *         were found the pieces are not complete, see Pieces.isComplete.
+	 * @throws IllegalArgumentException
+	 *             if a piece would have a single coordinate.
+	 */
+	public static Pieces split(double[] xy, int offset, int n, Point[] P, double tolerance, boolean allowSlack) {
+		if (P.length == 0) {
+			// Nothing to split, the coordinates are kept as a whole.
+			Polyline.checkDistinct(Polyline.nbDistinct(xy, offset, n));
+			return null;
+		}
 
-		try {
-			MultiLineString M = (MultiLineString) lgb.getGeometry();
+		double[] px = new double[P.length];
+		double[] py = new double[P.length];
+
+		// Each projection is written to whichever of a and b does not hold
+		// the coordinates it reads, so xy is never written.
+		double[] a = new double[0];
+		double[] b = new double[0];
+		double[] current = xy;
+		int start = offset;
 
-			if (M.getNumGeometries() == retval.length) {
-				for (int i = 0; i < retval.length; i++) {
-					try {
-						retval[i] = (LineString) M.getGeometryN(i).clone();
-					} catch (java.lang.ClassCastException cce1) {
-						System.out.println("GeometryOps: Classcast exception @2, returning null.");
+		for (int k = 0; k < P.length; k++) {
+			Coordinate p = P[k].getCoordinate();
 
-						return null;
-					}
+			px[k] = p.x;
+			py[k] = p.y;
+
+			double[] projected;
+
+			if (current == a) {
+				b = GeometryOps.ensureCapacity(b, 2 * (2 * n - 1));
+				projected = b;
+			} else {
+				a = GeometryOps.ensureCapacity(a, 2 * (2 * n - 1));
+				projected = a;
+			}
+			int m = Polyline.project(current, start, n, px[k], py[k], tolerance, projected);
+			Polyline.checkDistinct(m);
+
+			if ((m == n) && allowSlack) {
+				if (projected == a) {
+					b = GeometryOps.ensureCapacity(b, 2 * (2 * m - 1));
+					current = b;
+				} else {
+					a = GeometryOps.ensureCapacity(a, 2 * (2 * m - 1));
+					current = a;
 				}
+				n = Polyline.project(projected, 0, m, px[k], py[k], tolerance * Polyline.SLACK, current);
+				Polyline.checkDistinct(n);
+			} else {
+				current = projected;
+				n = m;
+			}
+			start = 0;
+		}
+
+		// The projected coordinates have no repeated points, so a piece ends
+		// at the first coordinate equal to the next point.
+		int[] cuts = new int[P.length + 2];
+		int idx = 0;
+
+		for (int i = 0; i < n; i++) {
+			if ((idx < P.length) && (current[2 * i] == px[idx]) && (current[2 * i + 1] == py[idx])) {
+				Polyline.checkDistinct(i - cuts[idx] + 1);
+				cuts[++idx] = i;
 			}
-		} catch (java.lang.ClassCastException cce2) {
-			System.out.println("GeometryOps: Classcast exception @1, returning null.");
+		}
+		Polyline.checkDistinct(n - cuts[idx]);
+
+		if (idx == 0) {
+			// No point of P is on the coordinates, the callers log the failure.
 			return null;
 		}
-		return retval;
+		cuts[idx + 1] = n - 1;
+
+		return new Pieces(current, cuts, idx == P.length);
+	}
+
+	/**
+	 * The pieces of a split, see split. Piece i is made of the packed
+	 * coordinates getFirst(i) to getLast(i) of getBuffer().
+	 */
+	public static class Pieces {
+		private final double[] xy;
+		private final int[] cuts;
+		private final boolean complete;
+
+		Pieces(double[] xy, int[] cuts, boolean complete) {
+			this.xy = xy;
+			this.cuts = cuts;
+			this.complete = complete;
+		}
+
+		/**
+		 * Returns the number of pieces, |P|+1.
+		 */
+		public int size() {
+			return this.cuts.length - 1;
+		}
+
+		/**
+		 * Returns true if every point of P was found, otherwise the pieces
+		 * must not be used.
+		 */
+		public boolean isComplete() {
+			return this.complete;
+		}
+
+		public double[] getBuffer() {
+			return this.xy;
+		}
+
+		public int getFirst(int piece) {
+			return this.cuts[piece];
+		}
+
+		public int getLast(int piece) {
+			return this.cuts[piece + 1];
+		}
+	}
+
+	private static double[] ensureCapacity(double[] values, int length) {
+		return (values.length >= length) ? values : new double[length];
+	}
+
+	/**
+	 * Creates a LineString of the packed coordinates first to last of xy.
+	 */
+	private static LineString lineString(double[] xy, int first, int last, GeometryFactory gf) {
+		Coordinate[] coordinates = new Coordinate[last - first + 1];
+
+		for (int i = first; i <= last; i++) {
+			coordinates[i - first] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+		}
+		return gf.createLineString(coordinates);
 	}
 
 	/**
@@ -0,0 +1,226 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys (e.g. OidCodec codes) to objects. The keys and values
+ * are kept in dense arrays, in the order they were added, behind an open
+ * addressing (linear probing) table of indexes. Used instead of HashMap to
+ * avoid a boxed key and an entry object per mapping, and so that an entry
+ * can be looked up or created with a single probe, see getOrCreate.
+ *
+ * The entries are reached by their index, 0 to size() - 1. Removing an
+ * entry moves the last entry to its index.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class LongRegistry<V> {
+	private static final int FREE = -1;
+
+	private int[] table;
+	private int shift;
+	private long[] keys;
+	private Object[] values;
+	private int size;
+
+	public LongRegistry() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize
+	 *            number of entries the registry can hold before it grows.
+	 */
+	public LongRegistry(int expectedSize) {
+		int bits = 2;
+
+		while ((1 << bits) < 2 * expectedSize) {
+			bits++;
+		}
+
+		this.table = new int[1 << bits];
+		Arrays.fill(this.table, FREE);
+		this.shift = 64 - bits;
+		this.keys = new long[Math.max(expectedSize, 4)];
+		this.values = new Object[this.keys.length];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of key, or -1 if it has no entry.
+	 */
+	public int indexOf(long key) {
+		int mask = this.table.length - 1;
+
+		for (int s = this.slot(key);; s = (s + 1) & mask) {
+			int i = this.table[s];
+
+			if (i == FREE) {
+				return -1;
+			} else if (this.keys[i] == key) {
+				return i;
+			}
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return this.indexOf(key) >= 0;
+	}
+
+	/**
+	 * Returns the value of key, or null if it has no entry.
+	 */
+	public V get(long key) {
+		int i = this.indexOf(key);
+
+		return (i < 0) ? null : this.valueAt(i);
+	}
+
+	/**
+	 * Returns the index of key, adding an entry with a null value if it had
+	 * none.
+	 */
+	public int getOrCreate(long key) {
+		int mask = this.table.length - 1;
+		int s = this.slot(key);
+
+		for (int i = this.table[s]; i != FREE; i = this.table[s]) {
+			if (this.keys[i] == key) {
+				return i;
+			}
+			s = (s + 1) & mask;
+		}
+
+		if (this.size == this.keys.length) {
+			this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+			this.values = Arrays.copyOf(this.values, 2 * this.size);
+		}
+
+		int i = this.size;
+		this.keys[i] = key;
+		this.values[i] = null;
+		this.table[s] = i;
+		this.size++;
+
+		if (2 * this.size > this.table.length) {
+			this.rehash(this.table.length * 2);
+		}
+
+		return i;
+	}
+
+	/**
+	 * Sets the value of key and returns the previous value.
+	 */
+	public V put(long key, V value) {
+		int i = this.getOrCreate(key);
+		V previous = this.valueAt(i);
+
+		this.values[i] = value;
+
+		return previous;
+	}
+
+	/**
+	 * Removes the entry of key and returns its value.
+	 */
+	public V remove(long key) {
+		int mask = this.table.length - 1;
+		int s = this.slot(key);
+		int i;
+
+		while (true) {
+			i = this.table[s];
+
+			if (i == FREE) {
+				return null;
+			} else if (this.keys[i] == key) {
+				break;
+			}
+			s = (s + 1) & mask;
+		}
+
+		V removed = this.valueAt(i);
+
+		// Shift the entries after the hole back so that no probe is broken.
+		int hole = s;
+		int j = s;
+
+		while (true) {
+			j = (j + 1) & mask;
+			int k = this.table[j];
+
+			if (k == FREE) {
+				break;
+			}
+
+			int home = this.slot(this.keys[k]);
+
+			if ((j > hole) ? ((home <= hole) || (home > j)) : ((home <= hole) && (home > j))) {
+				this.table[hole] = k;
+				hole = j;
+			}
+		}
+		this.table[hole] = FREE;
+
+		// Keep the entries dense by moving the last one to the hole.
+		int last = this.size - 1;
+
+		if (i != last) {
+			this.keys[i] = this.keys[last];
+			this.values[i] = this.values[last];
+
+			for (s = this.slot(this.keys[i]); this.table[s] != last; s = (s + 1) & mask) {
+				// Probe for the slot of the last entry.
+			}
+			this.table[s] = i;
+		}
+
+		this.values[last] = null;
+		this.size = last;
+
+		return removed;
+	}
+
+	public long keyAt(int index) {
+		return this.keys[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V valueAt(int index) {
+		return (V) this.values[index];
+	}
+
+	public void setValueAt(int index, V value) {
+		this.values[index] = value;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> this.shift);
+	}
+
+	private void rehash(int capacity) {
+		this.table = new int[capacity];
+		Arrays.fill(this.table, FREE);
+		this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+		int mask = capacity - 1;
+
+		for (int i = 0; i < this.size; i++) {
+			int s = this.slot(this.keys[i]);
+
+			while (this.table[s] != FREE) {
+				s = (s + 1) & mask;
+			}
+			this.table[s] = i;
+		}
+	}
+}
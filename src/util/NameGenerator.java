@@ -1,21 +1,120 @@
 package util;
 
+import java.util.Arrays;
+
 /**
  * Holder of an incrementing int value which can be used for naming.
+ * 
+ * A generator can be forked to name nodes on another thread, see fork. The
+ * codes of a fork are provisional until the fork is joined back, which gives
+ * them the next numbers of this generator in join order whatever the order the
+ * forks ran in.
  * @author Magnus Fransson, magnus.fransson@sweco.se
  *
  */
 public class NameGenerator {
 	
 	private Integer u;
+	private long[] parents;
+	private final NameGenerator parent;
+	private final int base;
+	private int offset;
 	
 	public NameGenerator() {
-		this.u = 0;
+		this(null, 0);
+	}
+	
+	private NameGenerator(NameGenerator parent, int base) {
+		this.u = base;
+		this.parents = new long[(parent == null) ? 64 : 4];
+		this.parent = parent;
+		this.base = base;
+		this.offset = 0;
+	}
+	
+	/**
+	 * Returns a generator continuing the numbering of this one. This must not
+	 * hand out codes until the fork has been joined, but may fork again: a
+	 * fork of a fork continues its numbering, so the codes of a chain of forks
+	 * never clash.
+	 */
+	public NameGenerator fork() {
+		return new NameGenerator(this, this.u);
+	}
+	
+	/**
+	 * Gives the codes handed out by fork the next numbers of this generator.
+	 * A chain of forks is joined one fork at a time, first fork first. The
+	 * final codes are then given by fork.resolve.
+	 */
+	public void join(NameGenerator fork) {
+		fork.offset = this.u - fork.base;
+		
+		for (int n = fork.base + 1; n <= fork.u; n++) {
+			this.newCode(fork.parents[n - fork.base]);
+		}
+	}
+	
+	/**
+	 * Returns the final code of a code handed out by this fork, or by the
+	 * forks it was forked from, once they have been joined. Other codes are
+	 * returned as they are.
+	 */
+	public long resolve(long code) {
+		if ((this.parent == null) || !OidCodec.isExtended(code)) {
+			return code;
+		}
+		
+		int n = OidCodec.sequence(code);
+		
+		if (n <= this.base) {
+			return this.parent.resolve(code);
+		} else {
+			return OidCodec.extended(n + this.offset);
+		}
 	}
 	
 	public String newName() {
+		return Integer.toString(this.next());
+	}
+	
+	/**
+	 * Returns the next value as an int.
+	 */
+	public int next() {
 		this.u++;
 		
-		return Integer.toString(u);
+		return this.u;
+	}
+	
+	/**
+	 * Returns the OidCodec code of a new node named after refLinkOid, i.e.
+	 * 'REFLINK_OID:next()'.
+	 */
+	public long newCode(long refLinkOid) {
+		int n = this.next();
+		
+		if (n - this.base >= this.parents.length) {
+			this.parents = Arrays.copyOf(this.parents, 2 * (n - this.base));
+		}
+		this.parents[n - this.base] = refLinkOid;
+		
+		return OidCodec.extended(n);
+	}
+	
+	/**
+	 * Returns the OID of a code, also for the codes given by newCode.
+	 */
+	public String toString(long code) {
+		if (OidCodec.isExtended(code)) {
+			int n = OidCodec.sequence(code);
+			
+			if (n <= this.base) {
+				return this.parent.toString(code);
+			}
+			return OidCodec.toString(this.parents[n - this.base]) + ":" + Integer.toString(n);
+		} else {
+			return OidCodec.toString(code);
+		}
 	}
 }
@@ -0,0 +1,149 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Packs the String OIDs of RefLinks and RefNodes into longs so that they can
+ * be stored and compared as primitives. The Strings are only rebuilt when the
+ * network is exported.
+ *
+ * The two highest bits of a code tell its kind:
+ *
+ * 00: an NVDB OID 'a:b' where a < 2^30 and b < 2^32, packed as (a << 32) | b.
+ *
+ * 01: a node created during attribute assignment, the remaining bits hold the
+ * number given by the NameGenerator. The node is named 'REFLINK_OID:number'
+ * after the attribute it was created for, see NameGenerator.toString.
+ *
+ * 10: any other OID, the remaining bits hold its index in a table of Strings.
+ *
+ * NONE (-1) stands for null.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class OidCodec {
+
+	/**
+	 * Code of a null OID.
+	 */
+	public static final long NONE = -1L;
+
+	private static final long KIND = 0xC000000000000000L;
+	private static final long EXTENDED = 0x4000000000000000L;
+	private static final long INTERNED = 0x8000000000000000L;
+	private static final long VALUE = ~KIND;
+
+	private static final long MAX_HIGH = 1L << 30;
+	private static final long MAX_LOW = 1L << 32;
+
+	private static final HashMap<String, Long> internedCodes = new HashMap<String, Long>();
+	private static final ArrayList<String> interned = new ArrayList<String>();
+
+	/**
+	 * Returns the code of an OID, NONE if oid is null. Thread safe.
+	 */
+	public static long encode(String oid) {
+		if (oid == null) {
+			return NONE;
+		}
+
+		int sep = oid.indexOf(':');
+
+		if (sep > 0) {
+			long high = OidCodec.parse(oid, 0, sep, MAX_HIGH);
+			long low = OidCodec.parse(oid, sep + 1, oid.length(), MAX_LOW);
+
+			if ((high >= 0) && (low >= 0)) {
+				return (high << 32) | low;
+			}
+		}
+
+		return OidCodec.intern(oid);
+	}
+
+	/**
+	 * Returns the code of the n:th node created during attribute assignment.
+	 */
+	public static long extended(int n) {
+		return EXTENDED | (n & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns true if the code belongs to a node created during attribute
+	 * assignment.
+	 */
+	public static boolean isExtended(long code) {
+		return (code != NONE) && ((code & KIND) == EXTENDED);
+	}
+
+	/**
+	 * Returns the number given by the NameGenerator to an extended node.
+	 */
+	public static int sequence(long code) {
+		return (int) (code & VALUE);
+	}
+
+	/**
+	 * Returns the OID of a code, "null" for NONE. Must not be used for
+	 * extended nodes, see NameGenerator.toString.
+	 */
+	public static String toString(long code) {
+		if (code == NONE) {
+			return "null";
+		}
+
+		long kind = code & KIND;
+
+		if (kind == 0L) {
+			return Long.toString(code >>> 32) + ":" + Long.toString(code & 0xFFFFFFFFL);
+		} else if (kind == INTERNED) {
+			synchronized (interned) {
+				return interned.get((int) (code & VALUE));
+			}
+		} else {
+			throw new IllegalArgumentException("OID of an extended node is given by its NameGenerator.");
+		}
+	}
+
+	/**
+	 * Parses the digits of s between start and end, returns -1 if they are
+	 * not the canonical form (no sign, no leading zeros) of a number less than
+	 * max.
+	 */
+	private static long parse(String s, int start, int end, long max) {
+		int len = end - start;
+
+		if ((len < 1) || (len > 10) || ((len > 1) && (s.charAt(start) == '0'))) {
+			return -1L;
+		}
+
+		long value = 0L;
+
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+
+			if ((c < '0') || (c > '9')) {
+				return -1L;
+			}
+			value = value * 10L + (c - '0');
+		}
+
+		return (value < max) ? value : -1L;
+	}
+
+	private static long intern(String oid) {
+		synchronized (interned) {
+			Long code = internedCodes.get(oid);
+
+			if (code == null) {
+				code = INTERNED | interned.size();
+				interned.add(oid);
+				internedCodes.put(oid, code);
+			}
+
+			return code;
+		}
+	}
+}
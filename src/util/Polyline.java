@@ -0,0 +1,280 @@
+package util;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Point to polyline kernel working directly on coordinates, either packed (x1,
+ * y1, x2, y2...) in a double[] from some offset, as in the PartStore, or in a
+ * Coordinate[]. Nothing is allocated: locate returns the segment found and
+ * writes its projection parameter and distance to a result array given by
+ * the caller, and the predicates and projections are built on it.
+ *
+ * The distances are computed exactly as
+ * com.vividsolutions.jts.algorithm.CGAlgorithms.distancePointLine, so the
+ * answers are the same as those of LineSegment.distance.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class Polyline {
+	/**
+	 * Position of the projection parameter in a result array, 0 at the start
+	 * of the segment and 1 at its end.
+	 */
+	public static final int PARAMETER = 0;
+	/**
+	 * Position of the distance in a result array.
+	 */
+	public static final int DISTANCE = 1;
+	/**
+	 * Length of a result array.
+	 */
+	public static final int RESULT_SIZE = 2;
+	/**
+	 * Factor of the second chance at the tolerance in spans.
+	 */
+	public static final double SLACK = 10.0000000000d;
+
+	/**
+	 * Returns the distance from (px, py) to the segment from (ax, ay) to (bx,
+	 * by).
+	 */
+	public static double distance(double ax, double ay, double bx, double by, double px, double py) {
+		return Polyline.locate(ax, ay, bx, by, px, py, null);
+	}
+
+	/**
+	 * Returns the distance from (px, py) to the segment from (ax, ay) to (bx,
+	 * by), and writes it and the projection parameter, clamped to 0..1 and 0
+	 * if the segment has no length, to result unless it is null.
+	 */
+	public static double locate(double ax, double ay, double bx, double by, double px, double py, double[] result) {
+		double r;
+		double d;
+
+		if ((ax == bx) && (ay == by)) {
+			r = 0.0d;
+			d = Polyline.distance(ax, ay, px, py);
+		} else {
+			double dx = bx - ax;
+			double dy = by - ay;
+			double len2 = dx * dx + dy * dy;
+
+			r = ((px - ax) * dx + (py - ay) * dy) / len2;
+
+			if (r <= 0.0d) {
+				r = 0.0d;
+				d = Polyline.distance(ax, ay, px, py);
+			} else if (r >= 1.0d) {
+				r = 1.0d;
+				d = Polyline.distance(bx, by, px, py);
+			} else {
+				double s = ((ay - py) * dx - (ax - px) * dy) / len2;
+
+				d = Math.abs(s) * Math.sqrt(len2);
+			}
+		}
+
+		if (result != null) {
+			result[PARAMETER] = r;
+			result[DISTANCE] = d;
+		}
+		return d;
+	}
+
+	private static double distance(double ax, double ay, double px, double py) {
+		double dx = ax - px;
+		double dy = ay - py;
+
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Returns the first segment from segment first of the n packed
+	 * coordinates of xy from offset that lies closer than tolerance to (px,
+	 * py), or -1 if there is none. Segment i runs from coordinate i to i + 1.
+	 *
+	 * @param result
+	 *            receives the projection parameter and distance on the segment
+	 *            found, see PARAMETER and DISTANCE, or on the last segment
+	 *            tried if there is none, may be null.
+	 */
+	public static int locate(double[] xy, int offset, int n, int first, double px, double py, double tolerance,
+			double[] result) {
+		for (int i = first; i < n - 1; i++) {
+			int a = offset + 2 * i;
+
+			if (Polyline.locate(xy[a], xy[a + 1], xy[a + 2], xy[a + 3], px, py, result) < tolerance) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * As locate(double[]...) from the first segment.
+	 */
+	public static int locate(double[] xy, int offset, int n, double px, double py, double tolerance,
+			double[] result) {
+		return Polyline.locate(xy, offset, n, 0, px, py, tolerance, result);
+	}
+
+	/**
+	 * As locate(double[]...) for a Coordinate[].
+	 */
+	public static int locate(Coordinate[] coordinates, int first, double px, double py, double tolerance,
+			double[] result) {
+		for (int i = first; i < coordinates.length - 1; i++) {
+			Coordinate a = coordinates[i];
+			Coordinate b = coordinates[i + 1];
+
+			if (Polyline.locate(a.x, a.y, b.x, b.y, px, py, result) < tolerance) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the first segment of the n packed coordinates of xy from offset
+	 * that lies closer than tolerance to (px, py), or -1 if there is none, see
+	 * locate.
+	 */
+	public static int firstWithin(double[] xy, int offset, int n, double px, double py, double tolerance) {
+		return Polyline.locate(xy, offset, n, 0, px, py, tolerance, null);
+	}
+
+	/**
+	 * As firstWithin(double[]...) for a Coordinate[].
+	 */
+	public static int firstWithin(Coordinate[] coordinates, double px, double py, double tolerance) {
+		return Polyline.locate(coordinates, 0, px, py, tolerance, null);
+	}
+
+	/**
+	 * Returns the number of the n packed coordinates of xy from offset that
+	 * are left when repeated (consecutive equal) coordinates are dropped.
+	 */
+	public static int nbDistinct(double[] xy, int offset, int n) {
+		int distinct = (n > 0) ? 1 : 0;
+
+		for (int i = 1; i < n; i++) {
+			int a = offset + 2 * i;
+
+			if ((xy[a] != xy[a - 2]) || (xy[a + 1] != xy[a - 1])) {
+				distinct++;
+			}
+		}
+		return distinct;
+	}
+
+	/**
+	 * As nbDistinct(double[]...) for a Coordinate[].
+	 */
+	public static int nbDistinct(Coordinate[] coordinates) {
+		int distinct = (coordinates.length > 0) ? 1 : 0;
+
+		for (int i = 1; i < coordinates.length; i++) {
+			if (!coordinates[i].equals2D(coordinates[i - 1])) {
+				distinct++;
+			}
+		}
+		return distinct;
+	}
+
+	/**
+	 * Returns true if the distance from (px, py) to any segment of the n
+	 * packed coordinates of xy from offset is smaller than tolerance. With
+	 * allowSlack, a polyline without repeated coordinates is given a second
+	 * chance at ten times the tolerance, see GeometryOps.spansPoint.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the point is not found and the coordinates are all equal,
+	 *             as the polyline is then no valid LineString.
+	 */
+	public static boolean spans(double[] xy, int offset, int n, double px, double py, double tolerance,
+			boolean allowSlack) throws IllegalArgumentException {
+		if (Polyline.firstWithin(xy, offset, n, px, py, tolerance) >= 0) {
+			return true;
+		} else if (n == 0) {
+			return false;
+		}
+
+		int distinct = Polyline.nbDistinct(xy, offset, n);
+
+		Polyline.checkDistinct(distinct);
+		if ((distinct == n) && allowSlack) {
+			return Polyline.firstWithin(xy, offset, n, px, py, tolerance * Polyline.SLACK) >= 0;
+		}
+		return false;
+	}
+
+	/**
+	 * As spans(double[]...) for a Coordinate[].
+	 */
+	public static boolean spans(Coordinate[] coordinates, double px, double py, double tolerance,
+			boolean allowSlack) throws IllegalArgumentException {
+		if (Polyline.firstWithin(coordinates, px, py, tolerance) >= 0) {
+			return true;
+		} else if (coordinates.length == 0) {
+			return false;
+		}
+
+		int distinct = Polyline.nbDistinct(coordinates);
+
+		Polyline.checkDistinct(distinct);
+		if ((distinct == coordinates.length) && allowSlack) {
+			return Polyline.firstWithin(coordinates, px, py, tolerance * Polyline.SLACK) >= 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the n packed coordinates of xy from offset to out from 0, adding
+	 * (px, py) after the start of each segment that lies closer than
+	 * tolerance to it and dropping repeated coordinates, see
+	 * GeometryOps.projectPoint. Returns the number of coordinates written,
+	 * out must have room for 2 * n - 1 of them.
+	 */
+	public static int project(double[] xy, int offset, int n, double px, double py, double tolerance,
+			double[] out) {
+		int m = 0;
+		int next = Polyline.locate(xy, offset, n, 0, px, py, tolerance, null);
+
+		for (int i = 0; i < n; i++) {
+			int a = offset + 2 * i;
+
+			m = Polyline.add(out, m, xy[a], xy[a + 1]);
+
+			if (i == next) {
+				m = Polyline.add(out, m, px, py);
+				next = Polyline.locate(xy, offset, n, i + 1, px, py, tolerance, null);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Adds (x, y) as coordinate m of out unless it repeats coordinate m - 1,
+	 * returns the new number of coordinates.
+	 */
+	private static int add(double[] out, int m, double x, double y) {
+		if ((m > 0) && (out[2 * m - 2] == x) && (out[2 * m - 1] == y)) {
+			return m;
+		}
+		out[2 * m] = x;
+		out[2 * m + 1] = y;
+
+		return m + 1;
+	}
+
+	/**
+	 * A polyline of one distinct coordinate is no LineString, the message is
+	 * the one of GeometryFactory.createLineString.
+	 */
+	static void checkDistinct(int distinct) {
+		if (distinct == 1) {
+			throw new IllegalArgumentException("Invalid number of points in LineString (found 1 - must be 0 or >= 2)");
+		}
+	}
+}
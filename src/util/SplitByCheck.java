@@ -0,0 +1,142 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+/**
+ * Checks GeometryOps.splitBy against a regression corpus, by default
+ * corpus/splitby.txt, and prints the cases that differ.
+ *
+ * Usage: SplitByCheck [corpus]
+ *
+ * Each line of the corpus is one case, ;-separated: tolerance, allowSlack,
+ * the coordinates of L, the coordinates of P and the expected result. The
+ * coordinates are written "x y" and separated by ','. The result is null,
+ * IllegalArgumentException or the coordinates of each piece separated by
+ * '|', with '-' for a null piece. Lines starting with # are comments.
+ *
+ * The expected results of corpus/splitby.txt were written by splitBy as it
+ * was before it split on packed coordinates.
+ *
+ * @author Magnus Fransson, magnus.fransson@sweco.se
+ * @version 1.0
+ */
+public class SplitByCheck {
+
+	public static void main(String[] args) throws IOException {
+		String path = (args.length > 0) ? args[0] : "corpus/splitby.txt";
+		GeometryFactory gf = new GeometryFactory(new PrecisionModel(PrecisionModel.FLOATING));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+		int cases = 0;
+		int differences = 0;
+
+		try {
+			String line;
+			int lineNumber = 0;
+
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] fields = line.split(";", -1);
+				double tolerance = Double.parseDouble(fields[0]);
+				boolean allowSlack = Boolean.parseBoolean(fields[1]);
+				LineString L = gf.createLineString(SplitByCheck.coordinates(fields[2]));
+				Coordinate[] c = SplitByCheck.coordinates(fields[3]);
+				Point[] P = new Point[c.length];
+
+				for (int i = 0; i < c.length; i++) {
+					P[i] = gf.createPoint(c[i]);
+				}
+
+				String result = SplitByCheck.split(L, P, gf, tolerance, allowSlack);
+				cases++;
+
+				if (!result.equals(fields[4])) {
+					differences++;
+					System.out.println("SplitByCheck: line " + lineNumber + " differs.");
+					System.out.println("         expected: " + fields[4]);
+					System.out.println("         got:      " + result);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		System.out.println("SplitByCheck: " + cases + " cases, " + differences + " differences.");
+
+		if (differences > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns the result of splitBy written as in the corpus.
+	 */
+	private static String split(LineString L, Point[] P, GeometryFactory gf, double tolerance, boolean allowSlack) {
+		LineString[] pieces;
+
+		try {
+			pieces = GeometryOps.splitBy(L, P, gf, tolerance, allowSlack);
+		} catch (IllegalArgumentException iae) {
+			return "IllegalArgumentException";
+		}
+
+		if (pieces == null) {
+			return "null";
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < pieces.length; i++) {
+			if (i > 0) {
+				sb.append('|');
+			}
+			sb.append((pieces[i] == null) ? "-" : SplitByCheck.toString(pieces[i].getCoordinates()));
+		}
+
+		return sb.toString();
+	}
+
+	private static Coordinate[] coordinates(String field) {
+		if (field.isEmpty()) {
+			return new Coordinate[0];
+		}
+
+		String[] xy = field.split(",");
+		Coordinate[] coordinates = new Coordinate[xy.length];
+
+		for (int i = 0; i < xy.length; i++) {
+			int space = xy[i].indexOf(' ');
+
+			coordinates[i] = new Coordinate(Double.parseDouble(xy[i].substring(0, space)),
+					Double.parseDouble(xy[i].substring(space + 1)));
+		}
+
+		return coordinates;
+	}
+
+	private static String toString(Coordinate[] coordinates) {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < coordinates.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(coordinates[i].x).append(' ').append(coordinates[i].y);
+		}
+
+		return sb.toString();
+	}
+}